@@ -1,9 +1,74 @@
 package com.example.logSleuthEnterprise.config;
+import com.example.logSleuthEnterprise.service.kafka.OffsetCommitCoordinator;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ContainerProperties;
+
+import java.util.Map;
 
 @Configuration
 @EnableKafka
 public class SimpleKafkaConfig {
 
+    @Value("${app.kafka.consumer.batch.max-records:500}")
+    private int batchMaxRecords;
+
+    @Value("${app.kafka.consumer.batch.max-wait-ms:100}")
+    private int batchMaxWaitMs;
+
+    @Value("${app.kafka.consumer.batch.min-bytes:16384}")
+    private int batchMinBytes;
+
+    @Value("${app.kafka.consumer.batch.concurrency:1}")
+    private int batchConcurrency;
+
+    // Batch listener: один вызов на poll. Контейнер сам не коммитит - offset'ы коммитит
+    // OffsetCommitCoordinator по мере записи в sink'и, при простое и при rebalance.
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, byte[]> batchKafkaListenerContainerFactory(
+            KafkaProperties kafkaProperties, OffsetCommitCoordinator commitCoordinator) {
+        Map<String, Object> props = kafkaProperties.buildConsumerProperties();
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, batchMaxRecords);
+        props.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, batchMaxWaitMs);
+        props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, batchMinBytes);
+
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(props));
+        factory.setBatchListener(true);
+        factory.setConcurrency(batchConcurrency);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        factory.getContainerProperties().setConsumerRebalanceListener(commitCoordinator);
+        factory.getContainerProperties().setIdleEventInterval(commitCoordinator.getCommitIntervalMs());
+        return factory;
+    }
+
+    // Строковый template для отладочных контроллеров
+    @Bean
+    public KafkaTemplate<String, String> kafkaTemplate(KafkaProperties kafkaProperties) {
+        Map<String, Object> props = kafkaProperties.buildProducerProperties();
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(props));
+    }
+
+    // Логи уходят в Kafka уже закодированными байтами (KafkaLogMessageCodec)
+    @Bean
+    public KafkaTemplate<String, byte[]> logKafkaTemplate(KafkaProperties kafkaProperties) {
+        Map<String, Object> props = kafkaProperties.buildProducerProperties();
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(props));
+    }
 }
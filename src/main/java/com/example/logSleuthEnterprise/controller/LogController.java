@@ -1,18 +1,43 @@
 package com.example.logSleuthEnterprise.controller;
 
 import com.example.logSleuthEnterprise.dao.LogDAO;
+import com.example.logSleuthEnterprise.dao.LogRow;
 import com.example.logSleuthEnterprise.model.ElasticLogDocument;
 import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+import com.example.logSleuthEnterprise.model.LogField;
+import com.example.logSleuthEnterprise.service.elastic.ElasticLogIterator;
 import com.example.logSleuthEnterprise.service.elastic.ElasticsearchService;
+import com.example.logSleuthEnterprise.service.ingest.BulkLogIngestService;
+import com.example.logSleuthEnterprise.service.kafka.KafkaLogConsumer;
 import com.example.logSleuthEnterprise.service.kafka.KafkaLogProducer;
+import com.example.logSleuthEnterprise.service.pipeline.LogIngestPipeline;
+import com.example.logSleuthEnterprise.service.query.LogQuery;
+import com.example.logSleuthEnterprise.service.query.LogQueryService;
+import com.example.logSleuthEnterprise.service.query.QueryResultCache;
+import com.example.logSleuthEnterprise.service.tail.LogTailBroadcaster;
+import com.example.logSleuthEnterprise.service.tail.TailFilter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api")
@@ -23,13 +48,37 @@ public class LogController {
     private final LogDAO logDao;
     private final KafkaLogProducer kafkaLogProducer;
     private final ElasticsearchService elasticService;
+    private final LogIngestPipeline pipeline;
+    private final BulkLogIngestService bulkIngestService;
+    private final KafkaLogConsumer kafkaLogConsumer;
+    private final QueryResultCache queryCache;
+    private final LogQueryService queryService;
+    private final LogTailBroadcaster tailBroadcaster;
+
+    // Потолок limit/страницы для ответа одним JSON; больше - через cursor или NDJSON
+    @Value("${app.api.logs.max-limit:1000}")
+    private int maxLimit;
+
+    private final ObjectMapper ndjsonMapper = new ObjectMapper();
 
     public LogController(LogDAO logDao,
                          KafkaLogProducer kafkaLogProducer,
-                         ElasticsearchService elasticService) {
+                         KafkaLogConsumer kafkaLogConsumer,
+                         ElasticsearchService elasticService,
+                         LogIngestPipeline pipeline,
+                         BulkLogIngestService bulkIngestService,
+                         QueryResultCache queryCache,
+                         LogQueryService queryService,
+                         LogTailBroadcaster tailBroadcaster) {
         this.logDao = logDao;
         this.kafkaLogProducer = kafkaLogProducer;
+        this.kafkaLogConsumer = kafkaLogConsumer;
         this.elasticService = elasticService;
+        this.pipeline = pipeline;
+        this.bulkIngestService = bulkIngestService;
+        this.queryCache = queryCache;
+        this.queryService = queryService;
+        this.tailBroadcaster = tailBroadcaster;
         log.info(" LogController initialized with all dependencies");
     }
 
@@ -52,6 +101,7 @@ public class LogController {
                 "GET  /api/logs         - Get all logs (limit param)",
                 "POST /api/logs         - Create log directly",
                 "POST /api/logs/kafka   - Send log via Kafka",
+                "POST /api/logs/bulk    - NDJSON bulk ingest (target=cassandra|kafka)",
                 "DELETE /api/logs       - Clear all logs",
 
                 "GET  /api/elastic/status - Check Elasticsearch",
@@ -90,19 +140,22 @@ public class LogController {
 
         Map<String, Object> components = new HashMap<>();
 
-        // Cassandra health
+        // Cassandra health: ping не чаще раза в TTL кэша, сколько бы дашбордов ни спрашивали.
+        // Неудачный ping - исключение, а ошибки кэш не хранит: восстановление видно сразу
+        Map<String, Object> cassandraPing;
         try {
-            List<Map<String, Object>> logs = logDao.getAllLogs(1);
-            components.put("cassandra", Map.of(
-                    "status", "UP",
-                    "details", "Connected successfully"
-            ));
+            cassandraPing = queryCache.get("health|cassandra", 0, () -> {
+                logDao.ping();
+                return Map.of("status", "UP", "details", "Connected successfully");
+            });
         } catch (Exception e) {
-            components.put("cassandra", Map.of(
-                    "status", "DOWN",
-                    "details", e.getMessage()
-            ));
+            cassandraPing = Map.of("status", "DOWN", "details", String.valueOf(e.getMessage()));
         }
+        Map<String, Object> cassandra = new HashMap<>(cassandraPing);
+        cassandra.put("inFlightWrites", logDao.getInFlightWrites());
+        cassandra.put("queuedWrites", logDao.getQueuedWrites());
+        cassandra.put("breaker", logDao.getCircuitBreaker().getStats());
+        components.put("cassandra", cassandra);
 
         // Kafka health (проверяем только наличие бина)
         components.put("kafka", Map.of(
@@ -110,19 +163,8 @@ public class LogController {
                 "details", kafkaLogProducer != null ? "Producer available" : "Producer not available"
         ));
 
-        // Elasticsearch health
-        try {
-            boolean elasticAvailable = elasticService.isElasticsearchAvailable();
-            components.put("elasticsearch", Map.of(
-                    "status", elasticAvailable ? "UP" : "DOWN",
-                    "details", elasticAvailable ? "Connected" : "Not connected"
-            ));
-        } catch (Exception e) {
-            components.put("elasticsearch", Map.of(
-                    "status", "DOWN",
-                    "details", e.getMessage()
-            ));
-        }
+        // Elasticsearch health: состояние из фонового монитора, без запроса к кластеру
+        components.put("elasticsearch", elasticService.getHealth());
 
         health.put("status", "UP");
         health.put("timestamp", Instant.now().toString());
@@ -158,9 +200,7 @@ public class LogController {
     // ==================== ЛОГИ (CASSANDRA) ====================
 
     @PostMapping("/logs")
-    public Map<String, Object> createLog(@RequestBody Map<String, Object> logRequest) {
-        Map<String, Object> response = new HashMap<>();
-
+    public CompletableFuture<Map<String, Object>> createLog(@RequestBody Map<String, Object> logRequest) {
         try {
             String service = (String) logRequest.getOrDefault("service", "unknown");
             String level = (String) logRequest.getOrDefault("level", "INFO");
@@ -170,16 +210,59 @@ public class LogController {
             @SuppressWarnings("unchecked")
             Map<String, String> metadata = (Map<String, String>) logRequest.getOrDefault("metadata", new HashMap<>());
 
-            Map<String, Object> savedLog = logDao.saveLog(service, level, message, host, metadata);
-
-            response.put("status", "created");
-            response.put("log", savedLog);
-            response.put("message", "Log saved directly to Cassandra");
+            // Поток запроса не ждет Cassandra - ответ отдается по завершении записи
+            return logDao.saveLogAsync(service, level, message, host, metadata)
+                    .toCompletableFuture()
+                    .handle((savedLog, error) -> {
+                        Map<String, Object> response = new HashMap<>();
+                        if (error == null) {
+                            response.put("status", "created");
+                            response.put("log", savedLog);
+                            response.put("message", "Log saved directly to Cassandra");
+                        } else {
+                            Throwable cause = error.getCause() != null ? error.getCause() : error;
+                            response.put("status", "error");
+                            response.put("message", cause.getMessage());
+                            log.error("Failed to create log: {}", cause.getMessage());
+                        }
+                        response.put("timestamp", Instant.now().toString());
+                        return response;
+                    });
 
         } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
             response.put("status", "error");
             response.put("message", e.getMessage());
+            response.put("timestamp", Instant.now().toString());
             log.error("Failed to create log: {}", e.getMessage(), e);
+            return CompletableFuture.completedFuture(response);
+        }
+    }
+
+    // Тело - NDJSON произвольной длины, читается из потока запроса без буферизации целиком
+    @PostMapping("/logs/bulk")
+    public Map<String, Object> bulkIngest(HttpServletRequest request,
+                                          @RequestParam(defaultValue = "cassandra") String target,
+                                          @RequestParam(required = false) Integer batchSize) {
+        Map<String, Object> response = new HashMap<>();
+
+        BulkLogIngestService.Target ingestTarget;
+        try {
+            ingestTarget = BulkLogIngestService.Target.valueOf(target.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            response.put("status", "error");
+            response.put("message", "Unknown target: " + target);
+            response.put("timestamp", Instant.now().toString());
+            return response;
+        }
+
+        try {
+            response.putAll(bulkIngestService.ingest(request.getInputStream(), ingestTarget, batchSize));
+            response.put("status", "completed");
+        } catch (Exception e) {
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+            log.error("Bulk ingest failed: {}", e.getMessage());
         }
 
         response.put("timestamp", Instant.now().toString());
@@ -190,22 +273,57 @@ public class LogController {
     public Map<String, Object> getLogs(
             @RequestParam(defaultValue = "50") int limit,
             @RequestParam(required = false) String service,
-            @RequestParam(required = false) String level) {
+            @RequestParam(required = false) String level,
+            @RequestParam(required = false) String host,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean paged,
+            @RequestParam(required = false) String fields) {
 
         Map<String, Object> response = new HashMap<>();
 
         try {
-            List<Map<String, Object>> logs;
-
-            if (service != null && !service.isEmpty()) {
-                logs = logDao.getLogsByService(service, limit);
-                response.put("filter", "service=" + service);
-            } else if (level != null && !level.isEmpty()) {
-                logs = logDao.getLogsByLevel(level, limit);
-                response.put("filter", "level=" + level);
+            List<LogRow> logs;
+            // fields=timestamp,level,message - выбираются только эти колонки
+            Set<LogField> projection = LogField.parse(fields);
+            Instant fromTime = from != null ? Instant.parse(from) : null;
+            Instant toTime = to != null ? Instant.parse(to) : null;
+            String range = fromTime != null || toTime != null ? ", from=" + from + ", to=" + to : "";
+            if (limit > maxLimit) {
+                limit = maxLimit;
+                response.put("limitCapped", true);
+            }
+
+            if (paged || cursor != null) {
+                // Фильтр и границы едут в токене - для следующей страницы достаточно cursor
+                Map<String, Object> page = logDao.getLogsPage(blankToNull(service), blankToNull(level),
+                        blankToNull(host), fromTime, toTime, limit, cursor, projection);
+                @SuppressWarnings("unchecked")
+                List<LogRow> pageLogs = (List<LogRow>) page.get("logs");
+                logs = pageLogs;
+                response.put("nextCursor", page.get("nextCursor"));
+                response.put("filter", "paged");
             } else {
-                logs = logDao.getAllLogs(limit);
-                response.put("filter", "all");
+                String filterService = blankToNull(service);
+                String filterLevel = blankToNull(level);
+                String filterHost = blankToNull(host);
+                int pageLimit = limit;
+                // Дашборды повторяют одни и те же запросы: ответ из кэша, пока срез данных не изменился
+                String cacheKey = "logs|" + filterService + "|" + filterLevel + "|" + filterHost + "|"
+                        + from + "|" + to + "|" + pageLimit + "|" + projection;
+                logs = queryCache.get(cacheKey, logDao.getReadGeneration(filterService, filterLevel),
+                        () -> readLogs(filterService, filterLevel, filterHost, fromTime, toTime, pageLimit, projection));
+
+                if (filterService != null) {
+                    response.put("filter", "service=" + filterService + range);
+                } else if (filterLevel != null) {
+                    response.put("filter", "level=" + filterLevel + range);
+                } else if (filterHost != null) {
+                    response.put("filter", "host=" + filterHost + range);
+                } else {
+                    response.put("filter", "all" + range);
+                }
             }
 
             response.put("status", "success");
@@ -223,6 +341,274 @@ public class LogController {
         return response;
     }
 
+    // Каждый фильтр читается из своей таблицы (поле, день) - одна партиция на бакет
+    private List<LogRow> readLogs(String service, String level, String host, Instant from, Instant to,
+                                  int limit, Set<LogField> projection) {
+        if (service != null) {
+            return from == null && to == null
+                    ? logDao.getLogsByService(service, limit, projection)
+                    : logDao.getLogsByTimeRange(service, from, to, limit, projection);
+        }
+        if (level != null) {
+            return logDao.getLogsByLevel(level, from, to, limit, projection);
+        }
+        if (host != null) {
+            return logDao.getLogsByHost(host, from, to, limit, projection);
+        }
+        if (from != null || to != null) {
+            return logDao.getLogsByTimeRange(null, from, to, limit, projection);
+        }
+        return logDao.getAllLogs(limit, projection);
+    }
+
+    // GET /api/logs?format=ndjson: по строке JSON на лог, пишется по мере прихода страниц
+    // из Cassandra - список в памяти не собирается, первый байт уходит после первой страницы
+    @GetMapping(value = "/logs", params = "format=ndjson")
+    public void streamLogs(
+            @RequestParam(defaultValue = "" + Long.MAX_VALUE) long limit,
+            @RequestParam(required = false) String service,
+            @RequestParam(required = false) String level,
+            @RequestParam(required = false) String host,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) String fields,
+            HttpServletResponse response) throws IOException {
+
+        Instant fromTime = from != null ? Instant.parse(from) : null;
+        Instant toTime = to != null ? Instant.parse(to) : null;
+        Set<LogField> projection = LogField.parse(fields);
+
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        OutputStream out = response.getOutputStream();
+        // Один генератор на весь ответ: без разделителя между корневыми значениями, flush - по страницам
+        JsonGenerator generator = ndjsonMapper.getFactory().createGenerator(out);
+        generator.setRootValueSeparator(null);
+        try {
+            long written = logDao.streamLogs(blankToNull(service), blankToNull(level), blankToNull(host),
+                    fromTime, toTime, limit, projection,
+                    row -> {
+                        try {
+                            row.writeTo(generator);
+                            generator.writeRaw('\n');
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    },
+                    () -> {
+                        try {
+                            generator.flush();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+            generator.flush();
+            log.debug("Streamed {} logs", written);
+        } catch (UncheckedIOException e) {
+            // Клиент закрыл соединение
+            log.debug("Log stream aborted: {}", e.getMessage());
+        } catch (Exception e) {
+            log.error("Log stream failed: {}", e.getMessage());
+            generator.writeObject(Map.of("error", String.valueOf(e.getMessage())));
+            generator.writeRaw('\n');
+            generator.flush();
+        }
+    }
+
+    // Единый поиск: backend (Cassandra, Elasticsearch или счетчики) выбирается по предикатам.
+    // meta=key:value можно повторять; count=true - только число совпадений.
+    // paged=true или cursor - глубокое чтение из Elasticsearch через point-in-time.
+    @GetMapping("/logs/search")
+    public Map<String, Object> search(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) String id,
+            @RequestParam(required = false) String service,
+            @RequestParam(required = false) String level,
+            @RequestParam(required = false) String host,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) List<String> meta,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) String fields,
+            @RequestParam(defaultValue = "false") boolean count,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean paged) {
+
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            if (limit > maxLimit) {
+                limit = maxLimit;
+                response.put("limitCapped", true);
+            }
+
+            LogQuery query = toLogQuery(q, id, service, level, host, from, to, meta, limit, fields, count);
+            if (paged || cursor != null) {
+                // Предикаты едут в токене - для следующей страницы достаточно cursor
+                response.putAll(queryService.searchPage(query, cursor));
+            } else {
+                response.putAll(queryService.search(query));
+            }
+            response.put("status", "success");
+            response.put("limit", limit);
+        } catch (Exception e) {
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+            log.error("Search failed: {}", e.getMessage());
+        }
+
+        response.put("timestamp", Instant.now().toString());
+        return response;
+    }
+
+    // GET /api/logs/search?format=ndjson: все совпадения из Elasticsearch строками JSON.
+    // Страницы идут через point-in-time + search_after, следующая грузится в фоне.
+    @GetMapping(value = "/logs/search", params = "format=ndjson")
+    public void streamSearch(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) String id,
+            @RequestParam(required = false) String service,
+            @RequestParam(required = false) String level,
+            @RequestParam(required = false) String host,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) List<String> meta,
+            @RequestParam(defaultValue = "" + Long.MAX_VALUE) long limit,
+            @RequestParam(required = false) String fields,
+            HttpServletResponse response) throws IOException {
+
+        LogQuery query = toLogQuery(q, id, service, level, host, from, to, meta, 0, fields, false);
+
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        JsonGenerator generator = ndjsonMapper.getFactory().createGenerator(response.getOutputStream());
+        generator.setRootValueSeparator(null);
+        long written = 0;
+        try (ElasticLogIterator logs = elasticService.stream(query, limit)) {
+            while (logs.hasNext()) {
+                generator.writeObject(logs.next());
+                generator.writeRaw('\n');
+                if (++written % 1000 == 0) {
+                    generator.flush();
+                }
+            }
+            generator.flush();
+            log.debug("Streamed {} search hits", written);
+        } catch (IOException e) {
+            // Клиент закрыл соединение
+            log.debug("Search stream aborted: {}", e.getMessage());
+        } catch (Exception e) {
+            log.error("Search stream failed: {}", e.getMessage());
+            generator.writeObject(Map.of("error", String.valueOf(e.getMessage())));
+            generator.writeRaw('\n');
+            generator.flush();
+        }
+    }
+
+    private static LogQuery toLogQuery(String q, String id, String service, String level, String host,
+                                       String from, String to, List<String> meta, int limit, String fields,
+                                       boolean count) {
+        Map<String, String> metadata = new TreeMap<>();
+        if (meta != null) {
+            for (String pair : meta) {
+                int separator = pair.indexOf(':');
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("meta must be key:value, got: " + pair);
+                }
+                metadata.put(pair.substring(0, separator), pair.substring(separator + 1));
+            }
+        }
+        return new LogQuery(blankToNull(id), blankToNull(q), blankToNull(service), blankToNull(level),
+                blankToNull(host), from != null ? Instant.parse(from) : null, to != null ? Instant.parse(to) : null,
+                metadata, limit, LogField.parse(fields), count);
+    }
+
+    // Живой поток логов из Kafka consumer'а по SSE (событие "log"), без чтения из базы.
+    // contains - подстрока сообщения без учета регистра; отставшему клиенту часть событий
+    // не доставляется - о пропуске сообщает событие "dropped".
+    @GetMapping(value = "/logs/tail", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter tailLogs(
+            @RequestParam(required = false) String service,
+            @RequestParam(required = false) String level,
+            @RequestParam(required = false) String host,
+            @RequestParam(required = false) String contains) {
+        return tailBroadcaster.subscribe(new TailFilter(blankToNull(service), blankToNull(level),
+                blankToNull(host), blankToNull(contains)));
+    }
+
+    // Объем логов во времени из rollup'ов; step - 5m, 1h, 1d или ISO-8601 (PT15M)
+    @GetMapping("/logs/histogram")
+    public Map<String, Object> getHistogram(
+            @RequestParam(required = false) String service,
+            @RequestParam(required = false) String level,
+            @RequestParam(required = false) String host,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) String step) {
+
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            Instant toTime = to != null ? Instant.parse(to) : Instant.now();
+            Instant fromTime = from != null ? Instant.parse(from) : toTime.minus(Duration.ofDays(1));
+            Duration stepDuration = step != null ? parseStep(step) : LogDAO.defaultHistogramStep(fromTime, toTime);
+
+            String filterService = blankToNull(service);
+            String filterLevel = blankToNull(level);
+            String filterHost = blankToNull(host);
+            String cacheKey = "histogram|" + filterService + "|" + filterLevel + "|" + filterHost + "|"
+                    + from + "|" + to + "|" + stepDuration;
+            response.putAll(queryCache.get(cacheKey, logDao.getReadGeneration(filterService, filterLevel),
+                    () -> logDao.getHistogram(filterService, filterLevel, filterHost, fromTime, toTime, stepDuration)));
+            response.put("status", "success");
+        } catch (Exception e) {
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+            log.error("Failed to build histogram: {}", e.getMessage());
+        }
+
+        response.put("timestamp", Instant.now().toString());
+        return response;
+    }
+
+    private static Duration parseStep(String step) {
+        if (step.startsWith("P") || step.startsWith("p")) {
+            return Duration.parse(step);
+        }
+        long amount = Long.parseLong(step.substring(0, step.length() - 1));
+        return switch (step.charAt(step.length() - 1)) {
+            case 'm' -> Duration.ofMinutes(amount);
+            case 'h' -> Duration.ofHours(amount);
+            case 'd' -> Duration.ofDays(amount);
+            default -> throw new IllegalArgumentException("Unknown step: " + step);
+        };
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    // Шаблоны сообщений по числу сохраненных логов; service - только его сообщения
+    @GetMapping("/templates")
+    public Map<String, Object> getTemplates(
+            @RequestParam(required = false) String service,
+            @RequestParam(defaultValue = "100") int limit) {
+
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            response.putAll(logDao.getTemplates(blankToNull(service), Math.max(1, limit)));
+            response.put("status", "success");
+        } catch (Exception e) {
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+            log.error("Failed to list templates: {}", e.getMessage());
+        }
+
+        response.put("timestamp", Instant.now().toString());
+        return response;
+    }
+
     @GetMapping("/logs/stats")
     public Map<String, Object> getLogStats() {
         Map<String, Object> response = new HashMap<>();
@@ -231,6 +617,8 @@ public class LogController {
             Map<String, Object> stats = logDao.getStats();
             response.put("status", "success");
             response.put("stats", stats);
+            response.put("queryCache", queryCache.getStats());
+            response.put("tail", tailBroadcaster.getStats());
         } catch (Exception e) {
             response.put("status", "error");
             response.put("message", e.getMessage());
@@ -240,12 +628,43 @@ public class LogController {
         return response;
     }
 
+    // Перенос старой таблицы logs в logs_by_service_bucket идет в фоне; можно запускать повторно.
+    // Ход переноса - GET /logs/migrate; после state=completed можно переключать read-mode на bucketed
+    @PostMapping("/logs/migrate")
+    public Map<String, Object> migrateLogs(@RequestParam(defaultValue = "1000000") int maxRows) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            boolean started = logDao.startLegacyMigration(maxRows);
+            response.put("status", started ? "started" : "already_running");
+            response.put("migration", logDao.getLegacyMigrationProgress());
+        } catch (Exception e) {
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+            log.error("Legacy logs migration failed to start: {}", e.getMessage());
+        }
+
+        response.put("timestamp", Instant.now().toString());
+        return response;
+    }
+
+    @GetMapping("/logs/migrate")
+    public Map<String, Object> getMigrationProgress() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "success");
+        response.put("migration", logDao.getLegacyMigrationProgress());
+
+        response.put("timestamp", Instant.now().toString());
+        return response;
+    }
+
     @DeleteMapping("/logs")
     public Map<String, Object> deleteLogs() {
         Map<String, Object> response = new HashMap<>();
 
         try {
             logDao.clearAllLogs();
+            queryCache.clear();
             response.put("status", "deleted");
             response.put("message", "All logs cleared from Cassandra");
         } catch (Exception e) {
@@ -302,10 +721,9 @@ public class LogController {
     }
 
 
+    // Ответ отдается после подтверждения брокера: клиент знает, дошла ли запись
     @PostMapping("/logs/kafka")
-    public Map<String, Object> createLogViaKafka(@RequestBody Map<String, Object> logRequest) {
-        Map<String, Object> response = new HashMap<>();
-
+    public CompletableFuture<Map<String, Object>> createLogViaKafka(@RequestBody Map<String, Object> logRequest) {
         try {
             String service = (String) logRequest.getOrDefault("service", "unknown");
             String level = (String) logRequest.getOrDefault("level", "INFO");
@@ -318,20 +736,32 @@ public class LogController {
             KafkaLogMessage kafkaMessage = new KafkaLogMessage(service, level, message, host);
             kafkaMessage.setMetadata(metadata);
 
-            kafkaLogProducer.sendLog(kafkaMessage);
-
-            response.put("status", "sent_to_kafka");
-            response.put("message", "Log sent to Kafka for async processing");
-            response.put("logId", kafkaMessage.getId());
+            return kafkaLogProducer.send(kafkaMessage).handle((result, error) -> {
+                Map<String, Object> response = new HashMap<>();
+                if (error == null) {
+                    response.put("status", "sent_to_kafka");
+                    response.put("message", "Log acknowledged by Kafka for async processing");
+                    response.put("partition", result.getRecordMetadata().partition());
+                    response.put("offset", result.getRecordMetadata().offset());
+                } else {
+                    Throwable cause = error.getCause() != null ? error.getCause() : error;
+                    response.put("status", "error");
+                    response.put("message", cause.getMessage());
+                    log.error("Failed to send log to Kafka: {}", cause.getMessage());
+                }
+                response.put("logId", kafkaMessage.getId());
+                response.put("timestamp", Instant.now().toString());
+                return response;
+            });
 
         } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
             response.put("status", "error");
             response.put("message", e.getMessage());
+            response.put("timestamp", Instant.now().toString());
             log.error("Failed to send log to Kafka: {}", e.getMessage(), e);
+            return CompletableFuture.completedFuture(response);
         }
-
-        response.put("timestamp", Instant.now().toString());
-        return response;
     }
 
     @GetMapping("/kafka/test")
@@ -363,8 +793,11 @@ public class LogController {
 
         response.put("kafka", "configured");
         response.put("producer", kafkaLogProducer != null ? "ready" : "not_available");
+        response.put("producerStats", kafkaLogProducer.getStats());
+        response.put("consumerStats", kafkaLogConsumer.getStats());
         response.put("topics", List.of("raw-logs"));
         response.put("consumer_group", "log-sleuth-group");
+        response.put("pipeline", pipeline.getStats());
 
         response.put("timestamp", Instant.now().toString());
         return response;
@@ -382,6 +815,9 @@ public class LogController {
             response.put("message", isAvailable ?
                     "Elasticsearch is connected and ready" :
                     "Elasticsearch is not available");
+            response.put("bulk", elasticService.getBulkStats());
+            response.put("health", elasticService.getHealth());
+            response.put("lifecycle", elasticService.getLifecycleStats());
 
         } catch (Exception e) {
             response.put("status", "error");
@@ -415,9 +851,9 @@ public class LogController {
                 elasticService.saveToElasticsearch(testDoc);
 
                 response.put("status", "success");
-                response.put("message", "Test document saved to Elasticsearch");
+                response.put("message", "Test document queued for bulk indexing in Elasticsearch");
                 response.put("documentId", testDoc.getId());
-                response.put("action", "indexed");
+                response.put("action", "queued");
 
             } else {
                 response.put("status", "unavailable");
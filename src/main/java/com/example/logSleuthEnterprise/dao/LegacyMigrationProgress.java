@@ -0,0 +1,88 @@
+package com.example.logSleuthEnterprise.dao;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Состояние фонового переноса logs -> logs_by_*_bucket: одновременно идет не больше одного
+// переноса, счетчики читаются из HTTP-потоков, пока перенос пишет их из своего потока.
+final class LegacyMigrationProgress {
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong copied = new AtomicLong();
+    private final AtomicLong statements = new AtomicLong();
+    private final AtomicLong counted = new AtomicLong();
+    private volatile String state = "idle";
+    private volatile long maxRows;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    // false - перенос уже идет
+    boolean start(long maxRows) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        this.maxRows = maxRows;
+        copied.set(0);
+        statements.set(0);
+        counted.set(0);
+        startedAt = Instant.now();
+        finishedAt = null;
+        error = null;
+        state = "running";
+        return true;
+    }
+
+    // counted - строки, досчитанные в счетчики и rollups на этой странице
+    void copied(long rows, long executed, long countedRows) {
+        copied.addAndGet(rows);
+        statements.addAndGet(executed);
+        counted.addAndGet(countedRows);
+    }
+
+    void completed() {
+        finish("completed", null);
+    }
+
+    void failed(String message) {
+        finish("failed", message);
+    }
+
+    private void finish(String result, String message) {
+        error = message;
+        finishedAt = Instant.now();
+        state = result;
+        running.set(false);
+    }
+
+    long getCopied() {
+        return copied.get();
+    }
+
+    long getStatements() {
+        return statements.get();
+    }
+
+    Map<String, Object> toMap() {
+        Instant started = startedAt;
+        Instant finished = finishedAt;
+        Map<String, Object> progress = new HashMap<>();
+        progress.put("state", state);
+        progress.put("copied", copied.get());
+        progress.put("statements", statements.get());
+        progress.put("counted", counted.get());
+        progress.put("maxRows", maxRows);
+        progress.put("startedAt", started != null ? started.toString() : null);
+        progress.put("finishedAt", finished != null ? finished.toString() : null);
+        if (started != null) {
+            progress.put("durationMs", (finished != null ? finished : Instant.now()).toEpochMilli() - started.toEpochMilli());
+        }
+        if (error != null) {
+            progress.put("error", error);
+        }
+        return progress;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.logSleuthEnterprise.dao;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Счетчики записанных логов по ключу: (service, level) или (service, шаблон). Запись - LongAdder (striped, без общей
+// блокировки на горячем пути), счетчики только растут, поэтому сброс не нужен: при flush
+// отправляется разница между текущей суммой и уже отправленным. Чтение - последний снимок
+// персистентных итогов плюс локальные еще не отправленные дельты.
+final class LogCounters<K> {
+
+    private final Map<K, LongAdder> live = new ConcurrentHashMap<>();
+
+    // Сколько по каждому ключу уже отправлено в Cassandra (меняется только из flush)
+    private final Map<K, Long> flushed = new ConcurrentHashMap<>();
+
+    // Итоги из таблицы счетчиков вместе с flushed на момент их чтения - меняются атомарно
+    private volatile Snapshot<K> snapshot = new Snapshot<>(Map.of(), Map.of());
+
+    void add(K key, long count) {
+        live.computeIfAbsent(key, k -> new LongAdder()).add(count);
+    }
+
+    // Неотправленные дельты; ключи с нулевой дельтой пропускаются
+    Map<K, Long> pendingDeltas() {
+        Map<K, Long> deltas = new HashMap<>();
+        live.forEach((key, adder) -> {
+            long delta = adder.sum() - flushed.getOrDefault(key, 0L);
+            if (delta > 0) {
+                deltas.put(key, delta);
+            }
+        });
+        return deltas;
+    }
+
+    void markFlushed(K key, long delta) {
+        flushed.merge(key, delta, Long::sum);
+    }
+
+    // persisted уже содержит все, что отмечено в flushed к моменту вызова
+    void replaceSnapshot(Map<K, Long> persisted) {
+        snapshot = new Snapshot<>(Map.copyOf(persisted), Map.copyOf(flushed));
+    }
+
+    // Точные итоги: persisted + (локальная сумма - отправленное к моменту снимка)
+    Map<K, Long> totals() {
+        Snapshot<K> current = snapshot;
+        Map<K, Long> totals = new HashMap<>(current.persisted());
+        live.forEach((key, adder) -> {
+            long unflushed = adder.sum() - current.flushed().getOrDefault(key, 0L);
+            if (unflushed != 0) {
+                totals.merge(key, unflushed, Long::sum);
+            }
+        });
+        return totals;
+    }
+
+    void clear() {
+        live.clear();
+        flushed.clear();
+        snapshot = new Snapshot<>(Map.of(), Map.of());
+    }
+
+    record CounterKey(String service, String level) {
+    }
+
+    record TemplateKey(String service, UUID templateId) {
+    }
+
+    private record Snapshot<K>(Map<K, Long> persisted, Map<K, Long> flushed) {
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.logSleuthEnterprise.dao;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+// Позиция постраничного чтения logs_by_*_bucket (или logs при read-mode=legacy), отдается клиенту
+// как непрозрачный токен. Токен приходит от клиента: decode проверяет структуру, LogDAO - таблицу и ширину.
+// Фильтр и границы времени едут в токене, поэтому следующая страница не зависит от параметров
+// запроса. Внутри бакета позиция - paging state драйвера для текущей партиции.
+// bucket/oldestBucket - номер бакета таблицы (сутки или, для level, час от эпохи).
+record LogCursor(String table, String value, long fromMillis, long toMillis, long oldestBucket,
+                 long bucket, String service, ByteBuffer pagingState) {
+
+    // 2 - бакеты level стали часовыми, курсоры версии 1 указывают на сутки
+    private static final int VERSION = 2;
+    static final long NO_BOUND = Long.MIN_VALUE;
+
+    LogCursor withPosition(long bucket, String service, ByteBuffer pagingState) {
+        return new LogCursor(table, value, fromMillis, toMillis, oldestBucket, bucket, service, pagingState);
+    }
+
+    String encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeUTF(table);
+            writeNullable(out, value);
+            out.writeLong(fromMillis);
+            out.writeLong(toMillis);
+            out.writeLong(oldestBucket);
+            out.writeLong(bucket);
+            writeNullable(out, service);
+            if (pagingState == null) {
+                out.writeInt(-1);
+            } else {
+                ByteBuffer state = pagingState.duplicate();
+                out.writeInt(state.remaining());
+                byte[] raw = new byte[state.remaining()];
+                state.get(raw);
+                out.write(raw);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode cursor", e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    static LogCursor decode(String token) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            if (in.readByte() != VERSION) {
+                throw new IllegalArgumentException("Unsupported cursor version");
+            }
+            String table = in.readUTF();
+            String value = readNullable(in);
+            long fromMillis = in.readLong();
+            long toMillis = in.readLong();
+            long oldestBucket = in.readLong();
+            long bucket = in.readLong();
+            String service = readNullable(in);
+            int stateLength = in.readInt();
+            ByteBuffer pagingState = null;
+            if (stateLength > 65536) {
+                throw new IllegalArgumentException("Invalid cursor paging state");
+            }
+            if (stateLength >= 0) {
+                byte[] raw = new byte[stateLength];
+                in.readFully(raw);
+                pagingState = ByteBuffer.wrap(raw);
+            }
+            if (table.isEmpty() || oldestBucket > bucket
+                    || (fromMillis != NO_BOUND && toMillis != NO_BOUND && fromMillis > toMillis)
+                    || in.available() > 0) {
+                throw new IllegalArgumentException("Invalid cursor position");
+            }
+            return new LogCursor(table, value, fromMillis, toMillis, oldestBucket, bucket, service, pagingState);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String text) throws IOException {
+        out.writeBoolean(text != null);
+        if (text != null) {
+            out.writeUTF(text);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
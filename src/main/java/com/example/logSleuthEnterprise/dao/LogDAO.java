@@ -3,24 +3,277 @@ package com.example.logSleuthEnterprise.dao;
 
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.cql.*;
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+import com.example.logSleuthEnterprise.model.LogField;
+import com.example.logSleuthEnterprise.model.LogIds;
+import com.example.logSleuthEnterprise.service.health.CircuitBreaker;
+import com.example.logSleuthEnterprise.service.template.LogTemplateMatch;
+import com.example.logSleuthEnterprise.service.template.LogTemplateMiner;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Repository
 public class LogDAO {
 
     private static final Logger log = LoggerFactory.getLogger(LogDAO.class);
     private CqlSession session;
+    private PreparedStatement insertLogStatement;
+    private PreparedStatement markCountedStatement;
+    private PreparedStatement insertServiceBucketStatement;
+    private PreparedStatement selectServicesInBucketStatement;
+    private PreparedStatement incrementCounterStatement;
+    private PreparedStatement selectCountersStatement;
+    private PreparedStatement incrementRollupStatement;
+    private PreparedStatement selectRollupsStatement;
+    private PreparedStatement deleteRollupPartitionStatement;
+    private PreparedStatement insertTemplateStatement;
+    private PreparedStatement selectTemplateStatement;
+    private PreparedStatement incrementTemplateCountStatement;
+    private PreparedStatement selectTemplateCountsStatement;
+    private PreparedStatement updateSupersededStatement;
+    private final Map<BucketTable, PreparedStatement> insertBucketedStatements = new EnumMap<>(BucketTable.class);
+
+    // SELECT'ы с проекцией fields=: готовятся при первом использовании, ключ - текст запроса.
+    // {columns} заменяется списком колонок; в bucket-таблицах всегда читается event_time для слияния.
+    private final Map<String, PreparedStatement> projectedStatements = new ConcurrentHashMap<>();
+    private static final String SELECT_ALL_LEGACY = "SELECT {columns} FROM logs LIMIT ?";
+    private static final String SELECT_BY_SERVICE_LEGACY = "SELECT {columns} FROM logs WHERE service = ? LIMIT ?";
+    private static final String SELECT_BY_ID_LEGACY = "SELECT {columns} FROM logs WHERE id = ?";
+    // {partition} - колонки ключа партиции таблицы: значение, день и (для часовых таблиц) час
+    private static final String SELECT_BUCKET_RANGE = "SELECT {columns} FROM {table} "
+            + "WHERE {partition} AND event_time >= ? AND event_time <= ? LIMIT ?";
+    // Без LIMIT: размер страницы задает драйвер, продолжение - по paging state
+    private static final String SELECT_BUCKET_PAGE = "SELECT {columns} FROM {table} "
+            + "WHERE {partition} AND event_time >= ? AND event_time <= ?";
+    private PreparedStatement selectFirstServiceInBucketStatement;
+    private PreparedStatement selectNextServiceInBucketStatement;
+
+    // Таблица курсора по logs: LEGACY_SERVICE, LEGACY_LEVEL или LEGACY_HOST
+    private static final String LEGACY_CURSOR_PREFIX = "LEGACY_";
+
+    // Без service/level/host запись все равно должна попасть в партицию
+    private static final String UNKNOWN_KEY = "unknown";
+
+    // Сколько пар (service, bucket) помним как уже зарегистрированные
+    private static final int MAX_REGISTERED_SERVICE_BUCKETS = 10_000;
+
+    // Сколько шаблонов помним как уже записанные в log_templates
+    private static final int MAX_PERSISTED_TEMPLATES = 50_000;
+
+    // Сколько отсутствующих шаблонов помним
+    private static final int MAX_MISSING_TEMPLATES = 10_000;
+
+    // legacy - только logs, dual - обе схемы (на время миграции), bucketed - только logs_by_service_bucket
+    @Value("${app.cassandra.schema.write-mode:dual}")
+    private String schemaWriteMode;
+
+    // Откуда читать последние логи: legacy (logs) или bucketed (logs_by_service_bucket).
+    // bucketed включается только после POST /api/logs/migrate: до переноса новые таблицы пусты
+    @Value("${app.cassandra.schema.read-mode:legacy}")
+    private String schemaReadMode;
+
+    // Сколько дневных бакетов просматриваем, если нижняя граница времени не задана
+    @Value("${app.cassandra.buckets.lookback-days:7}")
+    private int bucketLookbackDays;
+
+    // Сколько суток одно чтение может обойти в bucket-таблицах: в часовой таблице level
+    // год - это 8760 партиций, диапазон шире отклоняется
+    @Value("${app.cassandra.buckets.max-fan-out-days:31}")
+    private int maxFanOutDays;
+
+    // full - message целиком (+ template_id), template - только template_id и params,
+    // текст собирается при чтении по каталогу log_templates
+    @Value("${app.templates.storage-mode:full}")
+    private String templateStorageMode;
+
+    private boolean writeLegacy;
+    private boolean writeBucketed;
+    private boolean readBucketed;
+    private boolean storeTemplates;
+
+    private final LogTemplateMiner templateMiner;
+
+    // Шаблоны, уже записанные в log_templates: только на них можно ссылаться без текста
+    private final Set<UUID> persistedTemplates = ConcurrentHashMap.newKeySet();
+
+    // Id, которых не нашлось в log_templates, -> до какого момента не спрашивать снова: строки
+    // с неизвестным шаблоном иначе делали бы запрос к Cassandra на каждое чтение
+    private final Map<UUID, Long> missingTemplates = new ConcurrentHashMap<>();
+
+    @Value("${app.templates.missing-ttl-ms:30000}")
+    private long missingTemplateTtlMs;
+
+    // Как часто перечитывать log_template_counts_by_service целиком (записи других инстансов);
+    // свои дельты видны сразу
+    @Value("${app.templates.counts-refresh-interval-ms:60000}")
+    private long templateCountsRefreshIntervalMs;
+    private volatile long templateCountsRefreshedAt;
+
+    // Обобщения шаблонов, которые не удалось записать в log_templates: повторяются следующим flush
+    private final Map<UUID, UUID> pendingSuperseded = new ConcurrentHashMap<>();
+
+    // Перенос прежней log_template_counts (одна партиция scope='all') в партиции по сервисам
+    private static final String TEMPLATE_COUNTS_MIGRATION_TASK = "template_counts_by_service";
+
+    // Пары (service, bucket), уже записанные в log_services_by_bucket - повторно не пишем
+    private final Set<BucketKey> registeredServiceBuckets = ConcurrentHashMap.newKeySet();
+
+    // Итоги для getStats без сканов: считаются на записи, периодически сливаются в log_counters
+    private final LogCounters<LogCounters.CounterKey> counters = new LogCounters<>();
+    private final LogCounters<LogCounters.TemplateKey> templateCounters = new LogCounters<>();
+    private final AtomicLong counterFlushFailures = new AtomicLong();
+    private volatile long countersRefreshedAt;
+
+    // log_counters и log_rollups ведутся с момента обновления: строки logs, записанные раньше,
+    // попадают в них только при переносе (POST /api/logs/migrate). До конца переноса итоги неполные.
+    private static final String COUNTERS_BACKFILL_TASK = "counters_backfill";
+    private volatile boolean countersComplete;
+    private volatile Instant countersBackfilledAt;
+    private volatile Map<String, Object> lastLog;
+
+    // Поколения данных для кэша чтения: растут с каждой сохраненной записью в своем срезе
+    private final AtomicLong globalGeneration = new AtomicLong();
+    private final Map<String, AtomicLong> serviceGenerations = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> levelGenerations = new ConcurrentHashMap<>();
+
+    // Объем логов во времени для гистограмм: минуты/часы/дни в log_rollups
+    private final LogRollups rollups = new LogRollups();
+    private final AtomicLong rollupFlushFailures = new AtomicLong();
+
+    // Самый новый уже удаленный период на (service, разрешение): каждый период удаляется один раз
+    private final Map<String, LocalDate> expiredRollupPeriods = new ConcurrentHashMap<>();
+
+    // Id, уже учтенные в счетчиках: повторная доставка и replay спула перезаписывают ту же строку,
+    // но считаться второй раз не должны. LRU на countedIdsCapacity id, доступ под своей блокировкой.
+    private Map<UUID, Boolean> countedIds;
+    private final AtomicLong repeatedStores = new AtomicLong();
+
+    @Value("${app.cassandra.counters.counted-ids:100000}")
+    private int countedIdsCapacity;
+
+    @Value("${app.cassandra.rollups.minute-retention-days:7}")
+    private int minuteRetentionDays;
+
+    @Value("${app.cassandra.rollups.hour-retention-days:90}")
+    private int hourRetentionDays;
+
+    @Value("${app.cassandra.rollups.max-points:2000}")
+    private int histogramMaxPoints;
+
+    // Первая страница выгрузки маленькая, чтобы первый байт не ждал большую страницу
+    @Value("${app.cassandra.read.stream-first-page-size:100}")
+    private int streamFirstPageSize;
+
+    @Value("${app.cassandra.read.stream-page-size:1000}")
+    private int streamPageSize;
+
+    // Сколько запросов к Cassandra может сделать одна страница getLogsPage: пустые бакеты
+    // и отфильтрованные страницы logs не наберут строк, клиент продолжит со следующего токена
+    @Value("${app.cassandra.read.max-page-queries:64}")
+    private int maxPageQueries;
+
+    @Value("${app.cassandra.batch.max-statements:100}")
+    private int batchMaxStatements;
+
+    @Value("${app.cassandra.write.max-in-flight:1024}")
+    private int maxInFlightWrites;
+
+    @Value("${app.cassandra.write.acquire-timeout-ms:5000}")
+    private long writeAcquireTimeoutMs;
+
+    // Больше ждущих permit'а - новая запись отклоняется сразу, а не копится в памяти
+    @Value("${app.cassandra.write.max-queued:10000}")
+    private int maxQueuedWrites;
+
+    @Value("${app.cassandra.breaker.failure-threshold:3}")
+    private int breakerFailureThreshold;
+
+    @Value("${app.cassandra.breaker.slow-call-ms:2000}")
+    private long breakerSlowCallMs;
+
+    @Value("${app.cassandra.breaker.open-duration-ms:5000}")
+    private long breakerOpenDurationMs;
+
+    private Semaphore writePermits;
+    private final Queue<PermitWaiter> permitWaiters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedWrites = new AtomicInteger();
+    // Сколько раз просили разобрать очередь: разбирает тот, кто поднял счетчик с нуля
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    // Отказывает простоявшим в очереди, даже если ни одна запись не завершается
+    private final ScheduledExecutorService permitReaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cassandra-permit-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private CircuitBreaker circuitBreaker;
+
+    private final LegacyMigrationProgress migration = new LegacyMigrationProgress();
+
+    public LogDAO(LogTemplateMiner templateMiner) {
+        this.templateMiner = templateMiner;
+    }
 
     @PostConstruct
     public void init() {
         log.info("=== Initializing LogDao ===");
+        writePermits = new Semaphore(maxInFlightWrites);
+        long reapIntervalMs = Math.max(10, writeAcquireTimeoutMs / 10);
+        permitReaper.scheduleWithFixedDelay(this::drainPermitWaiters, reapIntervalMs, reapIntervalMs, TimeUnit.MILLISECONDS);
+        countedIds = new LinkedHashMap<>(Math.min(countedIdsCapacity, 1 << 16), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+                return size() > countedIdsCapacity;
+            }
+        };
+        circuitBreaker = new CircuitBreaker("cassandra", breakerFailureThreshold, breakerSlowCallMs, breakerOpenDurationMs);
+
+        switch (schemaWriteMode) {
+            case "legacy" -> writeLegacy = true;
+            case "dual" -> {
+                writeLegacy = true;
+                writeBucketed = true;
+            }
+            case "bucketed" -> writeBucketed = true;
+            default -> throw new IllegalArgumentException("Unknown app.cassandra.schema.write-mode: " + schemaWriteMode);
+        }
+        switch (schemaReadMode) {
+            case "legacy" -> readBucketed = false;
+            case "bucketed" -> readBucketed = true;
+            default -> throw new IllegalArgumentException("Unknown app.cassandra.schema.read-mode: " + schemaReadMode);
+        }
+        switch (templateStorageMode) {
+            case "full" -> storeTemplates = false;
+            case "template" -> storeTemplates = true;
+            default -> throw new IllegalArgumentException("Unknown app.templates.storage-mode: " + templateStorageMode);
+        }
+        log.info("Cassandra schema: write-mode={}, read-mode={}, template-storage={}",
+                schemaWriteMode, schemaReadMode, templateStorageMode);
 
         try {
 
@@ -60,10 +313,15 @@ public class LogDAO {
                     + "level text, "
                     + "message text, "
                     + "host text, "
-                    + "metadata map<text, text>"
+                    + "metadata map<text, text>, "
+                    + "template_id uuid, "
+                    + "params list<text>, "
+                    + "counted boolean"
                     + ")";
 
             session.execute(createTable);
+            addTemplateColumns("logs");
+            addCountedColumn();
             log.info("Table 'logs' ready");
 
             try {
@@ -74,28 +332,313 @@ public class LogDAO {
                 log.warn("Index might already exist: {}", e.getMessage());
             }
 
+            // Партиция - значение поля (service/level/host) за сутки (UTC), внутри - newest-first
+            // по timeuuid события. Последние логи и диапазон времени читаются из одной-двух партиций.
+            // Уровней единицы, и сутки INFO - одна огромная партиция, поэтому level режется еще и по часу.
+            for (BucketTable table : BucketTable.values()) {
+                String createBucketedTable = "CREATE TABLE IF NOT EXISTS " + table.tableName + " ("
+                        + "service text, "
+                        + "bucket date, "
+                        + (table.hourly ? "hour int, " : "")
+                        + "event_time timeuuid, "
+                        + "id uuid, "
+                        + "timestamp timestamp, "
+                        + "level text, "
+                        + "message text, "
+                        + "host text, "
+                        + "metadata map<text, text>, "
+                        + "template_id uuid, "
+                        + "params list<text>, "
+                        + "PRIMARY KEY ((" + table.column + ", bucket" + (table.hourly ? ", hour" : "") + "), event_time)"
+                        + ") WITH CLUSTERING ORDER BY (event_time DESC)";
+
+                session.execute(createBucketedTable);
+                addTemplateColumns(table.tableName);
+                log.info("Table '{}' ready", table.tableName);
+            }
+
+            // Какие сервисы писали в бакет - для чтения без фильтра по сервису
+            String createServiceBuckets = "CREATE TABLE IF NOT EXISTS log_services_by_bucket ("
+                    + "bucket date, "
+                    + "service text, "
+                    + "PRIMARY KEY (bucket, service)"
+                    + ")";
+
+            session.execute(createServiceBuckets);
+            log.info("Table 'log_services_by_bucket' ready");
+
+            // Одна партиция: строк столько, сколько пар (service, level)
+            String createCounters = "CREATE TABLE IF NOT EXISTS log_counters ("
+                    + "scope text, "
+                    + "service text, "
+                    + "level text, "
+                    + "count counter, "
+                    + "PRIMARY KEY (scope, service, level)"
+                    + ")";
+
+            session.execute(createCounters);
+            log.info("Table 'log_counters' ready");
+
+            // Партиция - сервис + разрешение + период (сутки минут / месяц часов / год дней)
+            String createRollups = "CREATE TABLE IF NOT EXISTS log_rollups ("
+                    + "service text, "
+                    + "resolution text, "
+                    + "period date, "
+                    + "bucket timestamp, "
+                    + "level text, "
+                    + "host text, "
+                    + "count counter, "
+                    + "PRIMARY KEY ((service, resolution, period), bucket, level, host)"
+                    + ")";
+
+            session.execute(createRollups);
+            log.info("Table 'log_rollups' ready");
+
+            // Каталог шаблонов: id выводится из текста, поэтому текст никогда не меняется.
+            // superseded_by - id, которым шаблон заменило обобщение (null - шаблон текущий)
+            String createTemplates = "CREATE TABLE IF NOT EXISTS log_templates ("
+                    + "template_id uuid PRIMARY KEY, "
+                    + "template text, "
+                    + "token_count int, "
+                    + "superseded_by uuid"
+                    + ")";
+
+            session.execute(createTemplates);
+            try {
+                session.execute("ALTER TABLE log_templates ADD superseded_by uuid");
+                log.info("Column 'superseded_by' added to 'log_templates'");
+            } catch (Exception e) {
+                log.debug("Column 'superseded_by' in 'log_templates' already exists: {}", e.getMessage());
+            }
+            log.info("Table 'log_templates' ready");
+
+            // Партиция - сервис: строк в ней столько, сколько шаблонов у сервиса. Прежняя
+            // log_template_counts держала все пары (service, шаблон) в одной партиции scope='all'
+            String createTemplateCounts = "CREATE TABLE IF NOT EXISTS log_template_counts_by_service ("
+                    + "service text, "
+                    + "template_id uuid, "
+                    + "count counter, "
+                    + "PRIMARY KEY (service, template_id)"
+                    + ")";
+
+            session.execute(createTemplateCounts);
+            log.info("Table 'log_template_counts_by_service' ready");
+
+            // Разовые задачи обслуживания, выполненные на этом кластере
+            String createMaintenance = "CREATE TABLE IF NOT EXISTS log_maintenance ("
+                    + "task text PRIMARY KEY, "
+                    + "completed_at timestamp"
+                    + ")";
+
+            session.execute(createMaintenance);
+            log.info("Table 'log_maintenance' ready");
+
+            prepareStatements();
+            loadCountersBackfillState();
+            migrateTemplateCounts();
+            loadSupersededTemplates();
+            refreshCounters();
+            refreshTemplateCounters();
+
         } catch (Exception e) {
             log.error("Database initialization failed: {}", e.getMessage());
         }
     }
 
-    public Map<String, Object> saveLog(String service, String level, String message, String host, Map<String, String> metadata) {
+    // Таблицы, созданные до шаблонов, получают колонки template_id и params
+    private void addTemplateColumns(String table) {
+        try {
+            session.execute("ALTER TABLE " + table + " ADD (template_id uuid, params list<text>)");
+            log.info("Template columns added to '{}'", table);
+        } catch (Exception e) {
+            log.debug("Template columns in '{}' already exist: {}", table, e.getMessage());
+        }
+    }
+
+    // counted = true - строка уже учтена в log_counters и log_rollups (пишется вместе со строкой);
+    // строки, записанные до появления колонки, досчитывает перенос
+    private void addCountedColumn() {
+        try {
+            session.execute("ALTER TABLE logs ADD counted boolean");
+            log.info("Column 'counted' added to 'logs'");
+        } catch (Exception e) {
+            log.debug("Column 'counted' in 'logs' already exists: {}", e.getMessage());
+        }
+    }
+
+    // Досчет не нужен, если он уже выполнен или logs пуста (новая установка)
+    private void loadCountersBackfillState() {
+        Row done = session.execute(SimpleStatement.newInstance(
+                "SELECT completed_at FROM log_maintenance WHERE task = ?", COUNTERS_BACKFILL_TASK)).one();
+        if (done != null) {
+            countersBackfilledAt = done.getInstant("completed_at");
+            countersComplete = true;
+        } else if (session.execute("SELECT id FROM logs LIMIT 1").one() == null) {
+            markCountersBackfilled();
+        } else {
+            log.warn("Log counters do not include rows written before the upgrade; run POST /api/logs/migrate");
+        }
+    }
+
+    private void markCountersBackfilled() {
+        Instant now = Instant.now();
+        session.execute(SimpleStatement.newInstance(
+                "INSERT INTO log_maintenance (task, completed_at) VALUES (?, ?)", COUNTERS_BACKFILL_TASK, now));
+        countersBackfilledAt = now;
+        countersComplete = true;
+    }
+
+    // Разовый перенос счетчиков из прежней log_template_counts. Счетчики не идемпотентны: если
+    // процесс упадет посреди переноса, перенесенная часть при следующем старте удвоится
+    private void migrateTemplateCounts() {
+        if (session.execute(SimpleStatement.newInstance(
+                "SELECT completed_at FROM log_maintenance WHERE task = ?", TEMPLATE_COUNTS_MIGRATION_TASK)).one() != null) {
+            return;
+        }
+        boolean legacyTable = session.getMetadata().getKeyspace("logsleuth_keyspace")
+                .flatMap(keyspace -> keyspace.getTable("log_template_counts"))
+                .isPresent();
+        long rows = 0;
+        if (legacyTable) {
+            Map<String, List<BoundStatement>> byService = new HashMap<>();
+            for (Row row : session.execute(SimpleStatement.newInstance(
+                    "SELECT service, template_id, count FROM log_template_counts WHERE scope = 'all'").setPageSize(5000))) {
+                byService.computeIfAbsent(row.getString("service"), key -> new ArrayList<>())
+                        .add(incrementTemplateCountStatement.bind(row.getLong("count"), row.getString("service"),
+                                row.getUuid("template_id")));
+                rows++;
+            }
+            for (List<BoundStatement> group : byService.values()) {
+                for (int from = 0; from < group.size(); from += batchMaxStatements) {
+                    session.execute(BatchStatement.newInstance(DefaultBatchType.COUNTER,
+                            group.subList(from, Math.min(group.size(), from + batchMaxStatements))
+                                    .toArray(new BatchableStatement<?>[0])));
+                }
+            }
+        }
+        session.execute(SimpleStatement.newInstance("INSERT INTO log_maintenance (task, completed_at) VALUES (?, ?)",
+                TEMPLATE_COUNTS_MIGRATION_TASK, Instant.now()));
+        if (rows > 0) {
+            log.info("Moved {} template counters into log_template_counts_by_service", rows);
+        }
+    }
+
+    // Обобщения шаблонов из каталога: без них после рестарта счетчики старых id
+    // показывались бы отдельными шаблонами
+    private void loadSupersededTemplates() {
+        int loaded = 0;
+        for (Row row : session.execute(SimpleStatement.newInstance(
+                "SELECT template_id, superseded_by FROM log_templates").setPageSize(5000))) {
+            UUID current = row.getUuid("superseded_by");
+            if (current != null) {
+                templateMiner.rememberSuperseded(row.getUuid("template_id"), current);
+                loaded++;
+            }
+        }
+        log.info("Loaded {} superseded templates", loaded);
+    }
+
+    // Statements готовим один раз при старте, а не на каждый запрос
+    private void prepareStatements() {
+        insertLogStatement = session.prepare("INSERT INTO logs "
+                + "(id, timestamp, service, level, message, host, metadata, template_id, params, counted) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, true)");
+        markCountedStatement = session.prepare("UPDATE logs SET counted = true WHERE id = ?");
+        for (BucketTable table : BucketTable.values()) {
+            insertBucketedStatements.put(table, session.prepare("INSERT INTO " + table.tableName
+                    + " (service, bucket, event_time, id, timestamp, level, message, host, metadata, template_id, params"
+                    + (table.hourly ? ", hour) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)" : ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")));
+        }
+        insertTemplateStatement = session.prepare("INSERT INTO log_templates (template_id, template, token_count) "
+                + "VALUES (?, ?, ?)");
+        selectTemplateStatement = session.prepare("SELECT template FROM log_templates WHERE template_id = ?");
+        incrementTemplateCountStatement = session.prepare("UPDATE log_template_counts_by_service SET count = count + ? "
+                + "WHERE service = ? AND template_id = ?");
+        selectTemplateCountsStatement = session.prepare("SELECT template_id, count FROM log_template_counts_by_service "
+                + "WHERE service = ?");
+        updateSupersededStatement = session.prepare("UPDATE log_templates SET superseded_by = ? WHERE template_id = ?");
+        insertServiceBucketStatement = session.prepare("INSERT INTO log_services_by_bucket (bucket, service) VALUES (?, ?)");
+        incrementCounterStatement = session.prepare("UPDATE log_counters SET count = count + ? "
+                + "WHERE scope = 'all' AND service = ? AND level = ?");
+        selectCountersStatement = session.prepare("SELECT service, level, count FROM log_counters WHERE scope = 'all'");
+        incrementRollupStatement = session.prepare("UPDATE log_rollups SET count = count + ? "
+                + "WHERE service = ? AND resolution = ? AND period = ? AND bucket = ? AND level = ? AND host = ?");
+        selectRollupsStatement = session.prepare("SELECT bucket, level, host, count FROM log_rollups "
+                + "WHERE service = ? AND resolution = ? AND period = ? AND bucket >= ? AND bucket < ?");
+        deleteRollupPartitionStatement = session.prepare("DELETE FROM log_rollups "
+                + "WHERE service = ? AND resolution = ? AND period = ?");
+        selectServicesInBucketStatement = session.prepare("SELECT service FROM log_services_by_bucket WHERE bucket = ?");
+        selectFirstServiceInBucketStatement = session.prepare("SELECT service FROM log_services_by_bucket "
+                + "WHERE bucket = ? LIMIT 1");
+        selectNextServiceInBucketStatement = session.prepare("SELECT service FROM log_services_by_bucket "
+                + "WHERE bucket = ? AND service > ? LIMIT 1");
+        log.info("Prepared statements ready");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        permitReaper.shutdownNow();
+    }
+
+    private boolean isAvailable() {
+        return session != null && insertLogStatement != null;
+    }
+
+    private void requireAvailable() {
+        if (!isAvailable()) {
+            throw new IllegalStateException("Database not available");
+        }
+    }
+
+    // Для горячего пути: сессия есть и breaker записи закрыт
+    public boolean isWritable() {
+        return isAvailable() && circuitBreaker.isClosed();
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void ping() {
         if (session == null) {
+            throw new IllegalStateException("Database not available");
+        }
+        session.execute("SELECT release_version FROM system.local");
+    }
+
+    public Map<String, Object> saveLog(String service, String level, String message, String host, Map<String, String> metadata) {
+        if (!isAvailable()) {
             log.warn("Cassandra session not available");
             return Map.of("error", "Database not available");
         }
 
         try {
-            UUID id = UUID.randomUUID();
-            Instant timestamp = Instant.now();
+            return saveLogAsync(service, level, message, host, metadata).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            log.error("Failed to save log: {}", cause.getMessage());
+            return Map.of("error", String.valueOf(cause.getMessage()));
+        } catch (Exception e) {
+            log.error("Failed to save log: {}", e.getMessage());
+            return Map.of("error", e.getMessage());
+        }
+    }
 
-            String query = "INSERT INTO logs (id, timestamp, service, level, message, host, metadata) "
-                    + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    // Неблокирующая запись. Если в полете уже maxInFlightWrites запросов - запись ждет в очереди
+    // permit'ов (не занимая поток) не дольше writeAcquireTimeoutMs, после чего отклоняется.
+    public CompletionStage<Map<String, Object>> saveLogAsync(String service, String level, String message,
+                                                             String host, Map<String, String> metadata) {
+        if (!isAvailable()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Database not available"));
+        }
 
-            PreparedStatement prepared = session.prepare(query);
-            BoundStatement bound = prepared.bind(id, timestamp, service, level, message, host, metadata);
-            session.execute(bound);
+        UUID id = UUID.randomUUID();
+        Instant timestamp = Instant.now();
+        PendingWrites writes = new PendingWrites();
+        StoredText text = storedText(message, null, null, writes.newTemplates);
+        bindInserts(id, timestamp, service, level, text, host, metadata, writes);
 
+        return executeGrouped(writes).thenApply(statements -> {
             log.debug("Log saved: {} - {}", service, level);
 
             Map<String, Object> savedLog = new HashMap<>();
@@ -106,18 +649,270 @@ public class LogDAO {
             savedLog.put("message", message);
             savedLog.put("host", host);
             savedLog.put("metadata", metadata);
-
+            countStored(service, level, host, timestamp, text.templateId());
+            lastLog = savedLog;
             return savedLog;
+        });
+    }
 
-        } catch (Exception e) {
-            log.error("Failed to save log: {}", e.getMessage());
-            return Map.of("error", e.getMessage());
+    // Строки logs_by_*_bucket группируются по ключу партиции: группа -> UNLOGGED batch, одиночная
+    // строка -> обычный insert; строки logs - отдельные insert'ы. Stage завершается когда записана вся пачка.
+    public CompletionStage<Integer> saveLogsAsync(List<KafkaLogMessage> messages) {
+        if (!isAvailable()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Database not available"));
+        }
+
+        PendingWrites writes = new PendingWrites();
+        UUID[] ids = new UUID[messages.size()];
+        Instant[] timestamps = new Instant[messages.size()];
+        UUID[] templateIds = new UUID[messages.size()];
+        for (int i = 0; i < messages.size(); i++) {
+            KafkaLogMessage message = messages.get(i);
+            // Id сообщения - первичный ключ: повторная доставка перезаписывает ту же строку
+            UUID id = LogIds.toUuid(message.getId());
+            ids[i] = id;
+            Instant timestamp = message.getTimestamp() != null ? message.getTimestamp() : Instant.now();
+            timestamps[i] = timestamp;
+            StoredText text = storedText(message.getMessage(), message.getTemplateId(), message.getTemplateParams(),
+                    writes.newTemplates);
+            templateIds[i] = text.templateId();
+            bindInserts(id, timestamp, message.getService(), message.getLevel(), text,
+                    message.getHost(), message.getMetadata(), writes);
+        }
+
+        return executeGrouped(writes).thenApply(statements -> {
+            log.debug("Saved {} logs in {} statements", messages.size(), statements);
+            for (int i = 0; i < messages.size(); i++) {
+                KafkaLogMessage message = messages.get(i);
+                if (firstStore(ids[i])) {
+                    countStored(message.getService(), message.getLevel(), message.getHost(), timestamps[i], templateIds[i]);
+                }
+            }
+            if (!messages.isEmpty()) {
+                lastLog = toLogMap(messages.get(messages.size() - 1));
+            }
+            return messages.size();
+        });
+    }
+
+    // Insert'ы записи во все таблицы. В logs ключ партиции - id, у каждой строки своя партиция,
+    // поэтому это одиночные insert'ы; в logs_by_*_bucket строки группируются по (значение, bucket),
+    // в log_services_by_bucket - по bucket. Все logs_by_*_bucket - часть новой схемы
+    // и пишутся только при write-mode=dual или bucketed.
+    private void bindInserts(UUID id, Instant timestamp, String service, String level, StoredText text, String host,
+                             Map<String, String> metadata, PendingWrites writes) {
+        if (writeLegacy) {
+            writes.singles.add(unsetAbsent(insertLogStatement.bind(id, timestamp, service, level, text.message(), host, metadata,
+                            text.templateId(), text.params()), text));
+        }
+        if (writeBucketed) {
+            for (BucketTable table : BucketTable.values()) {
+                bindBucketed(table, id, timestamp, service, level, text, host, metadata, writes);
+            }
+        }
+    }
+
+    private void bindBucketed(BucketTable table, UUID id, Instant timestamp, String service, String level,
+                              StoredText text, String host, Map<String, String> metadata, PendingWrites writes) {
+        // Колонка ключа партиции не может быть null
+        service = service != null ? service : UNKNOWN_KEY;
+        level = level != null ? level : UNKNOWN_KEY;
+        host = host != null ? host : UNKNOWN_KEY;
+
+        String value = switch (table) {
+            case SERVICE -> service;
+            case LEVEL -> level;
+            case HOST -> host;
+        };
+        BucketKey partition = new BucketKey(table, value, table.slotOf(timestamp));
+        LocalDate bucket = table.day(partition.slot());
+        PreparedStatement insert = insertBucketedStatements.get(table);
+        BoundStatement bound = table.hourly
+                ? insert.bind(service, bucket, LogIds.timeUuid(timestamp, id), id, timestamp, level, text.message(),
+                        host, metadata, text.templateId(), text.params(), table.hour(partition.slot()))
+                : insert.bind(service, bucket, LogIds.timeUuid(timestamp, id), id, timestamp, level, text.message(),
+                        host, metadata, text.templateId(), text.params());
+        writes.byPartition.computeIfAbsent(partition, key -> new ArrayList<>()).add(unsetAbsent(bound, text));
+
+        if (table == BucketTable.SERVICE
+                && !registeredServiceBuckets.contains(partition) && writes.newServiceBuckets.add(partition)) {
+            writes.byPartition.computeIfAbsent(bucket, key -> new ArrayList<>())
+                    .add(insertServiceBucketStatement.bind(bucket, service));
+        }
+    }
+
+    // Текст строки: весь message или ссылка на шаблон. На шаблон, которого еще нет в log_templates,
+    // строка не ссылается без текста - он записывается вместе с ней, сжатыми будут следующие.
+    private StoredText storedText(String message, UUID templateId, List<String> params, Map<UUID, String> newTemplates) {
+        if (templateId == null) {
+            LogTemplateMatch match = templateMiner.mine(message);
+            if (match == null) {
+                return new StoredText(message, null, null);
+            }
+            templateId = match.templateId();
+            params = match.params();
+        }
+        if (!persistedTemplates.contains(templateId)) {
+            String template = templateMiner.templateText(templateId);
+            if (template != null) {
+                newTemplates.putIfAbsent(templateId, template);
+            }
+            return new StoredText(message, templateId, null);
+        }
+        return storeTemplates ? new StoredText(null, templateId, params) : new StoredText(message, templateId, null);
+    }
+
+    // Отсутствующие значения не пишем вовсе: null в INSERT - это tombstone на ячейку (для list -
+    // на всю коллекцию), и в режиме template экономия ушла бы в надгробия
+    private static BoundStatement unsetAbsent(BoundStatement statement, StoredText text) {
+        if (text.message() == null) {
+            statement = statement.unset("message");
+        }
+        if (text.templateId() == null) {
+            statement = statement.unset("template_id");
         }
+        if (text.params() == null || text.params().isEmpty()) {
+            statement = statement.unset("params");
+        }
+        return statement;
+    }
+
+    // Группа -> UNLOGGED batch (не больше batchMaxStatements), одиночная строка -> обычный insert.
+    // Пары (service, bucket) и шаблоны каталога запоминаются только после успешной записи.
+    private CompletableFuture<Integer> executeGrouped(PendingWrites writes) {
+        Set<BucketKey> newServiceBuckets = writes.newServiceBuckets;
+        Map<UUID, String> newTemplates = writes.newTemplates;
+        List<CompletableFuture<AsyncResultSet>> futures = new ArrayList<>();
+        for (BoundStatement statement : writes.singles) {
+            futures.add(executeWithPermit(statement).toCompletableFuture());
+        }
+        for (Map.Entry<UUID, String> template : newTemplates.entrySet()) {
+            int tokens = template.getValue().split(" ", -1).length;
+            futures.add(executeWithPermit(insertTemplateStatement.bind(template.getKey(), template.getValue(), tokens))
+                    .toCompletableFuture());
+        }
+        for (List<BoundStatement> group : writes.byPartition.values()) {
+            for (int from = 0; from < group.size(); from += batchMaxStatements) {
+                List<BoundStatement> chunk = group.subList(from, Math.min(group.size(), from + batchMaxStatements));
+                Statement<?> statement = chunk.size() == 1
+                        ? chunk.get(0)
+                        : BatchStatement.newInstance(DefaultBatchType.UNLOGGED, chunk.toArray(new BatchableStatement<?>[0]));
+                futures.add(executeWithPermit(statement).toCompletableFuture());
+            }
+        }
+
+        int statements = futures.size();
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    if (!newServiceBuckets.isEmpty()) {
+                        if (registeredServiceBuckets.size() > MAX_REGISTERED_SERVICE_BUCKETS) {
+                            registeredServiceBuckets.clear();
+                        }
+                        registeredServiceBuckets.addAll(newServiceBuckets);
+                    }
+                    if (!newTemplates.isEmpty()) {
+                        if (persistedTemplates.size() > MAX_PERSISTED_TEMPLATES) {
+                            persistedTemplates.clear();
+                        }
+                        persistedTemplates.addAll(newTemplates.keySet());
+                    }
+                    return statements;
+                });
+    }
+
+    private static LocalDate bucketOf(Instant timestamp) {
+        return LocalDate.ofInstant(timestamp, ZoneOffset.UTC);
+    }
+
+    // Вызывающий поток (listener Kafka, стадия pipeline) не паркуется: без свободного permit
+    // statement встает в очередь и уходит, когда завершится одна из записей в полете.
+    // Простоявший дольше writeAcquireTimeoutMs получает отказ; в полную очередь запись не встает.
+    private CompletionStage<AsyncResultSet> executeWithPermit(Statement<?> statement) {
+        if (writePermits.tryAcquire()) {
+            return executeHoldingPermit(statement);
+        }
+        if (queuedWrites.incrementAndGet() > maxQueuedWrites) {
+            queuedWrites.decrementAndGet();
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("Write queue is full: " + maxQueuedWrites + " writes waiting"));
+        }
+        CompletableFuture<AsyncResultSet> result = new CompletableFuture<>();
+        permitWaiters.add(new PermitWaiter(statement, result,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(writeAcquireTimeoutMs)));
+        // Permit мог освободиться между tryAcquire и постановкой в очередь
+        drainPermitWaiters();
+        return result;
+    }
+
+    private CompletionStage<AsyncResultSet> executeHoldingPermit(Statement<?> statement) {
+        long started = System.currentTimeMillis();
+        try {
+            return session.executeAsync(statement).whenComplete((result, error) -> {
+                releasePermit();
+                if (error == null) {
+                    circuitBreaker.recordSuccess(System.currentTimeMillis() - started);
+                } else {
+                    circuitBreaker.recordFailure(error);
+                }
+            });
+        } catch (RuntimeException e) {
+            releasePermit();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void releasePermit() {
+        writePermits.release();
+        drainPermitWaiters();
+    }
+
+    // Очередь разбирает один поток за раз: вложенный вызов (executeAsync, упавший синхронно,
+    // освобождает permit прямо внутри разбора) только поднимает drainRequests, и внешний цикл
+    // делает еще круг - без рекурсии. Голова очереди - самая старая запись, поэтому просроченные
+    // снимаются с головы и без свободных permit'ов (так их отклоняет и таймер permitReaper).
+    private void drainPermitWaiters() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int requests = 1;
+        do {
+            PermitWaiter waiter;
+            while ((waiter = permitWaiters.peek()) != null) {
+                if (System.nanoTime() - waiter.deadline() > 0) {
+                    permitWaiters.poll();
+                    queuedWrites.decrementAndGet();
+                    waiter.result().completeExceptionally(
+                            new IllegalStateException("Too many in-flight writes: " + maxInFlightWrites));
+                    continue;
+                }
+                if (!writePermits.tryAcquire()) {
+                    break;
+                }
+                permitWaiters.poll();
+                queuedWrites.decrementAndGet();
+                PermitWaiter started = waiter;
+                executeHoldingPermit(started.statement()).whenComplete((result, error) -> {
+                    if (error != null) {
+                        started.result().completeExceptionally(error);
+                    } else {
+                        started.result().complete(result);
+                    }
+                });
+            }
+            requests = drainRequests.addAndGet(-requests);
+        } while (requests != 0);
+    }
+
+    public int getInFlightWrites() {
+        return writePermits == null ? 0 : maxInFlightWrites - writePermits.availablePermits();
     }
 
+    public int getQueuedWrites() {
+        return queuedWrites.get();
+    }
 
     public List<Map<String, Object>> saveLogsBatch(List<Map<String, Object>> logs) {
-        List<Map<String, Object>> savedLogs = new ArrayList<>();
+        List<CompletableFuture<Map<String, Object>>> pending = new ArrayList<>();
 
         for (Map<String, Object> logEntry : logs) {
             String service = (String) logEntry.getOrDefault("service", "unknown");
@@ -128,154 +923,1111 @@ public class LogDAO {
             @SuppressWarnings("unchecked")
             Map<String, String> metadata = (Map<String, String>) logEntry.getOrDefault("metadata", new HashMap<>());
 
-            Map<String, Object> saved = saveLog(service, level, message, host, metadata);
-            savedLogs.add(saved);
+            pending.add(saveLogAsync(service, level, message, host, metadata).toCompletableFuture()
+                    .exceptionally(e -> {
+                        log.error("Failed to save log: {}", e.getMessage());
+                        return Map.of("error", String.valueOf(e.getMessage()));
+                    }));
+        }
+
+        List<Map<String, Object>> savedLogs = new ArrayList<>();
+        for (CompletableFuture<Map<String, Object>> future : pending) {
+            savedLogs.add(future.join());
         }
 
         return savedLogs;
     }
 
-    public List<Map<String, Object>> getAllLogs(int limit) {
-        List<Map<String, Object>> logs = new ArrayList<>();
+    public List<LogRow> getAllLogs(int limit) {
+        return getAllLogs(limit, LogField.ALL);
+    }
 
-        if (session == null) {
-            return logs;
+    // Ошибки чтения (и недоступная база) уходят вызывающему, а не превращаются в пустой список:
+    // пустой ответ QueryResultCache закэшировал бы как настоящий
+    public List<LogRow> getAllLogs(int limit, Set<LogField> fields) {
+        List<LogRow> logs = new ArrayList<>();
+
+        requireAvailable();
+        if (readBucketed) {
+            return getLogsByTimeRange(null, null, null, limit, fields);
         }
 
-        try {
-            String query = "SELECT * FROM logs LIMIT ?";
-            PreparedStatement prepared = session.prepare(query);
-            BoundStatement bound = prepared.bind(limit);
-            ResultSet result = session.execute(bound);
+        BoundStatement bound = projected(SELECT_ALL_LEGACY, null, fields).bind(limit);
+        ResultSet result = session.execute(bound);
+
+        for (Row row : result) {
+            logs.add(new LogRow(row, fields, this::resolveTemplate));
+        }
+
+        log.debug("Retrieved {} logs", logs.size());
+        return logs;
+    }
+
+    public List<LogRow> getLogsByService(String service, int limit) {
+        return getLogsByService(service, limit, LogField.ALL);
+    }
+
+    public List<LogRow> getLogsByService(String service, int limit, Set<LogField> fields) {
+        List<LogRow> logs = new ArrayList<>();
+
+        requireAvailable();
+        if (readBucketed) {
+            return getLogsByTimeRange(service, null, null, limit, fields);
+        }
+
+        BoundStatement bound = projected(SELECT_BY_SERVICE_LEGACY, null, fields).bind(service, limit);
+        ResultSet result = session.execute(bound);
+
+        for (Row row : result) {
+            logs.add(new LogRow(row, fields, this::resolveTemplate));
+        }
+
+        return logs;
+    }
 
-            for (Row row : result) {
-                Map<String, Object> logEntry = mapRowToLog(row);
-                logs.add(logEntry);
+    // Точечное чтение по первичному ключу legacy-таблицы; в режиме write-mode=bucketed она не пишется
+    public Optional<LogRow> getLogById(UUID id, Set<LogField> fields) {
+        if (!isAvailable() || !writeLegacy) {
+            return Optional.empty();
+        }
+        Row row = session.execute(projected(SELECT_BY_ID_LEGACY, null, fields).bind(id)).one();
+        return row != null ? Optional.of(new LogRow(row, fields, this::resolveTemplate)) : Optional.empty();
+    }
+
+    public boolean isIdLookupSupported() {
+        return isAvailable() && writeLegacy;
+    }
+
+    // service == null - все сервисы, писавшие в бакет. При read-mode=legacy читается logs:
+    // без границ времени - как раньше, с границами - фильтром по timestamp
+    public List<LogRow> getLogsByTimeRange(String service, Instant from, Instant to, int limit, Set<LogField> fields) {
+        if (!readBucketed) {
+            if (from == null && to == null) {
+                return service != null ? getLogsByService(service, limit, fields) : getAllLogs(limit, fields);
             }
+            return readLegacy(BucketTable.SERVICE, service, from, to, limit, fields);
+        }
+        return readBuckets(BucketTable.SERVICE, service, from, to, limit, fields);
+    }
 
-            log.debug("Retrieved {} logs", logs.size());
+    public List<LogRow> getLogsByLevel(String level, Instant from, Instant to, int limit, Set<LogField> fields) {
+        if (!readBucketed) {
+            return readLegacy(BucketTable.LEVEL, level, from, to, limit, fields);
+        }
+        return readBuckets(BucketTable.LEVEL, level, from, to, limit, fields);
+    }
 
-        } catch (Exception e) {
-            log.error("Failed to get logs: {}", e.getMessage());
+    public List<LogRow> getLogsByHost(String host, Instant from, Instant to, int limit, Set<LogField> fields) {
+        if (!readBucketed) {
+            return readLegacy(BucketTable.HOST, host, from, to, limit, fields);
         }
+        return readBuckets(BucketTable.HOST, host, from, to, limit, fields);
+    }
 
+    // Чтение logs до переноса (read-mode=legacy): тот же фильтр, что и у bucket-таблицы table,
+    // но по колонке logs. Порядок - токенов, а не времени, как у прежних getAllLogs/getLogsByService
+    private List<LogRow> readLegacy(BucketTable table, String value, Instant from, Instant to, int limit,
+                                    Set<LogField> fields) {
+        List<LogRow> logs = new ArrayList<>();
+        requireAvailable();
+        if (limit <= 0) {
+            return logs;
+        }
+        for (Row row : session.execute(legacyFiltered(table, value, from, to, limit, fields).setPageSize(limit))) {
+            logs.add(new LogRow(row, fields, this::resolveTemplate));
+        }
         return logs;
     }
 
+    // SELECT по logs с равенством по колонке table и диапазоном timestamp. service находится по
+    // вторичному индексу, level, host и timestamp - только ALLOW FILTERING (скан, как было до
+    // bucket-таблиц). limit == 0 - без LIMIT, размер страницы задает драйвер.
+    private BoundStatement legacyFiltered(BucketTable table, String value, Instant from, Instant to, int limit,
+                                          Set<LogField> fields) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        if (value != null) {
+            conditions.add(table.column + " = ?");
+            values.add(value);
+        }
+        if (from != null) {
+            conditions.add("timestamp >= ?");
+            values.add(from);
+        }
+        if (to != null) {
+            conditions.add("timestamp <= ?");
+            values.add(to);
+        }
+        StringBuilder cql = new StringBuilder("SELECT {columns} FROM logs");
+        if (!conditions.isEmpty()) {
+            cql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        if (limit > 0) {
+            cql.append(" LIMIT ?");
+            values.add(limit);
+        }
+        if (!conditions.isEmpty()) {
+            cql.append(" ALLOW FILTERING");
+        }
+        return projected(cql.toString(), null, fields).bind(values.toArray());
+    }
 
-    public List<Map<String, Object>> getLogsByService(String service, int limit) {
-        List<Map<String, Object>> logs = new ArrayList<>();
+    // Готовит (один раз) SELECT с колонками проекции; table == null - запрос к legacy logs
+    private PreparedStatement projected(String template, BucketTable table, Set<LogField> fields) {
+        StringBuilder columns = new StringBuilder(table != null ? "event_time" : "");
+        for (LogField field : fields) {
+            if (columns.length() > 0) {
+                columns.append(", ");
+            }
+            columns.append(field.column());
+        }
+        // В режиме template message пуст - текст собирается из шаблона и параметров
+        if (fields.contains(LogField.MESSAGE)) {
+            columns.append(", template_id, params");
+        }
+        String cql = template.replace("{columns}", columns);
+        if (table != null) {
+            cql = cql.replace("{table}", table.tableName)
+                    .replace("{partition}", table.column + " = ? AND bucket = ?" + (table.hourly ? " AND hour = ?" : ""));
+        }
+        return projectedStatements.computeIfAbsent(cql, session::prepare);
+    }
 
-        if (session == null) {
+    // Newest-first чтение из logs_by_*_bucket: идем по суткам от to к from, все партиции суток
+    // (сервисы бакета или 24 часа level) читаем параллельно и останавливаемся, как только набрали
+    // limit - более старые сутки не запрашиваются.
+    private List<LogRow> readBuckets(BucketTable table, String value, Instant from, Instant to, int limit,
+                                     Set<LogField> fields) {
+        List<LogRow> logs = new ArrayList<>();
+
+        requireAvailable();
+        // Перечислить партиции бакета умеем только для сервисов (log_services_by_bucket)
+        if (limit <= 0 || (value == null && table != BucketTable.SERVICE)) {
             return logs;
         }
+        requireBucketedRead();
+
+        long newest = table.slotOf(to != null ? to : Instant.now());
+        long oldest = oldestSlot(table, from, to);
+        checkFanOut(table, oldest, newest);
+        List<Row> rows = new ArrayList<>();
 
         try {
-            String query = "SELECT * FROM logs WHERE service = ? LIMIT ?";
-            PreparedStatement prepared = session.prepare(query);
-            BoundStatement bound = prepared.bind(service, limit);
-            ResultSet result = session.execute(bound);
+            for (long dayEnd = newest; dayEnd >= oldest; ) {
+                long dayStart = Math.max(oldest, table.firstSlotOfDay(dayEnd));
+                List<String> values = value != null ? List.of(value) : getServicesInBucket(table.day(dayEnd));
+                List<CompletableFuture<AsyncResultSet>> partitions = new ArrayList<>();
+                for (long slot = dayEnd; slot >= dayStart; slot--) {
+                    UUID[] bounds = bucketBounds(table, slot, from, to);
+                    for (String partitionValue : values) {
+                        BoundStatement bound = bindPartition(projected(SELECT_BUCKET_RANGE, table, fields),
+                                table, partitionValue, slot, bounds[0], bounds[1], limit)
+                                .setPageSize(limit);
+                        partitions.add(session.executeAsync(bound).toCompletableFuture());
+                    }
+                }
+                for (CompletableFuture<AsyncResultSet> partition : partitions) {
+                    partition.join().currentPage().forEach(rows::add);
+                }
+
+                // Все более старые сутки целиком старше уже набранного
+                if (rows.size() >= limit) {
+                    break;
+                }
+                dayEnd = dayStart - 1;
+            }
 
-            for (Row row : result) {
-                logs.add(mapRowToLog(row));
+            // Каждая партиция уже отсортирована по убыванию - сливаем и обрезаем до limit
+            rows.sort(Comparator.comparingLong((Row row) -> row.getUuid("event_time").timestamp()).reversed());
+            for (Row row : rows.subList(0, Math.min(limit, rows.size()))) {
+                logs.add(new LogRow(row, fields, this::resolveTemplate));
             }
 
-        } catch (Exception e) {
-            log.error("Failed to get logs by service: {}", e.getMessage());
+        } catch (CompletionException e) {
+            // Неполный список по части партиций выдал бы себя за полный ответ
+            log.error("Failed to read {}: {}", table.tableName, e.getMessage());
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
         }
 
         return logs;
     }
 
-    public List<Map<String, Object>> getLogsByLevel(String level, int limit) {
-        List<Map<String, Object>> logs = new ArrayList<>();
+    // bucket-таблицы - часть новой схемы: при read-mode=legacy по ним не читаем, они могут быть
+    // не заполнены (перенос еще не сделан) или не писаться вовсе (write-mode=legacy)
+    private void requireBucketedRead() {
+        if (!readBucketed) {
+            throw new IllegalStateException("Bucketed tables are not read: app.cassandra.schema.read-mode=legacy");
+        }
+    }
+
+    public boolean isBucketedReadEnabled() {
+        return readBucketed;
+    }
 
-        if (session == null) {
-            return logs;
+    // Каждый бакет - минимум один запрос: слишком широкий диапазон отклоняем до первого запроса
+    private void checkFanOut(BucketTable table, long oldest, long newest) {
+        long days = (newest - oldest) / table.slotsPerDay() + 1;
+        if (days > maxFanOutDays) {
+            throw new IllegalArgumentException("Time range spans " + days + " days, at most " + maxFanOutDays
+                    + " days can be read from " + table.tableName);
         }
+    }
 
+    // Самый старый бакет чтения: от from или lookbackDays суток назад от to
+    private long oldestSlot(BucketTable table, Instant from, Instant to) {
+        if (from != null) {
+            return table.slotOf(from);
+        }
+        LocalDate oldestDay = bucketOf(to != null ? to : Instant.now()).minusDays(Math.max(0, bucketLookbackDays - 1));
+        return table.slotOf(oldestDay.atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+
+    // Значения ключа партиции (поле, день[, час]), затем остальные параметры запроса
+    private static BoundStatement bindPartition(PreparedStatement statement, BucketTable table, String value, long slot,
+                                                Object... rest) {
+        List<Object> values = new ArrayList<>(rest.length + 3);
+        values.add(value);
+        values.add(table.day(slot));
+        if (table.hourly) {
+            values.add(table.hour(slot));
+        }
+        values.addAll(Arrays.asList(rest));
+        return statement.bind(values.toArray());
+    }
+
+    // Диапазон event_time внутри бакета с учетом from/to
+    private static UUID[] bucketBounds(BucketTable table, long slot, Instant from, Instant to) {
+        Instant bucketStart = table.start(slot);
+        Instant bucketEnd = bucketStart.plus(table.width).minusMillis(1);
+        return new UUID[]{
+                Uuids.startOf((from != null && from.isAfter(bucketStart) ? from : bucketStart).toEpochMilli()),
+                Uuids.endOf((to != null && to.isBefore(bucketEnd) ? to : bucketEnd).toEpochMilli())
+        };
+    }
+
+    // Начальная позиция чтения по фильтру: service, level или host (первый заданный), иначе все сервисы.
+    // При read-mode=legacy курсор указывает на logs (таблица LEGACY_<фильтр>), бакетов у него нет.
+    private LogCursor newCursor(String service, String level, String host, Instant from, Instant to) {
+        BucketTable table = BucketTable.SERVICE;
+        String value = service;
+        if (value == null && level != null) {
+            table = BucketTable.LEVEL;
+            value = level;
+        } else if (value == null && host != null) {
+            table = BucketTable.HOST;
+            value = host;
+        }
+        long fromMillis = from != null ? from.toEpochMilli() : LogCursor.NO_BOUND;
+        long toMillis = to != null ? to.toEpochMilli() : LogCursor.NO_BOUND;
+        if (!readBucketed) {
+            return new LogCursor(LEGACY_CURSOR_PREFIX + table.name(), value, fromMillis, toMillis, 0, 0, null, null);
+        }
+        long newest = table.slotOf(to != null ? to : Instant.now());
+        long oldest = oldestSlot(table, from, to);
+        checkFanOut(table, oldest, newest);
+        return new LogCursor(table.name(), value, fromMillis, toMillis, oldest, newest, null, null);
+    }
+
+    // Таблица курсора от клиента: только известные, и bucket-курсор не шире max-fan-out-days
+    private BucketTable cursorTable(LogCursor cursor, boolean legacy) {
+        BucketTable table;
         try {
-            String query = "SELECT * FROM logs WHERE level = ? LIMIT ? ALLOW FILTERING";
-            PreparedStatement prepared = session.prepare(query);
-            BoundStatement bound = prepared.bind(level, limit);
+            table = BucketTable.valueOf(legacy ? cursor.table().substring(LEGACY_CURSOR_PREFIX.length()) : cursor.table());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (!legacy) {
+            checkFanOut(table, cursor.oldestBucket(), cursor.bucket());
+        }
+        return table;
+    }
+
+    private static Instant boundOf(long millis) {
+        return millis == LogCursor.NO_BOUND ? null : Instant.ofEpochMilli(millis);
+    }
+
+    private static LogCursor nextBucket(LogCursor position) {
+        return position.bucket() - 1 < position.oldestBucket() ? null : position.withPosition(position.bucket() - 1, null, null);
+    }
+
+    // Страница не больше pageSize строк и токен следующей (null - дальше ничего нет). Позиция внутри
+    // партиции - paging state драйвера, поэтому каждый запрос читает только свою страницу.
+    // С фильтром строки идут newest-first; без фильтра - по дням newest-first, внутри дня по сервисам.
+    // Одна страница делает не больше maxPageQueries запросов и может вернуться неполной с токеном.
+    public Map<String, Object> getLogsPage(String service, String level, String host, Instant from, Instant to,
+                                           int pageSize, String cursorToken, Set<LogField> fields) {
+        requireAvailable();
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+
+        LogCursor start = cursorToken != null && !cursorToken.isEmpty()
+                ? LogCursor.decode(cursorToken)
+                : newCursor(service, level, host, from, to);
+        boolean legacy = start.table().startsWith(LEGACY_CURSOR_PREFIX);
+        BucketTable table = cursorTable(start, legacy);
+        if (legacy) {
+            return getLegacyPage(start, table, pageSize, fields);
+        }
+        requireBucketedRead();
+        Instant fromBound = boundOf(start.fromMillis());
+        Instant toBound = boundOf(start.toMillis());
+
+        List<LogRow> logs = new ArrayList<>();
+        LogCursor position = start;
+        for (int queries = 0; position != null && logs.size() < pageSize && queries < maxPageQueries; queries++) {
+            LocalDate bucket = table.day(position.bucket());
+            String partition = start.value() != null ? start.value()
+                    : position.service() != null ? position.service() : nextServiceInBucket(bucket, null);
+            if (partition == null) {
+                position = nextBucket(position);
+                continue;
+            }
+
+            UUID[] bounds = bucketBounds(table, position.bucket(), fromBound, toBound);
+            BoundStatement bound = bindPartition(projected(SELECT_BUCKET_PAGE, table, fields),
+                    table, partition, position.bucket(), bounds[0], bounds[1])
+                    .setPageSize(pageSize - logs.size());
+            if (position.pagingState() != null) {
+                bound = bound.setPagingState(position.pagingState());
+            }
+
             ResultSet result = session.execute(bound);
+            // Только текущая страница: итерация дальше заставила бы драйвер дочитывать партицию
+            Iterator<Row> rows = result.iterator();
+            for (int i = result.getAvailableWithoutFetching(); i > 0; i--) {
+                logs.add(new LogRow(rows.next(), fields, this::resolveTemplate));
+            }
 
-            for (Row row : result) {
-                logs.add(mapRowToLog(row));
+            ByteBuffer pagingState = result.getExecutionInfo().getPagingState();
+            if (pagingState != null) {
+                position = position.withPosition(position.bucket(), partition, pagingState);
+            } else if (start.value() == null) {
+                String nextService = nextServiceInBucket(bucket, partition);
+                position = nextService != null ? position.withPosition(position.bucket(), nextService, null) : nextBucket(position);
+            } else {
+                position = nextBucket(position);
             }
+        }
 
-        } catch (Exception e) {
-            log.error("Failed to get logs by level: {}", e.getMessage());
+        Map<String, Object> page = new HashMap<>();
+        page.put("logs", logs);
+        page.put("nextCursor", position != null ? position.encode() : null);
+        return page;
+    }
+
+    // Страница logs в порядке токенов: позиция - paging state драйвера по тому же запросу с фильтром.
+    // С ALLOW FILTERING страница драйвера может прийти неполной или пустой - дочитываем следующие.
+    private Map<String, Object> getLegacyPage(LogCursor start, BucketTable table, int pageSize, Set<LogField> fields) {
+        BoundStatement query = legacyFiltered(table, start.value(), boundOf(start.fromMillis()), boundOf(start.toMillis()),
+                0, fields);
+        List<LogRow> logs = new ArrayList<>();
+        ByteBuffer pagingState = start.pagingState();
+        int queries = 0;
+        do {
+            BoundStatement bound = query.setPageSize(pageSize - logs.size());
+            if (pagingState != null) {
+                bound = bound.setPagingState(pagingState);
+            }
+            ResultSet result = session.execute(bound);
+            Iterator<Row> rows = result.iterator();
+            for (int i = result.getAvailableWithoutFetching(); i > 0; i--) {
+                logs.add(new LogRow(rows.next(), fields, this::resolveTemplate));
+            }
+            pagingState = result.getExecutionInfo().getPagingState();
+        } while (pagingState != null && logs.size() < pageSize && ++queries < maxPageQueries);
+
+        Map<String, Object> page = new HashMap<>();
+        page.put("logs", logs);
+        page.put("nextCursor", pagingState != null ? start.withPosition(0, null, pagingState).encode() : null);
+        return page;
+    }
+
+    private String nextServiceInBucket(LocalDate bucket, String after) {
+        BoundStatement bound = after == null
+                ? selectFirstServiceInBucketStatement.bind(bucket)
+                : selectNextServiceInBucketStatement.bind(bucket, after);
+        Row row = session.execute(bound).one();
+        return row != null ? row.getString("service") : null;
+    }
+
+    // Потоковая выгрузка в том же порядке, что и getLogsPage: строки отдаются по мере прихода
+    // страниц, в памяти не больше двух страниц - следующая запрашивается, пока отдается текущая.
+    // pageEnd вызывается после каждой страницы (например, flush ответа).
+    public long streamLogs(String service, String level, String host, Instant from, Instant to, long limit,
+                           Set<LogField> fields, Consumer<LogRow> rowConsumer, Runnable pageEnd) {
+        requireAvailable();
+
+        LogCursor start = newCursor(service, level, host, from, to);
+        BucketTable table = cursorTable(start, !readBucketed);
+        if (!readBucketed) {
+            return streamQuery(legacyFiltered(table, start.value(), from, to, 0, fields), limit, 0,
+                    fields, rowConsumer, pageEnd);
+        }
+        long written = 0;
+
+        for (long slot = start.bucket(); slot >= start.oldestBucket() && written < limit; slot--) {
+            UUID[] bounds = bucketBounds(table, slot, from, to);
+            List<String> partitions = start.value() != null ? List.of(start.value()) : getServicesInBucket(table.day(slot));
+
+            for (String partition : partitions) {
+                if (written >= limit) {
+                    break;
+                }
+                BoundStatement bound = bindPartition(projected(SELECT_BUCKET_PAGE, table, fields),
+                        table, partition, slot, bounds[0], bounds[1]);
+                written = streamQuery(bound, limit, written, fields, rowConsumer, pageEnd);
+            }
         }
 
-        return logs;
+        return written;
     }
 
-    public Map<String, Object> getStats() {
-        Map<String, Object> stats = new HashMap<>();
+    // Страницы одного запроса до limit строк всего: следующая запрашивается, пока отдается текущая.
+    // Возвращает written с учетом отданных строк.
+    private long streamQuery(BoundStatement bound, long limit, long written, Set<LogField> fields,
+                             Consumer<LogRow> rowConsumer, Runnable pageEnd) {
+        CompletableFuture<AsyncResultSet> next = session.executeAsync(bound.setPageSize(streamFirstPageSize))
+                .toCompletableFuture();
+
+        while (next != null && written < limit) {
+            AsyncResultSet page = next.join();
+            next = page.hasMorePages()
+                    ? session.executeAsync(bound.setPagingState(page.getExecutionInfo().getPagingState())
+                            .setPageSize(streamPageSize)).toCompletableFuture()
+                    : null;
+            for (Row row : page.currentPage()) {
+                if (written >= limit) {
+                    break;
+                }
+                rowConsumer.accept(new LogRow(row, fields, this::resolveTemplate));
+                written++;
+            }
+            pageEnd.run();
+        }
+        return written;
+    }
 
-        if (session == null) {
-            return stats;
+    private List<String> getServicesInBucket(LocalDate bucket) {
+        List<String> services = new ArrayList<>();
+        for (Row row : session.execute(selectServicesInBucketStatement.bind(bucket))) {
+            services.add(row.getString("service"));
         }
+        return services;
+    }
 
-        try {
+    // Запускает перенос logs -> logs_by_*_bucket в отдельном потоке: полный скан таблицы не держит
+    // HTTP-поток. false - перенос уже идет; ход переноса - getLegacyMigrationProgress().
+    public boolean startLegacyMigration(int maxRows) {
+        requireAvailable();
+        if (!migration.start(maxRows)) {
+            return false;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                migrateLegacyLogs(maxRows);
+                migration.completed();
+                log.info("Migrated {} legacy logs in {} statements", migration.getCopied(), migration.getStatements());
+            } catch (Exception e) {
+                migration.failed(String.valueOf(e.getMessage()));
+                log.error("Legacy logs migration failed after {} rows: {}", migration.getCopied(), e.getMessage());
+            }
+        }, "legacy-logs-migration");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
 
-            ResultSet countResult = session.execute("SELECT COUNT(*) FROM logs");
-            Row countRow = countResult.one();
-            long total = countRow != null ? countRow.getLong(0) : 0;
-            stats.put("total", total);
+    public Map<String, Object> getLegacyMigrationProgress() {
+        return migration.toMap();
+    }
 
-            stats.put("byLevel", getCountByLevel());
+    // Переносит строки старой таблицы logs в logs_by_*_bucket. Event_time выводится из
+    // (timestamp, id), поэтому повторный запуск и параллельная dual-запись не создают дублей.
+    // Заодно досчитывает счетчики и rollups по строкам без counted: строка помечается counted
+    // вместе с переносом страницы, поэтому повторный запуск ее второй раз не посчитает.
+    // Прогресс обновляется после каждой страницы скана.
+    private void migrateLegacyLogs(int maxRows) {
+        int copied = 0;
+        int pageRows = 0;
+        boolean scannedAll = true;
+        PendingWrites writes = new PendingWrites();
+        List<Row> uncounted = new ArrayList<>();
+
+        ResultSet result = session.execute(SimpleStatement.newInstance("SELECT * FROM logs").setPageSize(batchMaxStatements * 5));
+        for (Row row : result) {
+            if (copied >= maxRows) {
+                scannedAll = false;
+                break;
+            }
+            UUID id = row.getUuid("id");
+            Instant timestamp = row.getInstant("timestamp") != null ? row.getInstant("timestamp") : Instant.EPOCH;
+            if (!row.getBoolean("counted")) {
+                uncounted.add(row);
+                writes.singles.add(markCountedStatement.bind(id));
+            }
+            // Строка копируется как есть: ссылка на шаблон остается ссылкой
+            StoredText text = new StoredText(row.getString("message"), row.getUuid("template_id"),
+                    row.isNull("params") ? null : row.getList("params", String.class));
+            for (BucketTable table : BucketTable.values()) {
+                bindBucketed(table, id, timestamp, row.getString("service"), row.getString("level"),
+                        text, row.getString("host"),
+                        row.getMap("metadata", String.class, String.class), writes);
+            }
+            copied++;
+            pageRows++;
+
+            if (result.getAvailableWithoutFetching() == 0) {
+                copyMigrationPage(writes, pageRows, uncounted);
+                writes = new PendingWrites();
+                uncounted = new ArrayList<>();
+                pageRows = 0;
+            }
+        }
+        if (pageRows > 0) {
+            copyMigrationPage(writes, pageRows, uncounted);
+        }
+        if (scannedAll && !countersComplete) {
+            markCountersBackfilled();
+            log.info("Log counters backfilled from legacy logs");
+        }
+    }
 
-            stats.put("byService", getCountByService());
+    // Счетчики растут только после записи страницы (вместе с пометками counted): при ошибке
+    // страница не учтена и будет посчитана повторным запуском. Дельты уходят в Cassandra
+    // обычным flushCounters - если процесс упадет раньше, эти строки останутся неучтенными.
+    private void copyMigrationPage(PendingWrites writes, int rows, List<Row> uncounted) {
+        int statements = executeGrouped(writes).join();
+        for (Row row : uncounted) {
+            countStored(row.getString("service"), row.getString("level"), row.getString("host"),
+                    row.getInstant("timestamp") != null ? row.getInstant("timestamp") : Instant.EPOCH,
+                    row.getUuid("template_id"));
+        }
+        migration.copied(rows, statements, uncounted.size());
+    }
 
-            List<Map<String, Object>> recent = getAllLogs(1);
-            if (!recent.isEmpty()) {
-                stats.put("lastLog", recent.get(0));
+    public Map<String, Object> getSchemaInfo() {
+        Map<String, Object> schema = new HashMap<>();
+        schema.put("writeMode", schemaWriteMode);
+        schema.put("readMode", schemaReadMode);
+        schema.put("lookbackDays", bucketLookbackDays);
+        schema.put("registeredServiceBuckets", registeredServiceBuckets.size());
+        schema.put("templateStorage", templateStorageMode);
+        schema.put("persistedTemplates", persistedTemplates.size());
+        schema.put("migration", migration.toMap());
+        return schema;
+    }
+
+    public List<LogRow> getLogsByLevel(String level, int limit) {
+        return getLogsByLevel(level, null, null, limit, LogField.ALL);
+    }
+
+    // false - id уже учтен (в пределах LRU): строка перезаписана, счетчики и rollups не трогаем
+    private boolean firstStore(UUID id) {
+        synchronized (countedIds) {
+            if (countedIds.putIfAbsent(id, Boolean.TRUE) == null) {
+                return true;
             }
+        }
+        repeatedStores.incrementAndGet();
+        return false;
+    }
+
+    private void countStored(String service, String level, String host, Instant timestamp, UUID templateId) {
+        service = service != null ? service : UNKNOWN_KEY;
+        level = level != null ? level : UNKNOWN_KEY;
+        counters.add(new LogCounters.CounterKey(service, level), 1);
+        if (templateId != null) {
+            templateCounters.add(new LogCounters.TemplateKey(service, templateId), 1);
+        }
+        rollups.add(service, level, host != null ? host : UNKNOWN_KEY, timestamp);
+        globalGeneration.incrementAndGet();
+        serviceGenerations.computeIfAbsent(service, key -> new AtomicLong()).incrementAndGet();
+        levelGenerations.computeIfAbsent(level, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    // Поколение данных, от которых зависит чтение с таким фильтром: по сервису, иначе по уровню,
+    // иначе общее. Меняется при любой записи, которая могла изменить результат.
+    public long getReadGeneration(String service, String level) {
+        if (service != null) {
+            AtomicLong generation = serviceGenerations.get(service);
+            return generation != null ? generation.get() : 0;
+        }
+        if (level != null) {
+            AtomicLong generation = levelGenerations.get(level);
+            return generation != null ? generation.get() : 0;
+        }
+        return globalGeneration.get();
+    }
 
+    private static Map<String, Object> toLogMap(KafkaLogMessage message) {
+        Map<String, Object> logEntry = new HashMap<>();
+        logEntry.put("id", LogIds.canonical(message.getId()));
+        logEntry.put("timestamp", String.valueOf(message.getTimestamp()));
+        logEntry.put("service", message.getService());
+        logEntry.put("level", message.getLevel());
+        logEntry.put("message", message.getMessage());
+        logEntry.put("host", message.getHost());
+        logEntry.put("metadata", message.getMetadata());
+        return logEntry;
+    }
+
+    // Отправляет накопленные дельты счетчиков одним COUNTER batch'ем и перечитывает итоги
+    // (в них попадают и записи других инстансов). При ошибке дельты остаются и уйдут в
+    // следующий раз; если ошибка была таймаутом уже примененного batch'а, итог завысится.
+    @Scheduled(initialDelayString = "${app.cassandra.counters.flush-interval-ms:5000}",
+            fixedDelayString = "${app.cassandra.counters.flush-interval-ms:5000}")
+    public synchronized void flushCounters() {
+        if (!isAvailable()) {
+            return;
+        }
+
+        Map<LogCounters.CounterKey, Long> deltas = counters.pendingDeltas();
+        List<Map.Entry<LogCounters.CounterKey, Long>> entries = new ArrayList<>(deltas.entrySet());
+        try {
+            for (int from = 0; from < entries.size(); from += batchMaxStatements) {
+                List<Map.Entry<LogCounters.CounterKey, Long>> chunk =
+                        entries.subList(from, Math.min(entries.size(), from + batchMaxStatements));
+                BatchStatementBuilder batch = BatchStatement.builder(DefaultBatchType.COUNTER);
+                for (Map.Entry<LogCounters.CounterKey, Long> entry : chunk) {
+                    batch.addStatement(incrementCounterStatement.bind(
+                            entry.getValue(), entry.getKey().service(), entry.getKey().level()));
+                }
+                executeWithPermit(batch.build()).toCompletableFuture().join();
+                chunk.forEach(entry -> counters.markFlushed(entry.getKey(), entry.getValue()));
+            }
+            refreshCounters();
         } catch (Exception e) {
-            log.error("Failed to get stats: {}", e.getMessage());
+            counterFlushFailures.incrementAndGet();
+            log.warn("Failed to flush log counters: {}", e.getMessage());
         }
 
-        return stats;
+        flushRollups();
+        flushTemplateCounters();
     }
 
-    private Map<String, Long> getCountByLevel() {
-        Map<String, Long> counts = new HashMap<>();
+    // Дельты по (service, шаблон) COUNTER batch'ами в пределах партиции сервиса. Итоги других
+    // инстансов перечитываются не чаще templateCountsRefreshIntervalMs: это скан всех партиций
+    private void flushTemplateCounters() {
+        persistSuperseded();
 
+        Map<String, List<Map.Entry<LogCounters.TemplateKey, Long>>> byService = new HashMap<>();
+        for (Map.Entry<LogCounters.TemplateKey, Long> entry : templateCounters.pendingDeltas().entrySet()) {
+            byService.computeIfAbsent(entry.getKey().service(), key -> new ArrayList<>()).add(entry);
+        }
         try {
+            for (List<Map.Entry<LogCounters.TemplateKey, Long>> entries : byService.values()) {
+                for (int from = 0; from < entries.size(); from += batchMaxStatements) {
+                    List<Map.Entry<LogCounters.TemplateKey, Long>> chunk =
+                            entries.subList(from, Math.min(entries.size(), from + batchMaxStatements));
+                    BatchStatementBuilder batch = BatchStatement.builder(DefaultBatchType.COUNTER);
+                    for (Map.Entry<LogCounters.TemplateKey, Long> entry : chunk) {
+                        batch.addStatement(incrementTemplateCountStatement.bind(
+                                entry.getValue(), entry.getKey().service(), entry.getKey().templateId()));
+                    }
+                    executeWithPermit(batch.build()).toCompletableFuture().join();
+                    chunk.forEach(entry -> templateCounters.markFlushed(entry.getKey(), entry.getValue()));
+                }
+            }
+            if (System.currentTimeMillis() - templateCountsRefreshedAt >= templateCountsRefreshIntervalMs) {
+                refreshTemplateCounters();
+            }
+        } catch (Exception e) {
+            counterFlushFailures.incrementAndGet();
+            log.warn("Failed to flush template counters: {}", e.getMessage());
+        }
+    }
+
+    // superseded_by в каталоге; незаписанное остается в pendingSuperseded до следующего flush
+    private void persistSuperseded() {
+        pendingSuperseded.putAll(templateMiner.drainSuperseded());
+        if (pendingSuperseded.isEmpty()) {
+            return;
+        }
+        List<CompletableFuture<?>> writes = new ArrayList<>();
+        for (Map.Entry<UUID, UUID> entry : new ArrayList<>(pendingSuperseded.entrySet())) {
+            writes.add(executeWithPermit(updateSupersededStatement.bind(entry.getValue(), entry.getKey()))
+                    .toCompletableFuture()
+                    .thenRun(() -> pendingSuperseded.remove(entry.getKey(), entry.getValue())));
+        }
+        try {
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            log.warn("Failed to persist superseded templates: {}",
+                    e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            if (pendingSuperseded.size() > MAX_PERSISTED_TEMPLATES) {
+                pendingSuperseded.clear();
+            }
+        }
+    }
 
-            List<Map<String, Object>> allLogs = getAllLogs(1000);
+    // Партиции всех известных сервисов читаются параллельно
+    private void refreshTemplateCounters() {
+        Set<String> services = new HashSet<>();
+        counters.totals().keySet().forEach(key -> services.add(key.service()));
+        templateCounters.totals().keySet().forEach(key -> services.add(key.service()));
 
-            for (Map<String, Object> log : allLogs) {
-                String level = (String) log.get("level");
-                counts.put(level, counts.getOrDefault(level, 0L) + 1);
+        long startedAt = System.currentTimeMillis();
+        Map<String, CompletableFuture<AsyncResultSet>> pages = new HashMap<>();
+        for (String service : services) {
+            pages.put(service, session.executeAsync(selectTemplateCountsStatement.bind(service)).toCompletableFuture());
+        }
+        Map<LogCounters.TemplateKey, Long> persisted = new HashMap<>();
+        for (Map.Entry<String, CompletableFuture<AsyncResultSet>> partition : pages.entrySet()) {
+            AsyncResultSet page = partition.getValue().join();
+            while (true) {
+                for (Row row : page.currentPage()) {
+                    persisted.put(new LogCounters.TemplateKey(partition.getKey(), row.getUuid("template_id")),
+                            row.getLong("count"));
+                }
+                if (!page.hasMorePages()) {
+                    break;
+                }
+                page = page.fetchNextPage().toCompletableFuture().join();
             }
+        }
+        templateCounters.replaceSnapshot(persisted);
+        templateCountsRefreshedAt = startedAt;
+    }
 
+    // Текст шаблона для сборки сообщения: из памяти майнера, иначе из log_templates
+    // (шаблон мог выделить другой инстанс). null - шаблон неизвестен или база недоступна.
+    // Промах помнится missingTemplateTtlMs: за это время другой инстанс успеет записать шаблон.
+    String resolveTemplate(UUID templateId) {
+        String template = templateMiner.templateText(templateId);
+        if (template != null || !isAvailable()) {
+            return template;
+        }
+        Long missingUntil = missingTemplates.get(templateId);
+        if (missingUntil != null) {
+            if (System.currentTimeMillis() < missingUntil) {
+                return null;
+            }
+            missingTemplates.remove(templateId, missingUntil);
+        }
+        try {
+            Row row = session.execute(selectTemplateStatement.bind(templateId)).one();
+            // Строка только с superseded_by - обобщение шаблона, текст которого не записывался
+            if (row != null && !row.isNull("template")) {
+                template = row.getString("template");
+                templateMiner.remember(templateId, template);
+            } else {
+                if (missingTemplates.size() > MAX_MISSING_TEMPLATES) {
+                    missingTemplates.clear();
+                }
+                missingTemplates.put(templateId, System.currentTimeMillis() + missingTemplateTtlMs);
+            }
         } catch (Exception e) {
-            log.error("Failed to count by level: {}", e.getMessage());
+            log.warn("Failed to load template {}: {}", templateId, e.getMessage());
         }
+        return template;
+    }
 
-        return counts;
+    // Шаблоны по числу сохраненных сообщений (все инстансы): снимок log_template_counts плюс
+    // локальные дельты; service == null - сумма по всем сервисам. Счетчики id, которые майнер
+    // с тех пор обобщил, складываются в текущий шаблон
+    public Map<String, Object> getTemplates(String service, int limit) {
+        Map<UUID, Long> counts = new HashMap<>();
+        Map<UUID, Set<String>> services = new HashMap<>();
+        Map<UUID, Set<String>> supersededIds = new HashMap<>();
+        for (Map.Entry<LogCounters.TemplateKey, Long> entry : templateCounters.totals().entrySet()) {
+            LogCounters.TemplateKey key = entry.getKey();
+            if (service != null && !service.equals(key.service())) {
+                continue;
+            }
+            UUID current = templateMiner.currentId(key.templateId());
+            counts.merge(current, entry.getValue(), Long::sum);
+            services.computeIfAbsent(current, id -> new TreeSet<>()).add(key.service());
+            if (!current.equals(key.templateId())) {
+                supersededIds.computeIfAbsent(current, id -> new TreeSet<>()).add(key.templateId().toString());
+            }
+        }
+
+        List<Map.Entry<UUID, Long>> sorted = new ArrayList<>(counts.entrySet());
+        sorted.sort(Map.Entry.<UUID, Long>comparingByValue().reversed());
+        long total = 0;
+        for (Map.Entry<UUID, Long> entry : sorted) {
+            total += entry.getValue();
+        }
+
+        List<Map<String, Object>> templates = new ArrayList<>();
+        for (Map.Entry<UUID, Long> entry : sorted.subList(0, Math.min(limit, sorted.size()))) {
+            Map<String, Object> template = new HashMap<>();
+            template.put("templateId", entry.getKey().toString());
+            template.put("template", resolveTemplate(entry.getKey()));
+            template.put("count", entry.getValue());
+            template.put("services", services.get(entry.getKey()));
+            template.put("supersededIds", supersededIds.getOrDefault(entry.getKey(), Set.of()));
+            templates.add(template);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("templates", templates);
+        result.put("distinct", sorted.size());
+        result.put("total", total);
+        result.put("storageMode", templateStorageMode);
+        result.put("miner", templateMiner.getStats());
+        return result;
     }
 
-    private Map<String, Long> getCountByService() {
-        Map<String, Long> counts = new HashMap<>();
+    // Строки группируются по партиции log_rollups; batch, который не записался,
+    // возвращается в LogRollups и уходит следующим flush'ем
+    private void flushRollups() {
+        Map<List<Object>, List<Map.Entry<LogRollups.RollupKey, Long>>> byPartition = new HashMap<>();
+        for (Map.Entry<LogRollups.RollupKey, Long> row : rollups.drain().entrySet()) {
+            LogRollups.RollupKey key = row.getKey();
+            byPartition.computeIfAbsent(List.of(key.service(), key.resolution(), key.period()), k -> new ArrayList<>())
+                    .add(row);
+        }
+
+        List<CompletableFuture<?>> writes = new ArrayList<>();
+        for (List<Map.Entry<LogRollups.RollupKey, Long>> group : byPartition.values()) {
+            for (int from = 0; from < group.size(); from += batchMaxStatements) {
+                List<Map.Entry<LogRollups.RollupKey, Long>> chunk =
+                        group.subList(from, Math.min(group.size(), from + batchMaxStatements));
+                BatchStatementBuilder batch = BatchStatement.builder(DefaultBatchType.COUNTER);
+                for (Map.Entry<LogRollups.RollupKey, Long> row : chunk) {
+                    LogRollups.RollupKey key = row.getKey();
+                    batch.addStatement(incrementRollupStatement.bind(row.getValue(), key.service(),
+                            key.resolution().name, key.period(), key.bucket(), key.level(), key.host()));
+                }
+                writes.add(executeWithPermit(batch.build()).toCompletableFuture().whenComplete((result, error) -> {
+                    if (error != null) {
+                        rollupFlushFailures.incrementAndGet();
+                        chunk.forEach(row -> rollups.restore(row.getKey(), row.getValue()));
+                    }
+                }));
+            }
+        }
 
         try {
-            List<Map<String, Object>> allLogs = getAllLogs(1000);
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            log.warn("Failed to flush log rollups: {}", e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+        }
+    }
 
-            for (Map<String, Object> log : allLogs) {
-                String service = (String) log.get("service");
-                counts.put(service, counts.getOrDefault(service, 0L) + 1);
-            }
+    // Минутные и часовые партиции старше retention удаляются целиком; дневные хранятся всегда.
+    // Первый проход после старта захватывает несколько периодов за границей, чтобы догнать
+    // пропущенные запуски; дальше удаляется только то, что вышло за retention с прошлого раза.
+    @Scheduled(initialDelay = 60_000, fixedDelayString = "${app.cassandra.rollups.retention-interval-ms:3600000}")
+    public void expireRollups() {
+        if (!isAvailable()) {
+            return;
+        }
 
+        Set<String> services = new HashSet<>();
+        counters.totals().keySet().forEach(key -> services.add(key.service()));
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        Map<LogRollups.Resolution, LocalDate> cutoffs = Map.of(
+                LogRollups.Resolution.MINUTE, LogRollups.Resolution.MINUTE.period(
+                        today.minusDays(minuteRetentionDays).atStartOfDay(ZoneOffset.UTC).toInstant()),
+                LogRollups.Resolution.HOUR, LogRollups.Resolution.HOUR.period(
+                        today.minusDays(hourRetentionDays).atStartOfDay(ZoneOffset.UTC).toInstant()));
+
+        int deleted = 0;
+        try {
+            for (Map.Entry<LogRollups.Resolution, LocalDate> cutoff : cutoffs.entrySet()) {
+                LogRollups.Resolution resolution = cutoff.getKey();
+                // Период cutoff еще частично в retention - удаляем только строго более старые
+                LocalDate newestExpired = previousPeriod(resolution, cutoff.getValue());
+                for (String service : services) {
+                    String key = service + "|" + resolution.name;
+                    LocalDate done = expiredRollupPeriods.get(key);
+                    LocalDate period = newestExpired;
+                    for (int i = 0; i < 7 && (done == null || period.isAfter(done)); i++) {
+                        session.execute(deleteRollupPartitionStatement.bind(service, resolution.name, period));
+                        deleted++;
+                        period = previousPeriod(resolution, period);
+                    }
+                    // Запоминаем только после удаления: при ошибке период попробуем снова
+                    expiredRollupPeriods.put(key, newestExpired);
+                }
+            }
+            log.debug("Expired {} rollup partitions", deleted);
         } catch (Exception e) {
-            log.error("Failed to count by service: {}", e.getMessage());
+            log.warn("Failed to expire log rollups: {}", e.getMessage());
+        }
+    }
+
+    private static LocalDate previousPeriod(LogRollups.Resolution resolution, LocalDate period) {
+        return switch (resolution) {
+            case MINUTE -> period.minusDays(1);
+            case HOUR -> period.minusMonths(1);
+            case DAY -> period.minusYears(1);
+        };
+    }
+
+    // Гистограмма объема логов только из log_rollups: берется самое грубое разрешение,
+    // на которое делится шаг и которое еще хранится для начала диапазона.
+    public Map<String, Object> getHistogram(String service, String level, String host,
+                                            Instant from, Instant to, Duration step) {
+        requireAvailable();
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("'from' must be before 'to'");
+        }
+        if (step.isNegative() || step.isZero() || step.toMillis() % LogRollups.Resolution.MINUTE.width.toMillis() != 0) {
+            throw new IllegalArgumentException("Step must be a positive whole number of minutes: " + step);
+        }
+        long stepMs = step.toMillis();
+        long slotsFrom = Math.floorDiv(from.toEpochMilli(), stepMs);
+        long slotsTo = Math.floorDiv(to.toEpochMilli() - 1, stepMs);
+        if (slotsTo - slotsFrom + 1 > histogramMaxPoints) {
+            throw new IllegalArgumentException("Too many points for step " + step + ", max " + histogramMaxPoints);
+        }
+
+        LogRollups.Resolution resolution = chooseResolution(from, step);
+        Instant alignedFrom = Instant.ofEpochMilli(slotsFrom * stepMs);
+        Instant alignedTo = Instant.ofEpochMilli((slotsTo + 1) * stepMs);
+
+        Set<String> services = new TreeSet<>();
+        if (service != null) {
+            services.add(service);
+        } else {
+            counters.totals().keySet().forEach(key -> services.add(key.service()));
+        }
+
+        long[] counts = new long[(int) (slotsTo - slotsFrom + 1)];
+        List<Map<String, Long>> levels = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            levels.add(new TreeMap<>());
+        }
+        long rowsRead = 0;
+        for (String partitionService : services) {
+            LocalDate last = resolution.period(alignedTo.minusMillis(1));
+            for (LocalDate period = resolution.period(alignedFrom); !period.isAfter(last); period = resolution.nextPeriod(period)) {
+                ResultSet result = session.execute(selectRollupsStatement.bind(partitionService, resolution.name,
+                        period, alignedFrom, alignedTo));
+                for (Row row : result) {
+                    rowsRead++;
+                    String rowLevel = row.getString("level");
+                    if ((level != null && !level.equals(rowLevel)) || (host != null && !host.equals(row.getString("host")))) {
+                        continue;
+                    }
+                    int slot = (int) (Math.floorDiv(row.getInstant("bucket").toEpochMilli(), stepMs) - slotsFrom);
+                    long count = row.getLong("count");
+                    counts[slot] += count;
+                    levels.get(slot).merge(rowLevel, count, Long::sum);
+                }
+            }
+        }
+
+        List<Map<String, Object>> points = new ArrayList<>();
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            Map<String, Object> point = new HashMap<>();
+            point.put("time", Instant.ofEpochMilli((slotsFrom + i) * stepMs).toString());
+            point.put("count", counts[i]);
+            point.put("byLevel", levels.get(i));
+            points.add(point);
+            total += counts[i];
         }
 
-        return counts;
+        Map<String, Object> histogram = new HashMap<>();
+        histogram.put("resolution", resolution.name);
+        histogram.put("step", step.toString());
+        histogram.put("from", alignedFrom.toString());
+        histogram.put("to", alignedTo.toString());
+        histogram.put("points", points);
+        histogram.put("total", total);
+        histogram.put("rowsRead", rowsRead);
+        histogram.put("pendingRollupKeys", rollups.pendingKeys());
+        return histogram;
+    }
+
+    private LogRollups.Resolution chooseResolution(Instant from, Duration step) {
+        LocalDate fromDay = LocalDate.ofInstant(from, ZoneOffset.UTC);
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        if (step.toMillis() % LogRollups.Resolution.DAY.width.toMillis() == 0) {
+            return LogRollups.Resolution.DAY;
+        }
+        if (step.toMillis() % LogRollups.Resolution.HOUR.width.toMillis() == 0) {
+            if (fromDay.isBefore(today.minusDays(hourRetentionDays))) {
+                throw new IllegalArgumentException("Hour rollups are kept for " + hourRetentionDays
+                        + " days; use a step of whole days for this range");
+            }
+            return LogRollups.Resolution.HOUR;
+        }
+        if (fromDay.isBefore(today.minusDays(minuteRetentionDays))) {
+            throw new IllegalArgumentException("Minute rollups are kept for " + minuteRetentionDays
+                    + " days; use a step of whole hours for this range");
+        }
+        return LogRollups.Resolution.MINUTE;
+    }
+
+    // Шаг по умолчанию - самое грубое разрешение, которое дает осмысленную детализацию диапазона
+    public static Duration defaultHistogramStep(Instant from, Instant to) {
+        Duration range = Duration.between(from, to);
+        if (range.compareTo(Duration.ofHours(6)) <= 0) {
+            return Duration.ofMinutes(1);
+        }
+        if (range.compareTo(Duration.ofDays(14)) <= 0) {
+            return Duration.ofHours(1);
+        }
+        return Duration.ofDays(1);
+    }
+
+    private void refreshCounters() {
+        Map<LogCounters.CounterKey, Long> persisted = new HashMap<>();
+        for (Row row : session.execute(selectCountersStatement.bind())) {
+            persisted.put(new LogCounters.CounterKey(row.getString("service"), row.getString("level")), row.getLong("count"));
+        }
+        counters.replaceSnapshot(persisted);
+        countersRefreshedAt = System.currentTimeMillis();
+    }
+
+    // Только память: итоги из последнего снимка log_counters плюс локальные дельты
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+
+        long total = 0;
+        Map<String, Long> byLevel = new HashMap<>();
+        Map<String, Long> byService = new HashMap<>();
+        for (Map.Entry<LogCounters.CounterKey, Long> entry : counters.totals().entrySet()) {
+            total += entry.getValue();
+            byLevel.merge(entry.getKey().level(), entry.getValue(), Long::sum);
+            byService.merge(entry.getKey().service(), entry.getValue(), Long::sum);
+        }
+        stats.put("total", total);
+        // false - строки, записанные до обновления, еще не досчитаны переносом
+        stats.put("complete", countersComplete);
+        stats.put("byLevel", byLevel);
+        stats.put("byService", byService);
+
+        Map<String, Object> counterInfo = new HashMap<>();
+        Instant backfilledAt = countersBackfilledAt;
+        counterInfo.put("backfilledAt", backfilledAt != null ? backfilledAt.toString() : null);
+        if (!countersComplete) {
+            counterInfo.put("backfill", "rows written before the upgrade are not counted; run POST /api/logs/migrate");
+        }
+        counterInfo.put("refreshedAt", countersRefreshedAt > 0 ? Instant.ofEpochMilli(countersRefreshedAt).toString() : null);
+        counterInfo.put("flushFailures", counterFlushFailures.get());
+        counterInfo.put("repeatedStoresSkipped", repeatedStores.get());
+        stats.put("counters", counterInfo);
+        stats.put("schema", getSchemaInfo());
+
+        Map<String, Object> last = lastLog;
+        if (last != null) {
+            stats.put("lastLog", last);
+        }
+
+        return stats;
+    }
+
+    public boolean isCountersComplete() {
+        return countersComplete;
+    }
+
+    // Число логов по service/level (null - любой) из счетчиков в памяти, без запроса к Cassandra
+    public long countLogs(String service, String level) {
+        long count = 0;
+        for (Map.Entry<LogCounters.CounterKey, Long> entry : counters.totals().entrySet()) {
+            if ((service == null || service.equals(entry.getKey().service()))
+                    && (level == null || level.equals(entry.getKey().level()))) {
+                count += entry.getValue();
+            }
+        }
+        return count;
     }
 
     // Очистить все логи
@@ -284,24 +2036,96 @@ public class LogDAO {
 
         try {
             session.execute("TRUNCATE logs");
+            for (BucketTable table : BucketTable.values()) {
+                session.execute("TRUNCATE " + table.tableName);
+            }
+            session.execute("TRUNCATE log_services_by_bucket");
+            session.execute("TRUNCATE log_counters");
+            session.execute("TRUNCATE log_rollups");
+            session.execute("TRUNCATE log_template_counts_by_service");
+            registeredServiceBuckets.clear();
+            synchronized (countedIds) {
+                countedIds.clear();
+            }
+            synchronized (this) {
+                counters.clear();
+                templateCounters.clear();
+            }
+            lastLog = null;
+            // Таблицы пусты - досчитывать нечего
+            markCountersBackfilled();
+            globalGeneration.incrementAndGet();
+            serviceGenerations.values().forEach(AtomicLong::incrementAndGet);
+            levelGenerations.values().forEach(AtomicLong::incrementAndGet);
             log.info("All logs cleared");
         } catch (Exception e) {
             log.error("Failed to clear logs: {}", e.getMessage());
         }
     }
 
+    // Таблицы одного и того же содержимого, различаются колонкой в ключе партиции. Бакет (slot) -
+    // номер суток от эпохи, для часовых таблиц - номер часа: партиция (поле, день, час дня).
+    // level - отдельная таблица logs_by_level_hour: прежняя logs_by_level_bucket резала только по дням.
+    private enum BucketTable {
+        SERVICE("logs_by_service_bucket", "service", false),
+        LEVEL("logs_by_level_hour", "level", true),
+        HOST("logs_by_host_bucket", "host", false);
+
+        private final String tableName;
+        private final String column;
+        private final boolean hourly;
+        private final Duration width;
+
+        BucketTable(String tableName, String column, boolean hourly) {
+            this.tableName = tableName;
+            this.column = column;
+            this.hourly = hourly;
+            this.width = hourly ? Duration.ofHours(1) : Duration.ofDays(1);
+        }
 
-    private Map<String, Object> mapRowToLog(Row row) {
-        Map<String, Object> logEntry = new HashMap<>();
+        long slotOf(Instant time) {
+            return Math.floorDiv(time.getEpochSecond(), width.getSeconds());
+        }
+
+        Instant start(long slot) {
+            return Instant.ofEpochSecond(slot * width.getSeconds());
+        }
 
-        logEntry.put("id", row.getUuid("id").toString());
-        logEntry.put("timestamp", row.getInstant("timestamp").toString());
-        logEntry.put("service", row.getString("service"));
-        logEntry.put("level", row.getString("level"));
-        logEntry.put("message", row.getString("message"));
-        logEntry.put("host", row.getString("host"));
-        logEntry.put("metadata", row.getMap("metadata", String.class, String.class));
+        LocalDate day(long slot) {
+            return LocalDate.ofInstant(start(slot), ZoneOffset.UTC);
+        }
 
-        return logEntry;
+        int hour(long slot) {
+            return (int) Math.floorMod(slot, 24L);
+        }
+
+        long slotsPerDay() {
+            return hourly ? 24 : 1;
+        }
+
+        // Первый бакет тех же суток: для дневных таблиц - сам бакет
+        long firstSlotOfDay(long slot) {
+            return hourly ? slot - hour(slot) : slot;
+        }
+    }
+
+    // Ключ партиции logs_by_*_bucket
+    private record BucketKey(BucketTable table, String value, long slot) {
+    }
+
+    // Insert'ы одной записи или пачки: singles - строки logs (каждая в своей партиции),
+    // byPartition - строки logs_by_*_bucket и log_services_by_bucket по ключу партиции
+    private static final class PendingWrites {
+        private final List<BoundStatement> singles = new ArrayList<>();
+        private final Map<Object, List<BoundStatement>> byPartition = new LinkedHashMap<>();
+        private final Set<BucketKey> newServiceBuckets = new HashSet<>();
+        private final Map<UUID, String> newTemplates = new HashMap<>();
+    }
+
+    private record PermitWaiter(Statement<?> statement, CompletableFuture<AsyncResultSet> result, long deadline) {
+    }
+
+    // Что пишется в колонки message, template_id и params; отсутствующее - null
+    private record StoredText(String message, UUID templateId, List<String> params) {
     }
 }
@@ -0,0 +1,103 @@
+package com.example.logSleuthEnterprise.dao;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Количество логов по (service, level, host) в минутных, часовых и дневных бакетах.
+// На записи копятся только минутные дельты (merge в ConcurrentHashMap - блокировка на bin,
+// а не на всю карту). При flush дельты забираются атомарно (remove) и сворачиваются в
+// более грубые бакеты, так что час и день получают по одному инкременту на flush.
+final class LogRollups {
+
+    enum Resolution {
+        MINUTE("minute", Duration.ofMinutes(1)),
+        HOUR("hour", Duration.ofHours(1)),
+        DAY("day", Duration.ofDays(1));
+
+        final String name;
+        final Duration width;
+
+        Resolution(String name, Duration width) {
+            this.name = name;
+            this.width = width;
+        }
+
+        Instant truncate(Instant time) {
+            return time.truncatedTo(this == MINUTE ? ChronoUnit.MINUTES : this == HOUR ? ChronoUnit.HOURS : ChronoUnit.DAYS);
+        }
+
+        // Партиция - сутки минут, месяц часов или год дней: размер партиции ограничен
+        LocalDate period(Instant bucket) {
+            LocalDate day = LocalDate.ofInstant(bucket, ZoneOffset.UTC);
+            return switch (this) {
+                case MINUTE -> day;
+                case HOUR -> day.withDayOfMonth(1);
+                case DAY -> day.withDayOfYear(1);
+            };
+        }
+
+        LocalDate nextPeriod(LocalDate period) {
+            return switch (this) {
+                case MINUTE -> period.plusDays(1);
+                case HOUR -> period.plusMonths(1);
+                case DAY -> period.plusYears(1);
+            };
+        }
+    }
+
+    private final Map<RollupKey, Long> pending = new ConcurrentHashMap<>();
+
+    // Уже свернутые строки, которые не удалось записать - уходят следующим flush'ем как есть
+    private final Map<RollupKey, Long> retry = new ConcurrentHashMap<>();
+
+    void add(String service, String level, String host, Instant timestamp) {
+        pending.merge(new RollupKey(Resolution.MINUTE, service, level, host, Resolution.MINUTE.truncate(timestamp)),
+                1L, Long::sum);
+    }
+
+    // Забирает накопленные минутные дельты и сворачивает их в часовые и дневные
+    Map<RollupKey, Long> drain() {
+        Map<RollupKey, Long> rows = new HashMap<>();
+        for (RollupKey key : retry.keySet()) {
+            Long count = retry.remove(key);
+            if (count != null) {
+                rows.merge(key, count, Long::sum);
+            }
+        }
+        for (RollupKey key : pending.keySet()) {
+            Long count = pending.remove(key);
+            if (count == null) {
+                continue;
+            }
+            rows.merge(key, count, Long::sum);
+            rows.merge(key.coarsen(Resolution.HOUR), count, Long::sum);
+            rows.merge(key.coarsen(Resolution.DAY), count, Long::sum);
+        }
+        return rows;
+    }
+
+    void restore(RollupKey key, long count) {
+        retry.merge(key, count, Long::sum);
+    }
+
+    int pendingKeys() {
+        return pending.size() + retry.size();
+    }
+
+    record RollupKey(Resolution resolution, String service, String level, String host, Instant bucket) {
+
+        RollupKey coarsen(Resolution coarser) {
+            return new RollupKey(coarser, service, level, host, coarser.truncate(bucket));
+        }
+
+        LocalDate period() {
+            return resolution.period(bucket);
+        }
+    }
+}
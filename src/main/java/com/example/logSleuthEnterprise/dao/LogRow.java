@@ -0,0 +1,122 @@
+package com.example.logSleuthEnterprise.dao;
+
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.example.logSleuthEnterprise.model.LogField;
+import com.example.logSleuthEnterprise.service.template.LogTemplateMiner;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+// Строка лога из Cassandra с выбранными полями. Значения читаются из Row по требованию,
+// а в JSON пишутся прямо из Row - без промежуточной HashMap на строку. Поля вне проекции
+// не выбираются запросом, их getter'ы возвращают null. Строка, записанная в режиме template,
+// хранит только template_id и params - message собирается по тексту шаблона.
+public final class LogRow implements JsonSerializable {
+
+    private final Row row;
+    private final Set<LogField> fields;
+    private final Function<UUID, String> templates;
+
+    LogRow(Row row, Set<LogField> fields, Function<UUID, String> templates) {
+        this.row = row;
+        this.fields = fields;
+        this.templates = templates;
+    }
+
+    public Set<LogField> getFields() {
+        return fields;
+    }
+
+    public UUID getId() {
+        return fields.contains(LogField.ID) ? row.getUuid("id") : null;
+    }
+
+    public Instant getTimestamp() {
+        return fields.contains(LogField.TIMESTAMP) ? row.getInstant("timestamp") : null;
+    }
+
+    public String getService() {
+        return fields.contains(LogField.SERVICE) ? row.getString("service") : null;
+    }
+
+    public String getLevel() {
+        return fields.contains(LogField.LEVEL) ? row.getString("level") : null;
+    }
+
+    public String getMessage() {
+        return fields.contains(LogField.MESSAGE) ? message() : null;
+    }
+
+    private String message() {
+        String message = row.getString("message");
+        if (message != null || row.isNull("template_id")) {
+            return message;
+        }
+        String template = templates.apply(row.getUuid("template_id"));
+        return template != null ? LogTemplateMiner.render(template, row.getList("params", String.class)) : null;
+    }
+
+    public String getHost() {
+        return fields.contains(LogField.HOST) ? row.getString("host") : null;
+    }
+
+    public Map<String, String> getMetadata() {
+        return fields.contains(LogField.METADATA) ? row.getMap("metadata", String.class, String.class) : null;
+    }
+
+    public void writeTo(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        for (LogField field : fields) {
+            generator.writeFieldName(field.column());
+            switch (field) {
+                case ID -> {
+                    UUID id = row.getUuid("id");
+                    if (id != null) {
+                        generator.writeString(id.toString());
+                    } else {
+                        generator.writeNull();
+                    }
+                }
+                case TIMESTAMP -> {
+                    Instant timestamp = row.getInstant("timestamp");
+                    if (timestamp != null) {
+                        generator.writeString(timestamp.toString());
+                    } else {
+                        generator.writeNull();
+                    }
+                }
+                case MESSAGE -> generator.writeString(message());
+                case METADATA -> {
+                    generator.writeStartObject();
+                    if (!row.isNull("metadata")) {
+                        for (Map.Entry<String, String> entry : row.getMap("metadata", String.class, String.class).entrySet()) {
+                            generator.writeStringField(entry.getKey(), entry.getValue());
+                        }
+                    }
+                    generator.writeEndObject();
+                }
+                default -> generator.writeString(row.getString(field.column()));
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    @Override
+    public void serialize(JsonGenerator generator, SerializerProvider provider) throws IOException {
+        writeTo(generator);
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer)
+            throws IOException {
+        writeTo(generator);
+    }
+}
@@ -8,7 +8,9 @@ import org.springframework.data.elasticsearch.annotations.FieldType;
 import java.time.Instant;
 import java.util.Map;
 
-@Document(indexName = "logs-#{T(java.time.LocalDate).now().toString()}")
+// Пишется в дневной индекс по времени события (ElasticIndexLifecycle), маппинг - из index template.
+// Здесь только шаблон для чтения: репозиторий ищет по всем дням и сам индексы не создает.
+@Document(indexName = "logs-*", createIndex = false)
 public class ElasticLogDocument {
 
     @Id
@@ -32,6 +34,9 @@ public class ElasticLogDocument {
     @Field(type = FieldType.Object)
     private Map<String, String> metadata;
 
+    @Field(type = FieldType.Keyword)
+    private String templateId;
+
 
     public ElasticLogDocument() {}
 
@@ -56,4 +61,7 @@ public class ElasticLogDocument {
 
     public Map<String, String> getMetadata() { return metadata; }
     public void setMetadata(Map<String, String> metadata) { this.metadata = metadata; }
+
+    public String getTemplateId() { return templateId; }
+    public void setTemplateId(String templateId) { this.templateId = templateId; }
 }
@@ -1,39 +1,38 @@
 package com.example.logSleuthEnterprise.model;
 
-import org.springframework.data.annotation.Id;
-import org.springframework.data.elasticsearch.annotations.Document;
-import org.springframework.data.elasticsearch.annotations.Field;
-import org.springframework.data.elasticsearch.annotations.FieldType;
-
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
-@Document(indexName = "logs-#{T(java.time.LocalDate).now().toString()}")
-public class ElasticLogDocument {
+public class KafkaLogMessage {
 
-    @Id
     private String id;
-
-    @Field(type = FieldType.Date)
     private Instant timestamp;
-
-    @Field(type = FieldType.Keyword)
     private String service;
-
-    @Field(type = FieldType.Keyword)
     private String level;
-
-    @Field(type = FieldType.Text)
     private String message;
-
-    @Field(type = FieldType.Keyword)
     private String host;
-
-    @Field(type = FieldType.Object)
     private Map<String, String> metadata;
 
+    // Шаблон сообщения (LogTemplateMiner) - проставляется consumer'ом, в Kafka не передается
+    private UUID templateId;
+    private List<String> templateParams;
+
+    public KafkaLogMessage() {
+        this.id = UUID.randomUUID().toString();
+        this.timestamp = Instant.now();
+        this.metadata = new HashMap<>();
+    }
 
-    public ElasticLogDocument() {}
+    public KafkaLogMessage(String service, String level, String message, String host) {
+        this();
+        this.service = service;
+        this.level = level;
+        this.message = message;
+        this.host = host;
+    }
 
 
     public String getId() { return id; }
@@ -56,4 +55,15 @@ public class ElasticLogDocument {
 
     public Map<String, String> getMetadata() { return metadata; }
     public void setMetadata(Map<String, String> metadata) { this.metadata = metadata; }
+
+    public UUID getTemplateId() { return templateId; }
+    public void setTemplateId(UUID templateId) { this.templateId = templateId; }
+
+    public List<String> getTemplateParams() { return templateParams; }
+    public void setTemplateParams(List<String> templateParams) { this.templateParams = templateParams; }
+
+    @Override
+    public String toString() {
+        return "KafkaLogMessage{id='" + id + "', service='" + service + "', level='" + level + "'}";
+    }
 }
@@ -0,0 +1,55 @@
+package com.example.logSleuthEnterprise.model;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+// Поля лога в ответах чтения. Имя поля совпадает с колонкой Cassandra, поэтому
+// проекция fields= уходит прямо в список SELECT.
+public enum LogField {
+    ID("id"),
+    TIMESTAMP("timestamp"),
+    SERVICE("service"),
+    LEVEL("level"),
+    MESSAGE("message"),
+    HOST("host"),
+    METADATA("metadata");
+
+    public static final Set<LogField> ALL = Collections.unmodifiableSet(EnumSet.allOf(LogField.class));
+
+    private final String column;
+
+    LogField(String column) {
+        this.column = column;
+    }
+
+    public String column() {
+        return column;
+    }
+
+    // "timestamp,level,message" -> набор полей; пусто или null - все поля
+    public static Set<LogField> parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return ALL;
+        }
+        EnumSet<LogField> selected = EnumSet.noneOf(LogField.class);
+        for (String name : fields.split(",")) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            LogField field = null;
+            for (LogField candidate : values()) {
+                if (candidate.column.equalsIgnoreCase(trimmed)) {
+                    field = candidate;
+                    break;
+                }
+            }
+            if (field == null) {
+                throw new IllegalArgumentException("Unknown log field: " + trimmed);
+            }
+            selected.add(field);
+        }
+        return selected.isEmpty() ? ALL : Collections.unmodifiableSet(selected);
+    }
+}
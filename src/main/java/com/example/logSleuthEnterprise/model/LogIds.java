@@ -0,0 +1,47 @@
+package com.example.logSleuthEnterprise.model;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+// Id лога - первичный ключ и в Cassandra (uuid), и в Elasticsearch (_id).
+// Id-не-UUID от сторонних продюсеров детерминированно отображаются в name-based UUID,
+// поэтому повторная доставка той же записи попадает в ту же строку и тот же документ.
+public final class LogIds {
+
+    private LogIds() {
+    }
+
+    public static UUID toUuid(String id) {
+        if (id == null || id.isEmpty()) {
+            return UUID.randomUUID();
+        }
+        if (id.length() == 36) {
+            try {
+                return UUID.fromString(id);
+            } catch (IllegalArgumentException e) {
+                // не UUID - ниже
+            }
+        }
+        return UUID.nameUUIDFromBytes(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String canonical(String id) {
+        return toUuid(id).toString();
+    }
+
+    // Смещение между эпохой UUID (1582-10-15) и Unix-эпохой в 100-нс интервалах
+    private static final long UUID_EPOCH_OFFSET = 0x01B21DD213814000L;
+
+    // Timeuuid (версия 1) со временем события и clock_seq/node из id лога: детерминирован,
+    // поэтому повторная запись той же записи попадает в ту же строку кластеризации.
+    public static UUID timeUuid(Instant timestamp, UUID id) {
+        long ticks = timestamp.getEpochSecond() * 10_000_000L + timestamp.getNano() / 100 + UUID_EPOCH_OFFSET;
+        long msb = (ticks << 32)                          // time_low
+                | ((ticks >>> 16) & 0xFFFF0000L)          // time_mid
+                | 0x1000L                                 // версия 1
+                | ((ticks >>> 48) & 0x0FFFL);             // time_hi
+        long lsb = (id.getLeastSignificantBits() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+}
@@ -0,0 +1,350 @@
+package com.example.logSleuthEnterprise.service.elastic;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import com.example.logSleuthEnterprise.model.ElasticLogDocument;
+import com.example.logSleuthEnterprise.service.health.CircuitBreaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.document.Document;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Копит документы и отправляет их в _bulk: по количеству, по объему или по таймеру.
+// Упавшие внутри bulk с 429/5xx документы повторяются отдельно с экспоненциальной задержкой;
+// остальные ошибки (маппинг, разбор - 4xx) повтором не лечатся и сразу уходят в отказ.
+public class ElasticBulkIndexer {
+
+    private static final Logger log = LoggerFactory.getLogger(ElasticBulkIndexer.class);
+
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final ElasticsearchClient client;
+    private final CircuitBreaker circuitBreaker;
+    private final ElasticIndexLifecycle lifecycle;
+    private final int maxActions;
+    private final long maxBytes;
+    private final int maxRetries;
+    private final long initialBackoffMs;
+    private final long acquireTimeoutMs;
+
+    private final Semaphore concurrentRequests;
+    private final ExecutorService bulkExecutor;
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+    private List<PendingDocument> buffer = new ArrayList<>();
+    private long bufferedBytes;
+
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong bulkRequests = new AtomicLong();
+
+    public ElasticBulkIndexer(ElasticsearchOperations elasticsearchOperations,
+                              ElasticsearchClient client,
+                              CircuitBreaker circuitBreaker,
+                              ElasticIndexLifecycle lifecycle,
+                              int maxActions,
+                              long maxBytes,
+                              long flushIntervalMs,
+                              int concurrency,
+                              int maxRetries,
+                              long initialBackoffMs,
+                              long acquireTimeoutMs) {
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.client = client;
+        this.circuitBreaker = circuitBreaker;
+        this.lifecycle = lifecycle;
+        this.maxActions = maxActions;
+        this.maxBytes = maxBytes;
+        this.maxRetries = maxRetries;
+        this.initialBackoffMs = initialBackoffMs;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+
+        this.concurrentRequests = new Semaphore(concurrency);
+        this.bulkExecutor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "es-bulk");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "es-bulk-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public CompletableFuture<Void> add(ElasticLogDocument document) {
+        if (document.getId() == null) {
+            // id нужен заранее, чтобы повтор не создал дубликат
+            document.setId(UUID.randomUUID().toString());
+        }
+
+        PendingDocument pending = new PendingDocument(document, estimateSize(document));
+        List<PendingDocument> ready = null;
+
+        synchronized (lock) {
+            buffer.add(pending);
+            bufferedBytes += pending.size;
+            if (buffer.size() >= maxActions || bufferedBytes >= maxBytes) {
+                ready = drainBuffer();
+            }
+        }
+
+        if (ready != null) {
+            submit(ready, 0);
+        }
+        return pending.future;
+    }
+
+    public void flush() {
+        List<PendingDocument> ready;
+        synchronized (lock) {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            ready = drainBuffer();
+        }
+        submit(ready, 0);
+    }
+
+    private List<PendingDocument> drainBuffer() {
+        List<PendingDocument> ready = buffer;
+        buffer = new ArrayList<>(maxActions);
+        bufferedBytes = 0;
+        return ready;
+    }
+
+    // Вызывающий поток ждет свободный слот не дольше acquireTimeoutMs - так переполнение ES
+    // тормозит источник; не дождался - документы уходят в отказ (sink положит их в spool)
+    private void submit(List<PendingDocument> documents, int attempt) {
+        try {
+            if (!concurrentRequests.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                fail(documents, new IllegalStateException("No free bulk slot in " + acquireTimeoutMs + " ms"));
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(documents, e);
+            return;
+        }
+        execute(documents, attempt);
+    }
+
+    // Повтор с таймера слот не ждет: все заняты - следующая попытка позже
+    private void resubmit(List<PendingDocument> documents, int attempt) {
+        if (!concurrentRequests.tryAcquire()) {
+            retry(documents, attempt, new IllegalStateException("No free bulk slot"));
+            return;
+        }
+        execute(documents, attempt);
+    }
+
+    // Вызывается с уже взятым слотом
+    private void execute(List<PendingDocument> documents, int attempt) {
+        try {
+            bulkExecutor.execute(() -> {
+                try {
+                    executeBulk(documents, attempt);
+                } finally {
+                    concurrentRequests.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            concurrentRequests.release();
+            fail(documents, e);
+        }
+    }
+
+    private void executeBulk(List<PendingDocument> documents, int attempt) {
+        lifecycle.ensureTemplate();
+
+        // Дневной индекс - по времени события; один bulk может писать в несколько дней.
+        // Документ переводится в source тем же конвертером, что и у репозитория.
+        Set<String> indices = new HashSet<>();
+        BulkRequest.Builder request = new BulkRequest.Builder();
+        for (PendingDocument pending : documents) {
+            String indexName = lifecycle.indexFor(pending.document.getTimestamp());
+            indices.add(indexName);
+            Document source = elasticsearchOperations.getElasticsearchConverter().mapObject(pending.document);
+            request.operations(operation -> operation.index(index -> index
+                    .index(indexName)
+                    .id(pending.document.getId())
+                    .document(source)));
+        }
+        String target = String.join(",", indices);
+
+        bulkRequests.incrementAndGet();
+        long started = System.currentTimeMillis();
+        BulkResponse response;
+        try {
+            response = client.bulk(request.build());
+        } catch (ElasticsearchException e) {
+            circuitBreaker.recordFailure(e);
+            log.warn("Bulk request to {} failed with status {}: {}", target, e.status(), e.getMessage());
+            if (isRetryable(e.status())) {
+                retry(documents, attempt, e);
+            } else {
+                reject(documents, e);
+            }
+            return;
+        } catch (Exception e) {
+            circuitBreaker.recordFailure(e);
+            log.warn("Bulk request to {} failed: {}", target, e.getMessage());
+            retry(documents, attempt, e);
+            return;
+        }
+
+        if (!response.errors()) {
+            circuitBreaker.recordSuccess(System.currentTimeMillis() - started);
+            lifecycle.recordWrites(indices, documents.size());
+            complete(documents);
+            return;
+        }
+
+        // Элементы ответа идут в порядке операций запроса
+        List<PendingDocument> succeeded = new ArrayList<>();
+        List<PendingDocument> toRetry = new ArrayList<>();
+        List<PendingDocument> toReject = new ArrayList<>();
+        String retryReason = null;
+        String rejectReason = null;
+        List<BulkResponseItem> items = response.items();
+        for (int i = 0; i < documents.size(); i++) {
+            BulkResponseItem item = items.get(i);
+            if (item.error() == null) {
+                succeeded.add(documents.get(i));
+            } else if (isRetryable(item.status())) {
+                toRetry.add(documents.get(i));
+                retryReason = item.status() + " " + item.error().reason();
+            } else {
+                toReject.add(documents.get(i));
+                rejectReason = item.status() + " " + item.error().type() + ": " + item.error().reason();
+            }
+        }
+        // Кластер ответил: breaker считает отказом только bulk, где не прошел ни один документ
+        IllegalStateException itemFailure = new IllegalStateException("Bulk item failed: "
+                + (rejectReason != null ? rejectReason : retryReason));
+        if (succeeded.isEmpty()) {
+            circuitBreaker.recordFailure(itemFailure);
+        } else {
+            circuitBreaker.recordSuccess(System.currentTimeMillis() - started);
+        }
+        lifecycle.recordWrites(indices, succeeded.size());
+        complete(succeeded);
+        log.warn("Bulk request to {}: {} of {} documents failed ({} retryable)", target,
+                toRetry.size() + toReject.size(), documents.size(), toRetry.size());
+        if (!toReject.isEmpty()) {
+            reject(toReject, new IllegalStateException("Bulk item rejected: " + rejectReason));
+        }
+        retry(toRetry, attempt, new IllegalStateException("Bulk item failed: " + retryReason));
+    }
+
+    // 429 - кластер перегружен, 5xx - сбой узла; остальное при повторе упадет так же
+    private static boolean isRetryable(int status) {
+        return status == 429 || status >= 500;
+    }
+
+    private void complete(List<PendingDocument> documents) {
+        indexed.addAndGet(documents.size());
+        documents.forEach(document -> document.future.complete(null));
+    }
+
+    private void retry(List<PendingDocument> documents, int attempt, Exception cause) {
+        if (documents.isEmpty()) {
+            return;
+        }
+
+        if (attempt >= maxRetries) {
+            log.error("Dropping {} documents after {} retries: {}", documents.size(), attempt, cause.getMessage());
+            fail(documents, cause);
+            return;
+        }
+
+        long backoff = initialBackoffMs << attempt;
+        retried.addAndGet(documents.size());
+        scheduler.schedule(() -> resubmit(documents, attempt + 1), backoff, TimeUnit.MILLISECONDS);
+    }
+
+    private void reject(List<PendingDocument> documents, Exception cause) {
+        rejected.addAndGet(documents.size());
+        log.error("Rejecting {} documents without retry: {}", documents.size(), cause.getMessage());
+        fail(documents, cause);
+    }
+
+    private void fail(List<PendingDocument> documents, Exception cause) {
+        failed.addAndGet(documents.size());
+        documents.forEach(document -> document.future.completeExceptionally(cause));
+    }
+
+    private long estimateSize(ElasticLogDocument document) {
+        // Грубая оценка размера строки _bulk: служебная часть + поля документа
+        long size = 128;
+        size += length(document.getId()) + length(document.getService()) + length(document.getLevel())
+                + length(document.getMessage()) + length(document.getHost());
+        if (document.getMetadata() != null) {
+            for (Map.Entry<String, String> entry : document.getMetadata().entrySet()) {
+                size += length(entry.getKey()) + length(entry.getValue()) + 6;
+            }
+        }
+        return size;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    public Map<String, Object> getStats() {
+        int buffered;
+        synchronized (lock) {
+            buffered = buffer.size();
+        }
+        return Map.of(
+                "buffered", buffered,
+                "indexed", indexed.get(),
+                "failed", failed.get(),
+                "retried", retried.get(),
+                "rejected", rejected.get(),
+                "bulkRequests", bulkRequests.get()
+        );
+    }
+
+    public void close() {
+        flush();
+        scheduler.shutdown();
+        bulkExecutor.shutdown();
+        try {
+            bulkExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class PendingDocument {
+        private final ElasticLogDocument document;
+        private final long size;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingDocument(ElasticLogDocument document, long size) {
+            this.document = document;
+            this.size = size;
+        }
+    }
+}
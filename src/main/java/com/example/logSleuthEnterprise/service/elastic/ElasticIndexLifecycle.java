@@ -0,0 +1,353 @@
+package com.example.logSleuthEnterprise.service.elastic;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Time;
+import co.elastic.clients.elasticsearch._types.mapping.DynamicTemplate;
+import co.elastic.clients.elasticsearch._types.mapping.Property;
+import co.elastic.clients.elasticsearch.cat.indices.IndicesRecord;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Дневные индексы логов: logs-yyyy.MM.dd по UTC-дню события - та же схема, что у Logstash.
+// Ставит composable template с явным маппингом, на время массовой заливки поднимает
+// refresh_interval, сливает сегменты закрытых дней и (если retention задан) удаляет старые дни.
+// Запросы с диапазоном времени идут только в индексы пересекающихся дней.
+@Component
+public class ElasticIndexLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ElasticIndexLifecycle.class);
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyy.MM.dd");
+    // Индексы, созданные до перехода на схему Logstash: logs-yyyy-MM-dd по локальной дате записи
+    private static final DateTimeFormatter LEGACY_DAY_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE;
+
+    private final ElasticsearchClient client;
+    private final ElasticsearchHealthMonitor healthMonitor;
+
+    @Value("${app.elasticsearch.indices.logs:logs}")
+    private String indexPrefix;
+
+    @Value("${app.elasticsearch.indices.logs-pattern:logs-*}")
+    private String indexPattern;
+
+    @Value("${app.elasticsearch.lifecycle.shards:1}")
+    private int shards;
+
+    @Value("${app.elasticsearch.lifecycle.replicas:1}")
+    private int replicas;
+
+    @Value("${app.elasticsearch.lifecycle.refresh-interval:1s}")
+    private String refreshInterval;
+
+    @Value("${app.elasticsearch.lifecycle.bulk-refresh-interval:30s}")
+    private String bulkRefreshInterval;
+
+    // Скорость записи (док/с), выше которой поток считается массовой заливкой
+    @Value("${app.elasticsearch.lifecycle.bulk-docs-per-second:5000}")
+    private long bulkDocsPerSecond;
+
+    @Value("${app.elasticsearch.lifecycle.force-merge-after-days:1}")
+    private int forceMergeAfterDays;
+
+    // 0 - не удалять; удаление включается только явно, чтобы обновление не стирало накопленные дни
+    @Value("${app.elasticsearch.lifecycle.retention-days:0}")
+    private int retentionDays;
+
+    // Диапазон длиннее - запрос идет по шаблону индексов целиком
+    @Value("${app.elasticsearch.lifecycle.max-fan-out-days:62}")
+    private int maxFanOutDays;
+
+    private volatile boolean templateInstalled;
+    private volatile long templateAttemptAt;
+    private volatile Set<String> knownIndices = Set.of();
+    private final Set<String> forceMerged = ConcurrentHashMap.newKeySet();
+
+    // Индексы, куда писали с последней проверки скорости, и число документов в них
+    private final Set<String> hotIndices = ConcurrentHashMap.newKeySet();
+    private final AtomicLong windowDocs = new AtomicLong();
+    private volatile long windowStartedAt = System.currentTimeMillis();
+    private final Set<String> bulkModeIndices = ConcurrentHashMap.newKeySet();
+    private volatile boolean bulkMode;
+
+    private final AtomicLong deletedIndices = new AtomicLong();
+    private final AtomicLong forceMerges = new AtomicLong();
+
+    // Обслуживание идет в своем потоке: поток пула @Scheduled не ждет удаления индексов
+    private final ExecutorService maintenanceExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "es-lifecycle");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean maintenanceRunning = new AtomicBoolean();
+
+    public ElasticIndexLifecycle(ElasticsearchClient client, ElasticsearchHealthMonitor healthMonitor) {
+        this.client = client;
+        this.healthMonitor = healthMonitor;
+    }
+
+    // Индекс по времени события, а не по часам сервера: поздние логи попадают в свой день
+    public String indexFor(Instant timestamp) {
+        LocalDate day = (timestamp != null ? timestamp : Instant.now()).atZone(ZoneOffset.UTC).toLocalDate();
+        return indexPrefix + "-" + DAY_FORMAT.format(day);
+    }
+
+    // Индексы дней, пересекающихся с [from, to). Отсутствующие дни пропускаются на стороне ES
+    // (ignore_unavailable), поэтому имена можно перечислять без проверки существования.
+    public IndexCoordinates searchIndices(Instant from, Instant to) {
+        if (from == null && to == null) {
+            return IndexCoordinates.of(indexPattern);
+        }
+
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        LocalDate oldestRetained = retentionDays > 0 ? today.minusDays(retentionDays) : null;
+        LocalDate first = from != null ? from.atZone(ZoneOffset.UTC).toLocalDate() : oldestRetained;
+        if (first == null) {
+            return IndexCoordinates.of(indexPattern);
+        }
+        if (oldestRetained != null && first.isBefore(oldestRetained)) {
+            first = oldestRetained;
+        }
+        // to исключается; без верхней границы - завтра, на случай спешащих часов у источников
+        LocalDate last = to != null ? to.minusMillis(1).atZone(ZoneOffset.UTC).toLocalDate() : today.plusDays(1);
+        if (last.isBefore(first)) {
+            last = first;
+        }
+        if (ChronoUnit.DAYS.between(first, last) >= maxFanOutDays) {
+            return IndexCoordinates.of(indexPattern);
+        }
+
+        List<String> names = new ArrayList<>();
+        for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+            names.add(indexPrefix + "-" + DAY_FORMAT.format(day));
+        }
+        // Старые индексы названы по локальной дате сервера - берем с запасом в день с каждой стороны
+        for (String index : knownIndices) {
+            LocalDate day = dayOf(index);
+            if (day != null && !names.contains(index)
+                    && !day.isBefore(first.minusDays(1)) && !day.isAfter(last.plusDays(1))) {
+                names.add(index);
+            }
+        }
+        return IndexCoordinates.of(names.toArray(String[]::new));
+    }
+
+    // Вызывается перед каждым bulk: пока шаблона нет, новые индексы получили бы динамический маппинг.
+    // Неудачная попытка повторяется не чаще раза в 30 секунд.
+    public void ensureTemplate() {
+        if (templateInstalled || System.currentTimeMillis() - templateAttemptAt < 30_000) {
+            return;
+        }
+        synchronized (this) {
+            if (templateInstalled) {
+                return;
+            }
+            templateAttemptAt = System.currentTimeMillis();
+            try {
+                installTemplate();
+                templateInstalled = true;
+                log.info("Index template '{}' installed for {}", indexPrefix, indexPattern);
+            } catch (Exception e) {
+                log.warn("Failed to install index template: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void installTemplate() throws Exception {
+        Map<String, Property> properties = new HashMap<>();
+        properties.put("id", Property.of(p -> p.keyword(k -> k)));
+        properties.put("timestamp", Property.of(p -> p.date(d -> d)));
+        properties.put("@timestamp", Property.of(p -> p.date(d -> d)));
+        properties.put("service", Property.of(p -> p.keyword(k -> k)));
+        properties.put("level", Property.of(p -> p.keyword(k -> k)));
+        properties.put("host", Property.of(p -> p.keyword(k -> k)));
+        properties.put("message", Property.of(p -> p.text(t -> t)));
+        properties.put("metadata", Property.of(p -> p.object(o -> o)));
+        properties.put("templateId", Property.of(p -> p.keyword(k -> k)));
+        // Значения metadata - keyword: фильтр meta=key:value сравнивает целиком, без анализа
+        DynamicTemplate metadataAsKeyword = DynamicTemplate.of(d -> d
+                .pathMatch("metadata.*")
+                .matchMappingType("string")
+                .mapping(p -> p.keyword(k -> k.ignoreAbove(1024))));
+
+        client.indices().putIndexTemplate(request -> request
+                .name(indexPrefix)
+                .indexPatterns(indexPattern)
+                .priority(200)
+                .template(template -> template
+                        .settings(settings -> settings
+                                .numberOfShards(String.valueOf(shards))
+                                .numberOfReplicas(String.valueOf(replicas))
+                                .refreshInterval(Time.of(time -> time.time(refreshInterval))))
+                        .mappings(mappings -> mappings
+                                .properties(properties)
+                                .dynamicTemplates(List.of(Map.of("metadata_as_keyword", metadataAsKeyword))))));
+    }
+
+    // Учет записи для определения массовой заливки; вызывается bulk-индексатором
+    public void recordWrites(Set<String> indices, int documents) {
+        hotIndices.addAll(indices);
+        windowDocs.addAndGet(documents);
+    }
+
+    // Поток выше порога - refresh реже (меньше мелких сегментов), спал вдвое - обратно
+    @Scheduled(fixedDelayString = "${app.elasticsearch.lifecycle.bulk-check-interval-ms:10000}")
+    public void adjustRefreshInterval() {
+        long now = System.currentTimeMillis();
+        long elapsedMs = Math.max(1, now - windowStartedAt);
+        long docsPerSecond = windowDocs.getAndSet(0) * 1000 / elapsedMs;
+        windowStartedAt = now;
+        Set<String> written = new HashSet<>(hotIndices);
+        hotIndices.removeAll(written);
+
+        if (!healthMonitor.isAvailable()) {
+            return;
+        }
+        try {
+            if (docsPerSecond >= bulkDocsPerSecond) {
+                written.removeAll(bulkModeIndices);
+                if (!written.isEmpty()) {
+                    updateRefreshInterval(written, bulkRefreshInterval);
+                    bulkModeIndices.addAll(written);
+                }
+                if (!bulkMode) {
+                    bulkMode = true;
+                    log.info("Bulk load detected ({} docs/s): refresh_interval={}", docsPerSecond, bulkRefreshInterval);
+                }
+            } else if (bulkMode && docsPerSecond < bulkDocsPerSecond / 2) {
+                Set<String> restored = new HashSet<>(bulkModeIndices);
+                updateRefreshInterval(restored, refreshInterval);
+                bulkModeIndices.removeAll(restored);
+                bulkMode = false;
+                log.info("Bulk load finished ({} docs/s): refresh_interval={}", docsPerSecond, refreshInterval);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to update refresh_interval: {}", e.getMessage());
+        }
+    }
+
+    private void updateRefreshInterval(Set<String> indices, String interval) throws Exception {
+        client.indices().putSettings(request -> request
+                .index(new ArrayList<>(indices))
+                .ignoreUnavailable(true)
+                .settings(settings -> settings.refreshInterval(Time.of(time -> time.time(interval)))));
+    }
+
+    // Закрытые дни сливаются в один сегмент, дни старше retention удаляются целиком.
+    // Проход отдается в es-lifecycle; пока предыдущий не закончился, новый не запускается.
+    @Scheduled(initialDelayString = "${app.elasticsearch.lifecycle.maintenance-initial-delay-ms:60000}",
+            fixedDelayString = "${app.elasticsearch.lifecycle.maintenance-interval-ms:3600000}")
+    public void maintain() {
+        if (!healthMonitor.isAvailable() || !maintenanceRunning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            maintenanceExecutor.execute(() -> {
+                try {
+                    runMaintenance();
+                } finally {
+                    maintenanceRunning.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            maintenanceRunning.set(false);
+        }
+    }
+
+    private void runMaintenance() {
+        ensureTemplate();
+
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        Set<String> existing = new HashSet<>();
+        try {
+            for (IndicesRecord record : client.cat().indices(request -> request.index(indexPattern)).valueBody()) {
+                existing.add(record.index());
+            }
+        } catch (Exception e) {
+            log.warn("Failed to list log indices: {}", e.getMessage());
+            return;
+        }
+
+        Set<String> retained = new HashSet<>(existing);
+        for (String index : existing) {
+            LocalDate day = dayOf(index);
+            if (day == null) {
+                continue;
+            }
+            try {
+                if (retentionDays > 0 && day.isBefore(today.minusDays(retentionDays))) {
+                    client.indices().delete(request -> request.index(index));
+                    retained.remove(index);
+                    forceMerged.remove(index);
+                    deletedIndices.incrementAndGet();
+                    log.info("Deleted log index {} (retention {} days)", index, retentionDays);
+                } else if (forceMergeAfterDays > 0 && day.isBefore(today.minusDays(forceMergeAfterDays - 1L))
+                        && !forceMerged.contains(index) && !bulkModeIndices.contains(index)) {
+                    // Слияние идет задачей в кластере; ответ - id задачи, а не итог слияния
+                    String task = client.indices().forcemerge(request -> request
+                            .index(index).maxNumSegments(1L).waitForCompletion(false)).task();
+                    forceMerged.add(index);
+                    forceMerges.incrementAndGet();
+                    log.info("Force-merge of log index {} started as task {}", index, task);
+                }
+            } catch (Exception e) {
+                log.warn("Lifecycle action on {} failed: {}", index, e.getMessage());
+            }
+        }
+
+        knownIndices = Set.copyOf(retained);
+    }
+
+    private LocalDate dayOf(String index) {
+        if (!index.startsWith(indexPrefix + "-")) {
+            return null;
+        }
+        String suffix = index.substring(indexPrefix.length() + 1);
+        try {
+            return LocalDate.parse(suffix, suffix.indexOf('.') > 0 ? DAY_FORMAT : LEGACY_DAY_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        maintenanceExecutor.shutdownNow();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("templateInstalled", templateInstalled);
+        stats.put("indices", knownIndices.size());
+        stats.put("bulkMode", bulkMode);
+        stats.put("refreshInterval", bulkMode ? bulkRefreshInterval : refreshInterval);
+        stats.put("forceMerges", forceMerges.get());
+        stats.put("maintenanceRunning", maintenanceRunning.get());
+        stats.put("deletedIndices", deletedIndices.get());
+        stats.put("retentionDays", retentionDays);
+        return stats;
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.logSleuthEnterprise.service.elastic;
+
+import com.example.logSleuthEnterprise.service.query.LogQuery;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+// Ленивый обход всех совпадений через point-in-time + search_after. В памяти только текущая
+// страница и одна следующая: она запрашивается в фоне, пока потребитель читает текущую.
+// close() закрывает PIT; после исчерпания результатов он закрывается сам.
+public class ElasticLogIterator implements Iterator<Map<String, Object>>, AutoCloseable {
+
+    private final ElasticsearchService elasticService;
+    private final Executor prefetchExecutor;
+    private final LogQuery query;
+
+    private Iterator<Map<String, Object>> current = Collections.emptyIterator();
+    private CompletableFuture<ElasticsearchService.SearchAfterPage> next;
+    private String pitId;
+    private long remaining;
+    private boolean closed;
+
+    ElasticLogIterator(ElasticsearchService elasticService, Executor prefetchExecutor, LogQuery query,
+                       String pitId, long maxResults) {
+        this.elasticService = elasticService;
+        this.prefetchExecutor = prefetchExecutor;
+        this.query = query;
+        this.pitId = pitId;
+        this.remaining = maxResults;
+        this.next = CompletableFuture.supplyAsync(() -> elasticService.fetchPage(query, pitId, null), prefetchExecutor);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (remaining <= 0) {
+            close();
+            return false;
+        }
+        while (!current.hasNext()) {
+            if (next == null) {
+                close();
+                return false;
+            }
+            ElasticsearchService.SearchAfterPage page = awaitNext();
+            pitId = page.pitId();
+            if (!page.last()) {
+                // PIT id может смениться между страницами - следующая страница идет с последним
+                String nextPitId = page.pitId();
+                next = CompletableFuture.supplyAsync(
+                        () -> elasticService.fetchPage(query, nextPitId, page.lastSortValues()), prefetchExecutor);
+            }
+            current = page.logs().iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        remaining--;
+        return current.next();
+    }
+
+    private ElasticsearchService.SearchAfterPage awaitNext() {
+        CompletableFuture<ElasticsearchService.SearchAfterPage> pending = next;
+        next = null;
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            close();
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        current = Collections.emptyIterator();
+        CompletableFuture<ElasticsearchService.SearchAfterPage> pending = next;
+        next = null;
+        if (pending == null) {
+            elasticService.closePointInTime(pitId);
+        } else {
+            // Фоновая страница еще в пути - PIT закрывается после нее, с самым свежим id
+            String lastPitId = pitId;
+            pending.whenComplete((page, error) -> elasticService.closePointInTime(page != null ? page.pitId() : lastPitId));
+        }
+    }
+}
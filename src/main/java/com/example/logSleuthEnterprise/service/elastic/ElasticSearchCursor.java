@@ -0,0 +1,127 @@
+package com.example.logSleuthEnterprise.service.elastic;
+
+import com.example.logSleuthEnterprise.model.LogField;
+import com.example.logSleuthEnterprise.service.query.LogQuery;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+// Позиция глубокого чтения из Elasticsearch: point-in-time и sort-значения последнего хита
+// для search_after. Как и в LogCursor, предикаты запроса едут в токене, поэтому следующая
+// страница читает тот же снимок индекса с тем же фильтром.
+record ElasticSearchCursor(LogQuery query, String pitId, List<Object> searchAfter) {
+
+    private static final int VERSION = 1;
+
+    String encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            writeNullable(out, query.id());
+            writeNullable(out, query.text());
+            writeNullable(out, query.service());
+            writeNullable(out, query.level());
+            writeNullable(out, query.host());
+            out.writeLong(query.from() != null ? query.from().toEpochMilli() : Long.MIN_VALUE);
+            out.writeLong(query.to() != null ? query.to().toEpochMilli() : Long.MIN_VALUE);
+            out.writeInt(query.metadata().size());
+            for (Map.Entry<String, String> entry : query.metadata().entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+            out.writeInt(query.limit());
+            out.writeUTF(query.fields().stream().map(LogField::column).collect(Collectors.joining(",")));
+            out.writeUTF(pitId);
+            out.writeInt(searchAfter.size());
+            for (Object value : searchAfter) {
+                // Для timestamp и _shard_doc ES отдает числа; строки - на случай других полей сортировки
+                if (value instanceof Number number && !(value instanceof Double || value instanceof Float)) {
+                    out.writeByte('L');
+                    out.writeLong(number.longValue());
+                } else if (value instanceof Number number) {
+                    out.writeByte('D');
+                    out.writeDouble(number.doubleValue());
+                } else {
+                    out.writeByte('S');
+                    out.writeUTF(String.valueOf(value));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode cursor", e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    static ElasticSearchCursor decode(String token) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            if (in.readByte() != VERSION) {
+                throw new IllegalArgumentException("Unsupported cursor version");
+            }
+            String id = readNullable(in);
+            String text = readNullable(in);
+            String service = readNullable(in);
+            String level = readNullable(in);
+            String host = readNullable(in);
+            long fromMillis = in.readLong();
+            long toMillis = in.readLong();
+            int metadataSize = in.readInt();
+            if (metadataSize < 0 || metadataSize > 64) {
+                throw new IllegalArgumentException("Invalid cursor metadata");
+            }
+            Map<String, String> metadata = new TreeMap<>();
+            for (int i = 0; i < metadataSize; i++) {
+                metadata.put(in.readUTF(), in.readUTF());
+            }
+            int limit = in.readInt();
+            String fields = in.readUTF();
+            String pitId = in.readUTF();
+            int sortSize = in.readInt();
+            if (sortSize < 0 || sortSize > 8) {
+                throw new IllegalArgumentException("Invalid cursor sort values");
+            }
+            List<Object> searchAfter = new ArrayList<>(sortSize);
+            for (int i = 0; i < sortSize; i++) {
+                switch (in.readByte()) {
+                    case 'L' -> searchAfter.add(in.readLong());
+                    case 'D' -> searchAfter.add(in.readDouble());
+                    case 'S' -> searchAfter.add(in.readUTF());
+                    default -> throw new IllegalArgumentException("Invalid cursor sort value");
+                }
+            }
+            // Как в LogCursor: токен приходит от клиента, поэтому структура проверяется целиком
+            if (limit < 1 || pitId.isEmpty()
+                    || (fromMillis != Long.MIN_VALUE && toMillis != Long.MIN_VALUE && fromMillis > toMillis)
+                    || in.available() > 0) {
+                throw new IllegalArgumentException("Invalid cursor position");
+            }
+            LogQuery query = new LogQuery(id, text, service, level, host,
+                    fromMillis != Long.MIN_VALUE ? Instant.ofEpochMilli(fromMillis) : null,
+                    toMillis != Long.MIN_VALUE ? Instant.ofEpochMilli(toMillis) : null,
+                    metadata, limit, LogField.parse(fields), false);
+            return new ElasticSearchCursor(query, pitId, searchAfter);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String text) throws IOException {
+        out.writeBoolean(text != null);
+        if (text != null) {
+            out.writeUTF(text);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.logSleuthEnterprise.service.elastic;
+
+import com.example.logSleuthEnterprise.service.health.CircuitBreaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.cluster.ClusterHealth;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+// Единственное место, где опрашивается кластер. Остальной код читает готовое состояние.
+@Component
+public class ElasticsearchHealthMonitor {
+
+    public enum HealthState { UP, DEGRADED, DOWN }
+
+    private static final Logger log = LoggerFactory.getLogger(ElasticsearchHealthMonitor.class);
+
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final CircuitBreaker circuitBreaker;
+
+    private volatile HealthState state = HealthState.DOWN;
+    private volatile String clusterStatus = "unknown";
+    private volatile Instant lastProbe;
+    private volatile Instant lastStateChange = Instant.now();
+
+    public ElasticsearchHealthMonitor(ElasticsearchOperations elasticsearchOperations,
+                                      @Value("${app.elasticsearch.breaker.failure-threshold:3}") int failureThreshold,
+                                      @Value("${app.elasticsearch.breaker.slow-call-ms:5000}") long slowCallMs,
+                                      @Value("${app.elasticsearch.breaker.open-duration-ms:10000}") long openDurationMs) {
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.circuitBreaker = new CircuitBreaker("elasticsearch", failureThreshold, slowCallMs, openDurationMs);
+    }
+
+    public boolean isAvailable() {
+        return circuitBreaker.isClosed();
+    }
+
+    public HealthState getState() {
+        return state;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.elasticsearch.health.probe-interval-ms:5000}")
+    public void probe() {
+        CircuitBreaker.State breakerState = circuitBreaker.getState();
+        // Открытый breaker пробуем только по истечении open-duration
+        if (breakerState == CircuitBreaker.State.OPEN && !circuitBreaker.tryStartProbe()) {
+            updateState(HealthState.DOWN);
+            return;
+        }
+
+        long started = System.currentTimeMillis();
+        try {
+            ClusterHealth health = elasticsearchOperations.cluster().health();
+            lastProbe = Instant.now();
+            clusterStatus = health.getStatus() != null ? health.getStatus().toLowerCase() : "unknown";
+
+            if (circuitBreaker.getState() == CircuitBreaker.State.HALF_OPEN) {
+                circuitBreaker.probeSucceeded();
+            } else {
+                circuitBreaker.recordSuccess(System.currentTimeMillis() - started);
+            }
+
+        } catch (Exception e) {
+            lastProbe = Instant.now();
+            clusterStatus = "unreachable";
+            log.warn("Elasticsearch not available: {}", e.getMessage());
+            circuitBreaker.probeFailed(e);
+        }
+
+        updateState(evaluateState());
+    }
+
+    private HealthState evaluateState() {
+        if (circuitBreaker.getState() != CircuitBreaker.State.CLOSED) {
+            return HealthState.DOWN;
+        }
+        return "green".equals(clusterStatus) ? HealthState.UP : HealthState.DEGRADED;
+    }
+
+    private void updateState(HealthState next) {
+        if (state != next) {
+            log.info("Elasticsearch health: {} -> {} (cluster status: {})", state, next, clusterStatus);
+            state = next;
+            lastStateChange = Instant.now();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("status", state.name());
+        stats.put("clusterStatus", clusterStatus);
+        stats.put("lastStateChange", lastStateChange.toString());
+        stats.put("lastProbe", lastProbe != null ? lastProbe.toString() : "never");
+        stats.put("breaker", circuitBreaker.getStats());
+        return stats;
+    }
+}
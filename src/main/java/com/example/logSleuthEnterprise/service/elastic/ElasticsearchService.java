@@ -1,41 +1,296 @@
 package com.example.logSleuthEnterprise.service.elastic;
 
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.json.JsonData;
 import com.example.logSleuthEnterprise.model.ElasticLogDocument;
+import com.example.logSleuthEnterprise.model.LogField;
+import com.example.logSleuthEnterprise.service.query.LogQuery;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
 import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.data.elasticsearch.core.query.IndicesOptions;
+import org.springframework.data.elasticsearch.core.query.Query.PointInTime;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 @Service
 public class ElasticsearchService {
 
     private static final Logger log = LoggerFactory.getLogger(ElasticsearchService.class);
 
     private final ElasticsearchOperations elasticsearchOperations;
+    private final ElasticsearchHealthMonitor healthMonitor;
+    private final ElasticIndexLifecycle lifecycle;
+    private final ElasticBulkIndexer bulkIndexer;
+
+    // PIT живет keepAlive с последнего запроса страницы; брошенный клиентом закроется сам
+    private final Duration pitKeepAlive;
+    private final int streamPageSize;
+    private final ExecutorService prefetchExecutor;
 
-    public ElasticsearchService(ElasticsearchOperations elasticsearchOperations) {
+    public ElasticsearchService(ElasticsearchOperations elasticsearchOperations,
+                                ElasticsearchClient elasticsearchClient,
+                                ElasticsearchHealthMonitor healthMonitor,
+                                ElasticIndexLifecycle lifecycle,
+                                @Value("${app.elasticsearch.bulk.max-actions:1000}") int bulkMaxActions,
+                                @Value("${app.elasticsearch.bulk.max-bytes:5242880}") long bulkMaxBytes,
+                                @Value("${app.elasticsearch.bulk.flush-interval-ms:1000}") long bulkFlushIntervalMs,
+                                @Value("${app.elasticsearch.bulk.concurrency:4}") int bulkConcurrency,
+                                @Value("${app.elasticsearch.bulk.max-retries:5}") int bulkMaxRetries,
+                                @Value("${app.elasticsearch.bulk.initial-backoff-ms:200}") long bulkInitialBackoffMs,
+                                @Value("${app.elasticsearch.bulk.acquire-timeout-ms:5000}") long bulkAcquireTimeoutMs,
+                                @Value("${app.elasticsearch.search.pit-keep-alive-ms:60000}") long pitKeepAliveMs,
+                                @Value("${app.elasticsearch.search.page-size:1000}") int streamPageSize,
+                                @Value("${app.elasticsearch.search.prefetch-threads:2}") int prefetchThreads) {
         this.elasticsearchOperations = elasticsearchOperations;
-        log.info("SimpleElasticService initialized");
+        this.healthMonitor = healthMonitor;
+        this.lifecycle = lifecycle;
+        this.bulkIndexer = new ElasticBulkIndexer(elasticsearchOperations, elasticsearchClient, healthMonitor.getCircuitBreaker(),
+                lifecycle, bulkMaxActions, bulkMaxBytes, bulkFlushIntervalMs, bulkConcurrency, bulkMaxRetries,
+                bulkInitialBackoffMs, bulkAcquireTimeoutMs);
+        this.pitKeepAlive = Duration.ofMillis(pitKeepAliveMs);
+        this.streamPageSize = streamPageSize;
+        this.prefetchExecutor = Executors.newFixedThreadPool(prefetchThreads, runnable -> {
+            Thread thread = new Thread(runnable, "es-search-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("SimpleElasticService initialized (bulk: {} docs / {} bytes / {} ms, {} concurrent requests)",
+                bulkMaxActions, bulkMaxBytes, bulkFlushIntervalMs, bulkConcurrency);
     }
 
     public void saveToElasticsearch(ElasticLogDocument document) {
+        bulkIndexer.add(document).whenComplete((result, error) -> {
+            if (error != null) {
+                log.error("Failed to save to Elasticsearch: {}", error.getMessage());
+            } else {
+                log.debug("Saved to Elasticsearch: {}", document.getId());
+            }
+        });
+    }
+
+    // Future завершается, когда все документы проиндексированы (или исчерпаны повторы)
+    public CompletableFuture<Void> saveAllToElasticsearch(Collection<ElasticLogDocument> documents) {
+        CompletableFuture<?>[] futures = documents.stream()
+                .map(bulkIndexer::add)
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(futures);
+    }
+
+    public void flush() {
+        bulkIndexer.flush();
+    }
+
+    public Map<String, Object> getBulkStats() {
+        return bulkIndexer.getStats();
+    }
+
+
+    // Полнотекстовый поиск с фильтрами, новые логи первыми; в ответе только поля проекции
+    public List<Map<String, Object>> search(LogQuery query) {
+        String[] includes = query.fields().stream().map(LogField::column).toArray(String[]::new);
+        NativeQuery nativeQuery = NativeQuery.builder()
+                .withQuery(toQuery(query))
+                .withSort(sort -> sort.field(field -> field.field("timestamp").order(SortOrder.Desc)))
+                .withPageable(PageRequest.of(0, query.limit()))
+                .withSourceFilter(new FetchSourceFilter(includes, null))
+                .withIndicesOptions(IndicesOptions.LENIENT_EXPAND_OPEN)
+                .build();
+
+        List<Map<String, Object>> logs = new ArrayList<>();
+        IndexCoordinates indices = lifecycle.searchIndices(query.from(), query.to());
+        for (SearchHit<ElasticLogDocument> hit : elasticsearchOperations.search(nativeQuery, ElasticLogDocument.class, indices)) {
+            logs.add(toLogMap(hit.getContent(), query));
+        }
+        return logs;
+    }
+
+    // Первая страница открывает PIT по logs-*, следующие идут по nextCursor на тот же снимок.
+    // nextCursor == null - совпадения кончились, PIT уже закрыт.
+    public Map<String, Object> searchPage(LogQuery query, String cursorToken) {
+        ElasticSearchCursor cursor = cursorToken != null
+                ? ElasticSearchCursor.decode(cursorToken)
+                : new ElasticSearchCursor(query, openPointInTime(query), null);
+
+        SearchAfterPage page;
+        try {
+            page = fetchPage(cursor.query(), cursor.pitId(), cursor.searchAfter());
+        } catch (RuntimeException e) {
+            if (cursorToken == null) {
+                closePointInTime(cursor.pitId());
+            }
+            throw e;
+        }
+        String nextCursor = null;
+        if (page.last()) {
+            closePointInTime(page.pitId());
+        } else {
+            nextCursor = new ElasticSearchCursor(cursor.query(), page.pitId(), page.lastSortValues()).encode();
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("logs", page.logs());
+        result.put("count", page.logs().size());
+        result.put("nextCursor", nextCursor);
+        return result;
+    }
+
+    // Все совпадения (не больше maxResults) страницами app.elasticsearch.search.page-size.
+    // Итератор нужно закрыть, если он не дочитан до конца.
+    public ElasticLogIterator stream(LogQuery query, long maxResults) {
+        LogQuery paged = new LogQuery(query.id(), query.text(), query.service(), query.level(), query.host(),
+                query.from(), query.to(), query.metadata(), streamPageSize, query.fields(), false);
+        return new ElasticLogIterator(this, prefetchExecutor, paged, openPointInTime(paged), maxResults);
+    }
+
+    // Сортировка timestamp + _shard_doc: _shard_doc уникален внутри PIT и дешевле сортировки по id
+    SearchAfterPage fetchPage(LogQuery query, String pitId, List<Object> searchAfter) {
+        String[] includes = query.fields().stream().map(LogField::column).toArray(String[]::new);
+        NativeQuery nativeQuery = NativeQuery.builder()
+                .withQuery(toQuery(query))
+                .withSort(sort -> sort.field(field -> field.field("timestamp").order(SortOrder.Desc)))
+                .withSort(sort -> sort.field(field -> field.field("_shard_doc").order(SortOrder.Asc)))
+                .withPageable(PageRequest.of(0, query.limit()))
+                .withSourceFilter(new FetchSourceFilter(includes, null))
+                .withPointInTime(new PointInTime(pitId, pitKeepAlive))
+                .withSearchAfter(searchAfter)
+                .withTrackTotalHits(false)
+                .build();
+
+        // Индексы зафиксированы в PIT при открытии, здесь они не передаются в запрос
+        SearchHits<ElasticLogDocument> hits = elasticsearchOperations.search(nativeQuery, ElasticLogDocument.class,
+                lifecycle.searchIndices(query.from(), query.to()));
+        List<Map<String, Object>> logs = new ArrayList<>(hits.getSearchHits().size());
+        List<Object> lastSortValues = searchAfter;
+        for (SearchHit<ElasticLogDocument> hit : hits) {
+            logs.add(toLogMap(hit.getContent(), query));
+            lastSortValues = hit.getSortValues();
+        }
+        String nextPitId = hits.getPointInTimeId() != null ? hits.getPointInTimeId() : pitId;
+        return new SearchAfterPage(logs, nextPitId, lastSortValues, logs.size() < query.limit());
+    }
+
+    // PIT открывается только на дни из диапазона запроса
+    private String openPointInTime(LogQuery query) {
+        return elasticsearchOperations.openPointInTime(lifecycle.searchIndices(query.from(), query.to()), pitKeepAlive, true);
+    }
+
+    void closePointInTime(String pitId) {
         try {
-            elasticsearchOperations.save(document);
-            log.info("Saved to Elasticsearch: {}", document.getId());
+            elasticsearchOperations.closePointInTime(pitId);
         } catch (Exception e) {
-            log.error("Failed to save to Elasticsearch: {}", e.getMessage());
+            // Не закрытый PIT истечет по keepAlive
+            log.warn("Failed to close point-in-time: {}", e.getMessage());
+        }
+    }
+
+    public long count(LogQuery query) {
+        NativeQuery nativeQuery = NativeQuery.builder()
+                .withQuery(toQuery(query))
+                .withIndicesOptions(IndicesOptions.LENIENT_EXPAND_OPEN)
+                .build();
+        return elasticsearchOperations.count(nativeQuery, ElasticLogDocument.class, lifecycle.searchIndices(query.from(), query.to()));
+    }
+
+    // Текст - в must (влияет на релевантность), равенства и диапазон - в filter (кэшируются ES)
+    private static Query toQuery(LogQuery query) {
+        BoolQuery.Builder bool = new BoolQuery.Builder();
+        if (query.id() != null) {
+            bool.filter(filter -> filter.ids(ids -> ids.values(query.id())));
+        }
+        if (query.text() != null) {
+            bool.must(must -> must.match(match -> match.field("message").query(query.text())));
+        }
+        if (query.service() != null) {
+            bool.filter(filter -> filter.term(term -> term.field("service").value(query.service())));
+        }
+        if (query.level() != null) {
+            bool.filter(filter -> filter.term(term -> term.field("level").value(query.level())));
+        }
+        if (query.host() != null) {
+            bool.filter(filter -> filter.term(term -> term.field("host").value(query.host())));
         }
+        if (query.hasTimeRange()) {
+            bool.filter(filter -> filter.range(range -> {
+                range.field("timestamp");
+                if (query.from() != null) {
+                    range.gte(JsonData.of(query.from().toString()));
+                }
+                if (query.to() != null) {
+                    range.lt(JsonData.of(query.to().toString()));
+                }
+                return range;
+            }));
+        }
+        for (Map.Entry<String, String> entry : query.metadata().entrySet()) {
+            bool.filter(filter -> filter.matchPhrase(phrase -> phrase.field("metadata." + entry.getKey()).query(entry.getValue())));
+        }
+        return new Query.Builder().bool(bool.build()).build();
     }
 
+    // Та же форма, что у LogRow в JSON: только выбранные поля, timestamp строкой ISO-8601
+    private static Map<String, Object> toLogMap(ElasticLogDocument document, LogQuery query) {
+        Map<String, Object> log = new LinkedHashMap<>();
+        for (LogField field : query.fields()) {
+            switch (field) {
+                case ID -> log.put("id", document.getId());
+                case TIMESTAMP -> log.put("timestamp", document.getTimestamp() != null ? document.getTimestamp().toString() : null);
+                case SERVICE -> log.put("service", document.getService());
+                case LEVEL -> log.put("level", document.getLevel());
+                case MESSAGE -> log.put("message", document.getMessage());
+                case HOST -> log.put("host", document.getHost());
+                case METADATA -> log.put("metadata", document.getMetadata() != null ? document.getMetadata() : Map.of());
+            }
+        }
+        return log;
+    }
 
+    // Дешевая проверка для горячего пути: состояние ведет ElasticsearchHealthMonitor
     public boolean isElasticsearchAvailable() {
+        return healthMonitor.isAvailable();
+    }
+
+    public Map<String, Object> getHealth() {
+        return healthMonitor.getStats();
+    }
+
+    public Map<String, Object> getLifecycleStats() {
+        return lifecycle.getStats();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        bulkIndexer.close();
+        prefetchExecutor.shutdown();
         try {
-            var clusterHealth = elasticsearchOperations.indexOps(IndexCoordinates.of("_cluster/health"));
-            return true;
-        } catch (Exception e) {
-            log.warn("Elasticsearch not available: {}", e.getMessage());
-            return false;
+            prefetchExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
+
+    record SearchAfterPage(List<Map<String, Object>> logs, String pitId, List<Object> lastSortValues, boolean last) {
+    }
 }
@@ -0,0 +1,37 @@
+package com.example.logSleuthEnterprise.service.health;
+
+import com.example.logSleuthEnterprise.dao.LogDAO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Breaker Cassandra открывают реальные ошибки записи в LogDAO, здесь только half-open проба
+@Component
+public class CassandraHealthMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(CassandraHealthMonitor.class);
+
+    private final LogDAO logDao;
+
+    public CassandraHealthMonitor(LogDAO logDao) {
+        this.logDao = logDao;
+    }
+
+    @Scheduled(fixedDelayString = "${app.cassandra.health.probe-interval-ms:2000}")
+    public void probe() {
+        CircuitBreaker circuitBreaker = logDao.getCircuitBreaker();
+        if (circuitBreaker == null || !circuitBreaker.tryStartProbe()) {
+            return;
+        }
+
+        try {
+            logDao.ping();
+            circuitBreaker.probeSucceeded();
+            log.info("Cassandra is reachable again, circuit closed");
+        } catch (Exception e) {
+            circuitBreaker.probeFailed(e);
+            log.warn("Cassandra probe failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.logSleuthEnterprise.service.health;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Breaker по реальным результатам записи: N подряд неудачных или слишком медленных
+// вызовов открывают его сразу. Из OPEN выходит только через пробу по расписанию.
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private final String name;
+    private final int failureThreshold;
+    private final long slowCallThresholdMs;
+    private final long openDurationMs;
+
+    private volatile State state = State.CLOSED;
+    private volatile Instant lastTransition = Instant.now();
+    private volatile long openedAtMillis;
+    private volatile String lastFailure;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong totalFailures = new AtomicLong();
+    private final AtomicLong totalSuccesses = new AtomicLong();
+    private final AtomicLong slowCalls = new AtomicLong();
+    private final AtomicLong lastLatencyMs = new AtomicLong();
+
+    public CircuitBreaker(String name, int failureThreshold, long slowCallThresholdMs, long openDurationMs) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.slowCallThresholdMs = slowCallThresholdMs;
+        this.openDurationMs = openDurationMs;
+    }
+
+    // Горячий путь: только чтение volatile
+    public boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void recordSuccess(long latencyMs) {
+        lastLatencyMs.set(latencyMs);
+        if (latencyMs > slowCallThresholdMs) {
+            slowCalls.incrementAndGet();
+            onFailure("slow call: " + latencyMs + " ms");
+            return;
+        }
+        totalSuccesses.incrementAndGet();
+        consecutiveFailures.set(0);
+    }
+
+    public void recordFailure(Throwable error) {
+        onFailure(error.getMessage());
+    }
+
+    private void onFailure(String reason) {
+        totalFailures.incrementAndGet();
+        lastFailure = reason;
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold && state == State.CLOSED) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    // Проба разрешена, когда breaker открыт дольше openDurationMs
+    public synchronized boolean tryStartProbe() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAtMillis >= openDurationMs) {
+            transitionTo(State.HALF_OPEN);
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void probeSucceeded() {
+        consecutiveFailures.set(0);
+        if (state != State.CLOSED) {
+            transitionTo(State.CLOSED);
+        }
+    }
+
+    public synchronized void probeFailed(Throwable error) {
+        totalFailures.incrementAndGet();
+        lastFailure = error.getMessage();
+        consecutiveFailures.incrementAndGet();
+        if (state != State.OPEN) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private synchronized void transitionTo(State next) {
+        if (state == next) {
+            return;
+        }
+        log.warn("Circuit breaker '{}': {} -> {} (last failure: {})", name, state, next, lastFailure);
+        state = next;
+        lastTransition = Instant.now();
+        if (next == State.OPEN) {
+            openedAtMillis = System.currentTimeMillis();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("state", state.name());
+        stats.put("lastTransition", lastTransition.toString());
+        stats.put("consecutiveFailures", consecutiveFailures.get());
+        stats.put("totalFailures", totalFailures.get());
+        stats.put("totalSuccesses", totalSuccesses.get());
+        stats.put("slowCalls", slowCalls.get());
+        stats.put("lastLatencyMs", lastLatencyMs.get());
+        if (lastFailure != null) {
+            stats.put("lastFailure", lastFailure);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,294 @@
+package com.example.logSleuthEnterprise.service.ingest;
+
+import com.example.logSleuthEnterprise.dao.LogDAO;
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+import com.example.logSleuthEnterprise.model.LogIds;
+import com.example.logSleuthEnterprise.service.kafka.KafkaLogMessageCodec;
+import com.example.logSleuthEnterprise.service.kafka.KafkaLogProducer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Прием NDJSON: тело читается из потока построчно, каждая строка разбирается кодеком
+// без промежуточного String, записи уходят пачками в Cassandra или Kafka.
+@Service
+public class BulkLogIngestService {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkLogIngestService.class);
+
+    public enum Target { CASSANDRA, KAFKA }
+
+    private final LogDAO logDao;
+    private final KafkaLogProducer kafkaLogProducer;
+    private final KafkaLogMessageCodec codec;
+
+    @Value("${app.ingest.bulk.batch-size:500}")
+    private int defaultBatchSize;
+
+    @Value("${app.ingest.bulk.max-pending-batches:8}")
+    private int maxPendingBatches;
+
+    @Value("${app.ingest.bulk.max-line-bytes:1048576}")
+    private int maxLineBytes;
+
+    @Value("${app.ingest.bulk.max-reported-rejects:1000}")
+    private int maxReportedRejects;
+
+    public BulkLogIngestService(LogDAO logDao, KafkaLogProducer kafkaLogProducer, KafkaLogMessageCodec codec) {
+        this.logDao = logDao;
+        this.kafkaLogProducer = kafkaLogProducer;
+        this.codec = codec;
+    }
+
+    public Map<String, Object> ingest(InputStream body, Target target, Integer batchSize) throws IOException {
+        int effectiveBatchSize = batchSize != null && batchSize > 0 ? batchSize : defaultBatchSize;
+        IngestRun run = new IngestRun(target, effectiveBatchSize);
+        long started = System.currentTimeMillis();
+
+        LineReader reader = new LineReader(body, maxLineBytes);
+        while (reader.next()) {
+            run.line++;
+            if (reader.isOversized()) {
+                run.reject(run.line, "Line exceeds " + maxLineBytes + " bytes");
+                continue;
+            }
+            if (reader.isBlank()) {
+                run.blank++;
+                continue;
+            }
+            try {
+                KafkaLogMessage message = codec.decode(reader.buffer(), 0, reader.length());
+                applyDefaults(message);
+                run.add(run.line, message);
+            } catch (Exception e) {
+                run.reject(run.line, e.getMessage());
+            }
+        }
+        run.finish();
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("target", target.name().toLowerCase());
+        summary.put("lines", run.line);
+        summary.put("accepted", run.accepted);
+        summary.put("rejected", run.rejected);
+        summary.put("blank", run.blank);
+        summary.put("batches", run.batches);
+        summary.put("rejects", run.rejects);
+        summary.put("rejectsTruncated", run.rejected > run.rejects.size());
+        summary.put("durationMs", System.currentTimeMillis() - started);
+
+        log.info("Bulk ingest into {}: {} lines, {} accepted, {} rejected",
+                target, run.line, run.accepted, run.rejected);
+        return summary;
+    }
+
+    // Те же значения по умолчанию, что и у POST /api/logs
+    private static void applyDefaults(KafkaLogMessage message) {
+        message.setId(LogIds.canonical(message.getId()));
+        if (message.getService() == null) message.setService("unknown");
+        if (message.getLevel() == null) message.setLevel("INFO");
+        if (message.getMessage() == null) message.setMessage("");
+        if (message.getHost() == null) message.setHost("localhost");
+        if (message.getMetadata() == null) message.setMetadata(new HashMap<>());
+    }
+
+    // Состояние одного запроса. Пачек в полете не больше maxPendingBatches:
+    // при переполнении ждем самую старую, так что чтение тела притормаживает вместе с хранилищем.
+    private final class IngestRun {
+
+        private final Target target;
+        private final int batchSize;
+        private final Deque<PendingBatch> pending = new ArrayDeque<>();
+        private final List<Map<String, Object>> rejects = new ArrayList<>();
+
+        private List<KafkaLogMessage> messages;
+        private int[] lines;
+
+        private long line;
+        private long accepted;
+        private long rejected;
+        private long blank;
+        private long batches;
+
+        IngestRun(Target target, int batchSize) {
+            this.target = target;
+            this.batchSize = batchSize;
+            startBatch();
+        }
+
+        void add(long lineNumber, KafkaLogMessage message) {
+            lines[messages.size()] = (int) lineNumber;
+            messages.add(message);
+            if (messages.size() >= batchSize) {
+                submitBatch();
+            }
+        }
+
+        void reject(long lineNumber, String error) {
+            rejected++;
+            if (rejects.size() < maxReportedRejects) {
+                Map<String, Object> reject = new LinkedHashMap<>();
+                reject.put("line", lineNumber);
+                reject.put("error", error);
+                rejects.add(reject);
+            }
+        }
+
+        void finish() {
+            if (!messages.isEmpty()) {
+                submitBatch();
+            }
+            while (!pending.isEmpty()) {
+                awaitOldest();
+            }
+        }
+
+        private void startBatch() {
+            messages = new ArrayList<>(batchSize);
+            lines = new int[batchSize];
+        }
+
+        private void submitBatch() {
+            List<KafkaLogMessage> batch = messages;
+            int[] batchLines = Arrays.copyOf(lines, batch.size());
+            startBatch();
+            batches++;
+
+            pending.addLast(new PendingBatch(batchLines, write(batch)));
+            if (pending.size() > maxPendingBatches) {
+                awaitOldest();
+            }
+        }
+
+        // Результат - неудачные позиции в пачке. Cassandra пишет пачку целиком или не пишет,
+        // Kafka подтверждает каждую запись отдельно.
+        private CompletableFuture<Map<Integer, String>> write(List<KafkaLogMessage> batch) {
+            if (target == Target.CASSANDRA) {
+                return logDao.saveLogsAsync(batch).toCompletableFuture()
+                        .thenApply(saved -> Map.<Integer, String>of());
+            }
+            return kafkaLogProducer.sendAll(batch).thenApply(KafkaLogProducer.SendAllResult::failures);
+        }
+
+        private void awaitOldest() {
+            PendingBatch batch = pending.removeFirst();
+            try {
+                Map<Integer, String> failures = batch.future.join();
+                accepted += batch.lines.length - failures.size();
+                failures.forEach((position, error) -> reject(batch.lines[position], error));
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                for (int batchLine : batch.lines) {
+                    reject(batchLine, String.valueOf(cause.getMessage()));
+                }
+            }
+        }
+    }
+
+    private record PendingBatch(int[] lines, CompletableFuture<Map<Integer, String>> future) {
+    }
+
+    // Построчное чтение из потока в переиспользуемый буфер. Строка длиннее maxLineBytes
+    // дочитывается до конца без сохранения и помечается как oversized.
+    private static final class LineReader {
+
+        private final InputStream input;
+        private final int maxLineBytes;
+        private final byte[] chunk = new byte[64 * 1024];
+        private int chunkPosition;
+        private int chunkLimit;
+        private boolean eof;
+
+        private byte[] line = new byte[4096];
+        private int lineLength;
+        private boolean oversized;
+
+        LineReader(InputStream input, int maxLineBytes) {
+            this.input = input;
+            this.maxLineBytes = maxLineBytes;
+        }
+
+        boolean next() throws IOException {
+            lineLength = 0;
+            oversized = false;
+            boolean any = false;
+
+            while (true) {
+                if (chunkPosition == chunkLimit) {
+                    if (eof || !fill()) {
+                        return any;
+                    }
+                }
+                any = true;
+                byte b = chunk[chunkPosition++];
+                if (b == '\n') {
+                    if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                        lineLength--;
+                    }
+                    return true;
+                }
+                append(b);
+            }
+        }
+
+        private boolean fill() throws IOException {
+            int read = input.read(chunk);
+            if (read < 0) {
+                eof = true;
+                return false;
+            }
+            chunkPosition = 0;
+            chunkLimit = read;
+            return true;
+        }
+
+        private void append(byte b) {
+            if (oversized) {
+                return;
+            }
+            if (lineLength == maxLineBytes) {
+                oversized = true;
+                return;
+            }
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, Math.min(maxLineBytes, line.length * 2));
+            }
+            line[lineLength++] = b;
+        }
+
+        boolean isOversized() {
+            return oversized;
+        }
+
+        boolean isBlank() {
+            for (int i = 0; i < lineLength; i++) {
+                if (!Character.isWhitespace(line[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        byte[] buffer() {
+            return line;
+        }
+
+        int length() {
+            return lineLength;
+        }
+    }
+}
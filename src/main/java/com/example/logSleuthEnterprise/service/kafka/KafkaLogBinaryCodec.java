@@ -0,0 +1,263 @@
+package com.example.logSleuthEnterprise.service.kafka;
+
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Бинарный формат KafkaLogMessage для топика raw-logs (версия 1):
+//   byte    версия
+//   string  id
+//   varlong timestamp, наносекунды эпохи (zigzag)
+//   string  service
+//   byte    код level (0 - произвольная строка, за ним string)
+//   string  message
+//   string  host
+//   varint  число пар metadata, далее string ключ + string значение
+// string = varint (длина UTF-8 + 1), 0 означает null.
+@Component
+public class KafkaLogBinaryCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final int MAX_INITIAL_METADATA = 64;
+
+    // Коды уровней; индекс в массиве - код, 0 зарезервирован под произвольную строку
+    private static final String[] LEVELS = {null, "TRACE", "DEBUG", "INFO", "WARN", "ERROR", "FATAL"};
+
+    private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(() -> new Output(512));
+
+    public byte[] encode(KafkaLogMessage logMessage) {
+        Output out = OUTPUT.get();
+        out.reset();
+
+        out.writeByte(VERSION);
+        out.writeString(logMessage.getId());
+
+        Instant timestamp = logMessage.getTimestamp() != null ? logMessage.getTimestamp() : Instant.now();
+        out.writeVarLong(zigzag(Math.addExact(Math.multiplyExact(timestamp.getEpochSecond(), 1_000_000_000L),
+                timestamp.getNano())));
+
+        out.writeString(logMessage.getService());
+        int levelCode = levelCode(logMessage.getLevel());
+        out.writeByte(levelCode);
+        if (levelCode == 0) {
+            out.writeString(logMessage.getLevel());
+        }
+        out.writeString(logMessage.getMessage());
+        out.writeString(logMessage.getHost());
+
+        Map<String, String> metadata = logMessage.getMetadata();
+        out.writeVarLong(metadata != null ? metadata.size() : 0);
+        if (metadata != null) {
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                out.writeString(entry.getKey());
+                out.writeString(entry.getValue());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public KafkaLogMessage decode(byte[] data) throws IOException {
+        Input in = new Input(data);
+        try {
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary log format version: " + version);
+            }
+
+            KafkaLogMessage message = new KafkaLogMessage();
+            message.setId(in.readString());
+            long nanos = unzigzag(in.readVarLong());
+            message.setTimestamp(Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L),
+                    Math.floorMod(nanos, 1_000_000_000L)));
+            message.setService(in.readString());
+
+            int levelCode = in.readByte();
+            if (levelCode < 0 || levelCode >= LEVELS.length) {
+                throw new IOException("Unknown level code: " + levelCode);
+            }
+            message.setLevel(levelCode == 0 ? in.readString() : LEVELS[levelCode]);
+            message.setMessage(in.readString());
+            message.setHost(in.readString());
+
+            // Число пар приходит с провода: каждая пара занимает минимум два байта, иначе запись битая.
+            // Емкость карты ограничена, чтобы одна запись не могла заказать гигантскую таблицу.
+            long metadataSize = in.readVarLong();
+            if (metadataSize < 0 || metadataSize > (data.length - in.position) / 2) {
+                throw new IOException("Metadata size " + metadataSize + " exceeds record size");
+            }
+            Map<String, String> metadata = new HashMap<>(Math.max(4, (int) Math.min(metadataSize, MAX_INITIAL_METADATA) * 2));
+            for (int i = 0; i < metadataSize; i++) {
+                metadata.put(in.readString(), in.readString());
+            }
+            message.setMetadata(metadata);
+
+            if (in.position != data.length) {
+                throw new IOException("Trailing " + (data.length - in.position) + " bytes after log record");
+            }
+            return message;
+
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Truncated binary log record", e);
+        }
+    }
+
+    private static int levelCode(String level) {
+        if (level != null) {
+            for (int code = 1; code < LEVELS.length; code++) {
+                if (LEVELS[code].equals(level)) {
+                    return code;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // Растущий буфер, переиспользуется потоком; UTF-8 кодируется вручную без промежуточного byte[]
+    private static final class Output {
+
+        private byte[] buffer;
+        private int size;
+
+        Output(int initialCapacity) {
+            this.buffer = new byte[initialCapacity];
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            int length = utf8Length(value);
+            writeVarLong(length + 1L);
+            ensure(length);
+
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    buffer[size++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[size++] = (byte) (0xC0 | (c >> 6));
+                    buffer[size++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[size++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[size++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    // Непарный суррогат - как String.getBytes(UTF_8)
+                    buffer[size++] = (byte) '?';
+                } else {
+                    buffer[size++] = (byte) (0xE0 | (c >> 12));
+                    buffer[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[size++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private static int utf8Length(String value) {
+            int length = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    length++;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    length++;
+                } else {
+                    length += 3;
+                }
+            }
+            return length;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    private static final class Input {
+
+        private final byte[] data;
+        private int position;
+
+        Input(byte[] data) {
+            this.data = data;
+        }
+
+        byte readByte() {
+            return data[position++];
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        String readString() throws IOException {
+            long encoded = readVarLong();
+            if (encoded == 0) {
+                return null;
+            }
+            long length = encoded - 1;
+            if (length > data.length - position) {
+                throw new IOException("String length " + length + " exceeds record size");
+            }
+            String value = new String(data, position, (int) length, StandardCharsets.UTF_8);
+            position += (int) length;
+            return value;
+        }
+    }
+}
@@ -1,50 +1,219 @@
 package com.example.logSleuthEnterprise.service.kafka;
 
 import com.example.logSleuthEnterprise.dao.LogDAO;
-import com.example.logSleuthEnterprise.model.ElasticLogDocument;
 import com.example.logSleuthEnterprise.model.KafkaLogMessage;
-import com.example.logSleuthEnterprise.service.elastic.ElasticsearchService;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.example.logSleuthEnterprise.model.LogIds;
+import com.example.logSleuthEnterprise.service.pipeline.LogIngestPipeline;
+import com.example.logSleuthEnterprise.service.tail.LogTailBroadcaster;
+import com.example.logSleuthEnterprise.service.template.LogTemplateMiner;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Headers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Service
 public class KafkaLogConsumer {
 
     private static final Logger log = LoggerFactory.getLogger(KafkaLogConsumer.class);
-    private final ObjectMapper objectMapper;
+    private final KafkaLogMessageCodec codec;
+    private final KafkaLogBinaryCodec binaryCodec;
     private final LogDAO logDao;
-    private final ElasticsearchService elasticService;
-
-    public KafkaLogConsumer(LogDAO logDao, ElasticsearchService elasticService) {
+    private final LogIngestPipeline pipeline;
+    private final KeyOrderedExecutor keyedExecutor;
+    private final OffsetCommitCoordinator commitCoordinator;
+    private final RedeliveryDeduplicator deduplicator;
+    private final LogTailBroadcaster tail;
+    private final LogTemplateMiner templateMiner;
+    private final String orderingKey;
+
+    public KafkaLogConsumer(KafkaLogMessageCodec codec, KafkaLogBinaryCodec binaryCodec,
+                            LogDAO logDao, LogIngestPipeline pipeline,
+                            OffsetCommitCoordinator commitCoordinator,
+                            RedeliveryDeduplicator deduplicator,
+                            LogTailBroadcaster tail,
+                            LogTemplateMiner templateMiner,
+                            @Value("${app.kafka.consumer.keyed.key:service}") String orderingKey,
+                            @Value("${app.kafka.consumer.keyed.lanes:256}") int lanes,
+                            @Value("${app.kafka.consumer.keyed.max-in-flight:10000}") int maxInFlight,
+                            @Value("${app.kafka.consumer.keyed.platform-threads:0}") int platformThreads) {
+        this.codec = codec;
+        this.binaryCodec = binaryCodec;
         this.logDao = logDao;
-        this.elasticService = elasticService;
+        this.pipeline = pipeline;
+        this.commitCoordinator = commitCoordinator;
+        this.deduplicator = deduplicator;
+        this.tail = tail;
+        this.templateMiner = templateMiner;
+        this.orderingKey = orderingKey;
+        this.keyedExecutor = new KeyOrderedExecutor("keyed-logs", lanes, maxInFlight,
+                platformThreads > 0 ? platformThreads : Runtime.getRuntime().availableProcessors() * 2);
+
+        log.info("KafkaLogConsumer initialized with JSON and binary codecs");
+    }
+
+    @KafkaListener(id = "raw-logs-batch",
+            idIsGroup = false,
+            topics = "${app.kafka.topics.raw-logs}",
+            containerFactory = "batchKafkaListenerContainerFactory",
+            autoStartup = "#{${app.kafka.consumer.batch.enabled:true} && !${app.kafka.consumer.keyed.enabled:false}}")
+    public void consumeRawLogBatch(List<ConsumerRecord<String, byte[]>> records, Consumer<?, ?> consumer) {
+        long started = System.currentTimeMillis();
+        List<KafkaLogMessage> messages = new ArrayList<>(records.size());
+        List<ConsumerRecord<String, byte[]>> accepted = new ArrayList<>(records.size());
+
+        for (ConsumerRecord<String, byte[]> record : records) {
+            commitCoordinator.register(record);
+            try {
+                KafkaLogMessage logMessage = parseKafkaMessage(record.headers(), record.value());
+                if (deduplicator.isDuplicate(logMessage.getId())) {
+                    // Повторная доставка уже записанного - до sink'ов не доходит
+                    commitCoordinator.complete(record);
+                    continue;
+                }
+                addProcessingMetadata(logMessage);
+                templateMiner.apply(logMessage);
+                tail.publish(logMessage);
+                messages.add(logMessage);
+                accepted.add(record);
+            } catch (Exception e) {
+                log.error("Failed to parse Kafka message at {}-{}@{}: {}",
+                        record.topic(), record.partition(), record.offset(), e.getMessage());
+                saveFailedMessage(record.headers(), record.value(), e.getMessage());
+                commitCoordinator.complete(record);
+            }
+        }
+
+        if (!messages.isEmpty()) {
+            // Запись в Cassandra и Elasticsearch идет в стадиях pipeline, listener их не ждет;
+            // offset'ы станут доступны для коммита, когда стадии запишут пачку. Если не записали -
+            // offset'ы остаются незавершенными, и партиция отматывается на них для повторной доставки
+            try {
+                pipeline.submit(messages).whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        log.error("Batch of {} records was not fully stored: {}", messages.size(), error.getMessage());
+                        accepted.forEach(commitCoordinator::fail);
+                        return;
+                    }
+                    messages.forEach(message -> deduplicator.markStored(message.getId()));
+                    accepted.forEach(commitCoordinator::complete);
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while handing batch to pipeline", e);
+            }
+        }
+
+        commitCoordinator.maybeCommit(consumer);
+        log.debug("Processed batch: {} records, {} queued in {} ms",
+                records.size(), messages.size(), System.currentTimeMillis() - started);
+    }
+
+    // Параллельная обработка внутри партиции: записи с одинаковым ключом (service или host)
+    // идут по порядку, разные ключи - одновременно. Offset коммитится только до наименьшей
+    // незавершенной записи, поэтому после падения теряется не больше, чем было в работе.
+    @KafkaListener(id = "raw-logs-keyed",
+            idIsGroup = false,
+            topics = "${app.kafka.topics.raw-logs}",
+            containerFactory = "batchKafkaListenerContainerFactory",
+            autoStartup = "${app.kafka.consumer.keyed.enabled:false}")
+    public void consumeRawLogKeyed(List<ConsumerRecord<String, byte[]>> records, Consumer<?, ?> consumer) {
+        for (ConsumerRecord<String, byte[]> record : records) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            long offset = record.offset();
+            commitCoordinator.register(record);
+
+            KafkaLogMessage logMessage;
+            try {
+                logMessage = parseKafkaMessage(record.headers(), record.value());
+            } catch (Exception e) {
+                log.error("Failed to parse Kafka message at {}-{}@{}: {}",
+                        record.topic(), record.partition(), offset, e.getMessage());
+                saveFailedMessage(record.headers(), record.value(), e.getMessage());
+                commitCoordinator.complete(partition, offset);
+                continue;
+            }
+            if (deduplicator.isDuplicate(logMessage.getId())) {
+                commitCoordinator.complete(partition, offset);
+                continue;
+            }
+
+            try {
+                keyedExecutor.execute(orderingKeyOf(logMessage), () -> {
+                    try {
+                        addProcessingMetadata(logMessage);
+                        templateMiner.apply(logMessage);
+                        tail.publish(logMessage);
+                        // Следующая запись того же ключа стартует после записи этой во все sink'и
+                        pipeline.submit(List.of(logMessage)).join();
+                        deduplicator.markStored(logMessage.getId());
+                        commitCoordinator.complete(partition, offset);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        commitCoordinator.fail(partition, offset);
+                    } catch (Exception e) {
+                        // Запись не сохранена ни в sink, ни в спул - offset не завершаем, запись придет заново
+                        log.error("Failed to process log {} from {}@{}: {}", logMessage.getId(), partition, offset, e.getMessage());
+                        commitCoordinator.fail(partition, offset);
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while dispatching keyed records", e);
+            }
+        }
+
+        commitCoordinator.maybeCommit(consumer);
+    }
+
+    private Object orderingKeyOf(KafkaLogMessage logMessage) {
+        return "host".equals(orderingKey) ? logMessage.getHost() : logMessage.getService();
+    }
 
-        this.objectMapper = new ObjectMapper();
-        this.objectMapper.registerModule(new JavaTimeModule());
+    public Map<String, Object> getStats() {
+        Map<String, Object> keyed = keyedExecutor.getStats();
+        keyed.put("key", orderingKey);
 
-        log.info("KafkaLogConsumer initialized with manual JSON processing");
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("keyed", keyed);
+        stats.put("offsets", commitCoordinator.getStats());
+        stats.put("dedupe", deduplicator.getStats());
+        return stats;
     }
 
-    @KafkaListener(topics = "${app.kafka.topics.raw-logs}")
-    public void consumeRawLog(String jsonMessage) {
+    @KafkaListener(id = "raw-logs",
+            idIsGroup = false,
+            topics = "${app.kafka.topics.raw-logs}",
+            autoStartup = "#{!${app.kafka.consumer.batch.enabled:true} && !${app.kafka.consumer.keyed.enabled:false}}")
+    public void consumeRawLog(ConsumerRecord<String, byte[]> record) {
+        byte[] payload = record.value();
         log.info("KAFKA CONSUMER ACTIVATED!");
-        log.info("Received raw JSON: {}", jsonMessage);
+        log.info("Received raw message: {} bytes", payload.length);
 
         try {
-            KafkaLogMessage logMessage = parseKafkaMessage(jsonMessage);
+            KafkaLogMessage logMessage = parseKafkaMessage(record.headers(), payload);
 
             if (logMessage == null) {
                 log.error("Failed to parse Kafka message");
                 return;
             }
+            if (deduplicator.isDuplicate(logMessage.getId())) {
+                log.info("Skipping redelivered log {}", logMessage.getId());
+                return;
+            }
 
             log.info("SUCCESSFULLY PARSED!");
             log.info("   ID: {}", logMessage.getId());
@@ -54,45 +223,17 @@ public class KafkaLogConsumer {
             log.info("   Host: {}", logMessage.getHost());
             log.info("   Message: {}", logMessage.getMessage());
 
-            // Добавляем метаданные обработки
-            if (logMessage.getMetadata() == null) {
-                logMessage.setMetadata(new HashMap<>());
-            }
-            logMessage.getMetadata().put("kafka_processed", "true");
-            logMessage.getMetadata().put("processed_at", Instant.now().toString());
-            logMessage.getMetadata().put("consumer_version", "2.0");
+            addProcessingMetadata(logMessage);
+            templateMiner.apply(logMessage);
 
             log.info("Metadata: {} items", logMessage.getMetadata().size());
+            tail.publish(logMessage);
 
-            // 1. Сохраняем в Cassandra
-            log.info("Saving to Cassandra...");
-            Map<String, Object> savedLog = logDao.saveLog(
-                    logMessage.getService(),
-                    logMessage.getLevel(),
-                    logMessage.getMessage(),
-                    logMessage.getHost(),
-                    logMessage.getMetadata()
-            );
-
-            if (savedLog.containsKey("error")) {
-                log.error("Failed to save to Cassandra: {}", savedLog.get("error"));
-            } else {
-                log.info("Saved to Cassandra: {}", logMessage.getId());
-            }
-
-            // 2. Сохраняем в Elasticsearch
-            if (elasticService.isElasticsearchAvailable()) {
-                log.info(" Saving to Elasticsearch...");
-                try {
-                    ElasticLogDocument elasticDoc = createElasticDocument(logMessage);
-                    elasticService.saveToElasticsearch(elasticDoc);
-                    log.info("Saved to Elasticsearch: {}", logMessage.getId());
-                } catch (Exception e) {
-                    log.error("Failed to save to Elasticsearch: {}", e.getMessage());
-                }
-            } else {
-                log.warn("Elasticsearch not available, skipping");
-            }
+            // Cassandra и Elasticsearch пишутся независимыми стадиями; ждем их, чтобы контейнер
+            // закоммитил offset только после записи
+            pipeline.submit(List.of(logMessage)).join();
+            deduplicator.markStored(logMessage.getId());
+            log.info("Stored in Cassandra and Elasticsearch: {}", logMessage.getId());
 
             log.info("PROCESSING COMPLETED SUCCESSFULLY!");
             log.info("Total processing time: {}", System.currentTimeMillis());
@@ -101,76 +242,51 @@ public class KafkaLogConsumer {
             log.error("FAILED to process Kafka message!");
             log.error("Error type: {}", e.getClass().getName());
             log.error("Error message: {}", e.getMessage());
-            log.error("Problematic JSON: {}", jsonMessage);
+            log.error("Problematic message: {}", describePayload(record.headers(), payload));
             log.error("Stack trace:", e);
 
-            saveFailedMessage(jsonMessage, e.getMessage());
+            saveFailedMessage(record.headers(), payload, e.getMessage());
         }
 
         log.info("" + "=".repeat(60));
     }
 
-    private KafkaLogMessage parseKafkaMessage(String jsonMessage) throws Exception {
-        try {
-            return objectMapper.readValue(jsonMessage, KafkaLogMessage.class);
-        } catch (Exception e) {
-            log.warn("First parsing attempt failed, trying manual parsing: {}", e.getMessage());
-
-            var rootNode = objectMapper.readTree(jsonMessage);
-            KafkaLogMessage message = new KafkaLogMessage();
-
-            if (rootNode.has("id")) message.setId(rootNode.get("id").asText());
-            if (rootNode.has("service")) message.setService(rootNode.get("service").asText());
-            if (rootNode.has("level")) message.setLevel(rootNode.get("level").asText());
-            if (rootNode.has("message")) message.setMessage(rootNode.get("message").asText());
-            if (rootNode.has("host")) message.setHost(rootNode.get("host").asText());
-
-            if (rootNode.has("timestamp")) {
-                var timestampNode = rootNode.get("timestamp");
-                if (timestampNode.isTextual()) {
-                    // Если строка в ISO формате
-                    message.setTimestamp(Instant.parse(timestampNode.asText()));
-                } else if (timestampNode.isNumber()) {
-                    // Если число (секунды с миллисекундами)
-                    double seconds = timestampNode.asDouble();
-                    long sec = (long) seconds;
-                    long nanos = (long) ((seconds - sec) * 1_000_000_000);
-                    message.setTimestamp(Instant.ofEpochSecond(sec, nanos));
-                }
-            }
-
-            // Парсим metadata
-            if (rootNode.has("metadata") && rootNode.get("metadata").isObject()) {
-                var metadataNode = rootNode.get("metadata");
-                Map<String, String> metadata = new HashMap<>();
-
-                var fields = metadataNode.fields();
-                while (fields.hasNext()) {
-                    var field = fields.next();
-                    metadata.put(field.getKey(), field.getValue().asText());
-                }
+    // Формат берем из заголовка log-format: во время миграции в топике лежат и JSON, и бинарные записи
+    // Id приводится к каноническому UUID: он же ключ строки в Cassandra и _id в Elasticsearch
+    private KafkaLogMessage parseKafkaMessage(Headers headers, byte[] payload) throws Exception {
+        KafkaLogMessage logMessage = switch (KafkaLogWireFormat.fromHeaders(headers)) {
+            case BINARY -> binaryCodec.decode(payload);
+            case JSON -> codec.decode(payload);
+        };
+        logMessage.setId(LogIds.canonical(logMessage.getId()));
+        return logMessage;
+    }
 
-                message.setMetadata(metadata);
+    // Бинарные записи в DLQ и логах - в base64, JSON - как есть
+    private String describePayload(Headers headers, byte[] payload) {
+        try {
+            if (KafkaLogWireFormat.fromHeaders(headers) == KafkaLogWireFormat.BINARY) {
+                return "base64:" + Base64.getEncoder().encodeToString(payload);
             }
-
-            return message;
+        } catch (IllegalArgumentException e) {
+            return "base64:" + Base64.getEncoder().encodeToString(payload);
         }
+        return new String(payload, StandardCharsets.UTF_8);
     }
 
-    private ElasticLogDocument createElasticDocument(KafkaLogMessage logMessage) {
-        ElasticLogDocument doc = new ElasticLogDocument();
-        doc.setId(logMessage.getId());
-        doc.setTimestamp(logMessage.getTimestamp() != null ? logMessage.getTimestamp() : Instant.now());
-        doc.setService(logMessage.getService());
-        doc.setLevel(logMessage.getLevel());
-        doc.setMessage(logMessage.getMessage());
-        doc.setHost(logMessage.getHost());
-        doc.setMetadata(logMessage.getMetadata());
-        return doc;
+    // Добавляем метаданные обработки
+    private void addProcessingMetadata(KafkaLogMessage logMessage) {
+        if (logMessage.getMetadata() == null) {
+            logMessage.setMetadata(new HashMap<>());
+        }
+        logMessage.getMetadata().put("kafka_processed", "true");
+        logMessage.getMetadata().put("processed_at", Instant.now().toString());
+        logMessage.getMetadata().put("consumer_version", "2.0");
     }
 
-    private void saveFailedMessage(String jsonMessage, String error) {
+    private void saveFailedMessage(Headers headers, byte[] rawMessage, String error) {
         try {
+            String jsonMessage = describePayload(headers, rawMessage);
             // Сохраняем failed message в Cassandra для дальнейшего анализа
             Map<String, String> metadata = new HashMap<>();
             metadata.put("error", error);
@@ -185,9 +301,14 @@ public class KafkaLogConsumer {
         }
     }
 
+    @PreDestroy
+    public void shutdown() {
+        keyedExecutor.close(10_000);
+    }
+
     // Вспомогательный метод для тестирования
     public void testConsumer(String testMessage) {
         log.info("TESTING CONSUMER with message: {}", testMessage);
-        consumeRawLog(testMessage);
+        consumeRawLog(new ConsumerRecord<>("test", 0, 0L, null, testMessage.getBytes(StandardCharsets.UTF_8)));
     }
 }
@@ -0,0 +1,148 @@
+package com.example.logSleuthEnterprise.service.kafka;
+
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+// JSON-кодек KafkaLogMessage на потоковом API Jackson: один проход по байтам,
+// без промежуточных String/Map/JsonNode. Формат совпадает с прежним ObjectMapper-кодом.
+@Component
+public class KafkaLogMessageCodec {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // Буфер вывода переиспользуется потоком; внутренние буферы Jackson - через BufferRecycler
+    private static final ThreadLocal<ByteArrayBuilder> OUTPUT = ThreadLocal.withInitial(() -> new ByteArrayBuilder(512));
+
+    public byte[] encode(KafkaLogMessage logMessage) throws IOException {
+        ByteArrayBuilder output = OUTPUT.get();
+        output.reset();
+
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(output)) {
+            writeTo(generator, logMessage);
+        }
+        return output.toByteArray();
+    }
+
+    public void writeTo(JsonGenerator generator, KafkaLogMessage logMessage) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", logMessage.getId());
+        generator.writeStringField("service", logMessage.getService());
+        generator.writeStringField("level", logMessage.getLevel());
+        generator.writeStringField("message", logMessage.getMessage());
+        generator.writeStringField("host", logMessage.getHost());
+
+        Instant timestamp = logMessage.getTimestamp() != null ? logMessage.getTimestamp() : Instant.now();
+        generator.writeStringField("timestamp", timestamp.toString());
+
+        generator.writeObjectFieldStart("metadata");
+        if (logMessage.getMetadata() != null) {
+            for (Map.Entry<String, String> entry : logMessage.getMetadata().entrySet()) {
+                generator.writeStringField(entry.getKey(), entry.getValue());
+            }
+        }
+        generator.writeEndObject();
+
+        generator.writeEndObject();
+    }
+
+    public KafkaLogMessage decode(byte[] data) throws IOException {
+        return decode(data, 0, data.length);
+    }
+
+    public KafkaLogMessage decode(byte[] data, int offset, int length) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(data, offset, length)) {
+            return readFrom(parser);
+        }
+    }
+
+    public KafkaLogMessage decode(InputStream input) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(input)) {
+            return readFrom(parser);
+        }
+    }
+
+    // Читает один объект начиная с текущего (или следующего) токена парсера
+    public KafkaLogMessage readFrom(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken() != null ? parser.currentToken() : parser.nextToken();
+        if (token != JsonToken.START_OBJECT) {
+            throw new IOException("Expected JSON object but got " + token);
+        }
+
+        KafkaLogMessage message = new KafkaLogMessage();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            token = parser.nextToken();
+
+            switch (field) {
+                case "id" -> message.setId(readText(parser, token));
+                case "service" -> message.setService(readText(parser, token));
+                case "level" -> message.setLevel(readText(parser, token));
+                case "message" -> message.setMessage(readText(parser, token));
+                case "host" -> message.setHost(readText(parser, token));
+                case "timestamp" -> message.setTimestamp(readTimestamp(parser, token));
+                case "metadata" -> message.setMetadata(readMetadata(parser, token));
+                default -> parser.skipChildren();
+            }
+        }
+        return message;
+    }
+
+    private static String readText(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token.isStructStart()) {
+            parser.skipChildren();
+            return "";
+        }
+        return parser.getText();
+    }
+
+    // ISO-строка или секунды эпохи (целые или с дробной частью)
+    private static Instant readTimestamp(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_STRING:
+                return Instant.parse(parser.getText());
+            case VALUE_NUMBER_INT:
+                return Instant.ofEpochSecond(parser.getLongValue());
+            case VALUE_NUMBER_FLOAT:
+                BigDecimal value = parser.getDecimalValue();
+                long seconds = value.longValue();
+                int nanos = value.subtract(BigDecimal.valueOf(seconds)).movePointRight(9).intValue();
+                return Instant.ofEpochSecond(seconds, nanos);
+            default:
+                throw new IOException("Unsupported timestamp token: " + token);
+        }
+    }
+
+    private static Map<String, String> readMetadata(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return new HashMap<>();
+        }
+
+        Map<String, String> metadata = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.currentName();
+            metadata.put(key, readText(parser, parser.nextToken()));
+        }
+        return metadata;
+    }
+}
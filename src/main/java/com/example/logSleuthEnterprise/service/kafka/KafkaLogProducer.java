@@ -1,76 +1,124 @@
 package com.example.logSleuthEnterprise.service.kafka;
 
 import com.example.logSleuthEnterprise.model.KafkaLogMessage;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class KafkaLogProducer {
 
     private static final Logger log = LoggerFactory.getLogger(KafkaLogProducer.class);
 
-    private final KafkaTemplate<String, String> kafkaTemplate;
-    private final ObjectMapper objectMapper;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final KafkaLogMessageCodec codec;
+    private final KafkaLogBinaryCodec binaryCodec;
+    private final KafkaLogWireFormat wireFormat;
+
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
 
     @Value("${app.kafka.topics.raw-logs:raw-logs}")
     private String rawLogsTopic;
 
-    public KafkaLogProducer(KafkaTemplate<String, String> kafkaTemplate) {
-        this.kafkaTemplate = kafkaTemplate;
-        this.objectMapper = new ObjectMapper();
-        this.objectMapper.registerModule(new JavaTimeModule());
-        log.info("KafkaLogProducer initialized for topic: {}", rawLogsTopic);
+    public KafkaLogProducer(KafkaTemplate<String, byte[]> logKafkaTemplate,
+                            KafkaLogMessageCodec codec,
+                            KafkaLogBinaryCodec binaryCodec,
+                            @Value("${app.kafka.producer.wire-format:json}") String wireFormat) {
+        this.kafkaTemplate = logKafkaTemplate;
+        this.codec = codec;
+        this.binaryCodec = binaryCodec;
+        this.wireFormat = KafkaLogWireFormat.fromProperty(wireFormat);
+        log.info("KafkaLogProducer initialized with {} wire format", this.wireFormat.getHeaderValue());
     }
 
-    public void sendLog(KafkaLogMessage logMessage) {
+    // Асинхронная отправка: future завершается подтверждением брокера (с учетом acks)
+    // или ошибкой доставки. Поток вызова ждет только место в буфере продюсера.
+    public CompletableFuture<SendResult<String, byte[]>> send(KafkaLogMessage logMessage) {
+        byte[] payload;
         try {
-            Map<String, Object> messageData = new HashMap<>();
-            messageData.put("id", logMessage.getId());
-            messageData.put("service", logMessage.getService());
-            messageData.put("level", logMessage.getLevel());
-            messageData.put("message", logMessage.getMessage());
-            messageData.put("host", logMessage.getHost());
-
-            if (logMessage.getTimestamp() != null) {
-                messageData.put("timestamp", logMessage.getTimestamp().toString());
-            } else {
-                messageData.put("timestamp", Instant.now().toString());
-            }
+            // Кодеки пишут сразу в байты, без промежуточной Map и String
+            payload = wireFormat == KafkaLogWireFormat.BINARY
+                    ? binaryCodec.encode(logMessage)
+                    : codec.encode(logMessage);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            return CompletableFuture.failedFuture(e);
+        }
 
-            if (logMessage.getMetadata() != null) {
-                messageData.put("metadata", logMessage.getMetadata());
-            } else {
-                messageData.put("metadata", new HashMap<>());
-            }
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(rawLogsTopic, logMessage.getId(), payload);
+        record.headers().add(KafkaLogWireFormat.HEADER, wireFormat.getHeaderBytes());
 
-            String jsonMessage = objectMapper.writeValueAsString(messageData);
+        inFlight.incrementAndGet();
+        CompletableFuture<SendResult<String, byte[]>> future;
+        try {
+            future = kafkaTemplate.send(record);
+        } catch (Exception e) {
+            inFlight.decrementAndGet();
+            failed.incrementAndGet();
+            log.warn("Failed to send log {} to Kafka: {}", logMessage.getId(), e.getMessage());
+            return CompletableFuture.failedFuture(e);
+        }
 
-            log.info("Sending to Kafka topic '{}': {}", rawLogsTopic,
-                    jsonMessage.substring(0, Math.min(200, jsonMessage.length())) + "...");
+        return future.whenComplete((result, error) -> {
+            inFlight.decrementAndGet();
+            if (error == null) {
+                sent.incrementAndGet();
+                sentBytes.addAndGet(payload.length);
+            } else {
+                failed.incrementAndGet();
+                log.warn("Kafka delivery failed for log {}: {}", logMessage.getId(), rootMessage(error));
+            }
+        });
+    }
 
-            kafkaTemplate.send(rawLogsTopic, logMessage.getId(), jsonMessage);
+    // Пачка уходит в продюсер целиком, не дожидаясь отдельных подтверждений;
+    // итог - какие записи доставлены, а какие нет (по позиции в коллекции).
+    public CompletableFuture<SendAllResult> sendAll(Collection<KafkaLogMessage> logMessages) {
+        List<CompletableFuture<SendResult<String, byte[]>>> futures = new ArrayList<>(logMessages.size());
+        for (KafkaLogMessage logMessage : logMessages) {
+            futures.add(send(logMessage));
+        }
 
-            log.info("Successfully sent to Kafka: {} - {} [ID: {}]",
-                    logMessage.getService(), logMessage.getLevel(), logMessage.getId());
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).handle((ignored, error) -> {
+            Map<Integer, String> failures = new LinkedHashMap<>();
+            for (int i = 0; i < futures.size(); i++) {
+                if (futures.get(i).isCompletedExceptionally()) {
+                    try {
+                        futures.get(i).join();
+                    } catch (CompletionException e) {
+                        failures.put(i, rootMessage(e));
+                    }
+                }
+            }
+            return new SendAllResult(futures.size() - failures.size(), failures);
+        });
+    }
 
-        } catch (Exception e) {
-            log.error("Failed to send to Kafka: {}", e.getMessage());
-            log.error("Stack trace:", e);
-        }
+    public CompletableFuture<SendResult<String, byte[]>> sendLog(KafkaLogMessage logMessage) {
+        return send(logMessage);
     }
 
-    public void sendLog(String service, String level, String message, String host) {
+    public CompletableFuture<SendResult<String, byte[]>> sendLog(String service, String level, String message, String host) {
         KafkaLogMessage logMessage = new KafkaLogMessage(service, level, message, host);
-        sendLog(logMessage);
+        return send(logMessage);
     }
 
     public void sendTestMessage() {
@@ -85,4 +133,30 @@ public class KafkaLogProducer {
 
         sendLog(testMessage);
     }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("wireFormat", wireFormat.getHeaderValue());
+        stats.put("inFlight", inFlight.get());
+        stats.put("sent", sent.get());
+        stats.put("failed", failed.get());
+        stats.put("sentBytes", sentBytes.get());
+        return stats;
+    }
+
+    private static String rootMessage(Throwable error) {
+        Throwable cause = error;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return String.valueOf(cause.getMessage());
+    }
+
+    // failures: позиция записи в переданной коллекции -> причина
+    public record SendAllResult(int sent, Map<Integer, String> failures) {
+
+        public boolean allSent() {
+            return failures.isEmpty();
+        }
+    }
 }
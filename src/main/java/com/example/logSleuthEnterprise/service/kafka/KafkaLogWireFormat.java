@@ -0,0 +1,55 @@
+package com.example.logSleuthEnterprise.service.kafka;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.charset.StandardCharsets;
+
+// Формат значения записи в raw-logs объявляется заголовком log-format.
+// Записи без заголовка - JSON от старых продюсеров.
+public enum KafkaLogWireFormat {
+
+    JSON("json"),
+    BINARY("binary-v1");
+
+    public static final String HEADER = "log-format";
+
+    private final String headerValue;
+    private final byte[] headerBytes;
+
+    KafkaLogWireFormat(String headerValue) {
+        this.headerValue = headerValue;
+        this.headerBytes = headerValue.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String getHeaderValue() {
+        return headerValue;
+    }
+
+    public byte[] getHeaderBytes() {
+        return headerBytes;
+    }
+
+    public static KafkaLogWireFormat fromHeaders(Headers headers) {
+        Header header = headers != null ? headers.lastHeader(HEADER) : null;
+        if (header == null || header.value() == null) {
+            return JSON;
+        }
+        String value = new String(header.value(), StandardCharsets.UTF_8);
+        for (KafkaLogWireFormat format : values()) {
+            if (format.headerValue.equals(value)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown " + HEADER + " header: " + value);
+    }
+
+    public static KafkaLogWireFormat fromProperty(String value) {
+        for (KafkaLogWireFormat format : values()) {
+            if (format.name().equalsIgnoreCase(value) || format.headerValue.equalsIgnoreCase(value)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown log wire format: " + value);
+    }
+}
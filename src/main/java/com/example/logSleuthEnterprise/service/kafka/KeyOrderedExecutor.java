@@ -0,0 +1,139 @@
+package com.example.logSleuthEnterprise.service.kafka;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Выполняет задачи параллельно, сохраняя порядок внутри ключа: ключ хешируется в одну
+// из lanes, lane исполняет свои задачи строго последовательно. Lanes не держат поток,
+// пока им нечего делать - запускаются на общем executor'е (виртуальные потоки, если JVM их умеет).
+public class KeyOrderedExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyOrderedExecutor.class);
+
+    // Сколько задач lane выполняет за один запуск, прежде чем уступить executor
+    private static final int LANE_DRAIN_LIMIT = 64;
+
+    private final Lane[] lanes;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final Semaphore inFlightPermits;
+    private final int maxInFlight;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public KeyOrderedExecutor(String name, int laneCount, int maxInFlight, int platformThreads) {
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane();
+        }
+        this.maxInFlight = maxInFlight;
+        this.inFlightPermits = new Semaphore(maxInFlight);
+
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        if (virtual != null) {
+            this.executor = virtual;
+        } else {
+            AtomicInteger counter = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(platformThreads, runnable -> {
+                Thread thread = new Thread(runnable, name + "-" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        log.info("Key-ordered executor '{}': {} lanes, {} threads", name, laneCount,
+                virtualThreads ? "virtual" : String.valueOf(platformThreads));
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() появляется в Java 21; сборка на 17, поэтому через reflection
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Блокирует вызывающий поток, если в работе уже maxInFlight задач
+    public void execute(Object key, Runnable task) throws InterruptedException {
+        inFlightPermits.acquire();
+        Lane lane = lanes[Math.floorMod(key == null ? 0 : key.hashCode(), lanes.length)];
+        lane.tasks.add(task);
+        lane.schedule();
+    }
+
+    public int getInFlight() {
+        return maxInFlight - inFlightPermits.availablePermits();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("lanes", lanes.length);
+        stats.put("virtualThreads", virtualThreads);
+        stats.put("inFlight", getInFlight());
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        return stats;
+    }
+
+    public void close(long timeoutMs) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                log.warn("Key-ordered executor stopped with {} tasks in flight", getInFlight());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final class Lane implements Runnable {
+
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < LANE_DRAIN_LIMIT; i++) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+                try {
+                    task.run();
+                    completed.incrementAndGet();
+                } catch (Throwable e) {
+                    failed.incrementAndGet();
+                    log.error("Key-ordered task failed: {}", e.getMessage(), e);
+                } finally {
+                    inFlightPermits.release();
+                }
+            }
+
+            scheduled.set(false);
+            // Задача могла прийти между последним poll и сбросом флага
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.logSleuthEnterprise.service.kafka;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Коммитит offset'ы raw-logs только после того, как записи сохранены во всех sink'ах (или в спуле).
+// Записи завершаются в любом порядке, коммитится наибольший непрерывный завершенный offset:
+// по таймеру или каждые N записей, асинхронно, из потока consumer'а. При rebalance и остановке
+// ждем in-flight записи отдаваемых партиций и коммитим синхронно. Несохраненная запись остается
+// незавершенной, а партиция отматывается на нее, чтобы записи пришли заново.
+@Component
+public class OffsetCommitCoordinator implements ConsumerAwareRebalanceListener {
+
+    private static final Logger log = LoggerFactory.getLogger(OffsetCommitCoordinator.class);
+
+    private final PartitionOffsetTracker tracker = new PartitionOffsetTracker();
+    private final Map<TopicPartition, CommitState> commits = new ConcurrentHashMap<>();
+    // Наименьший несохраненный offset партиции; seek делается из потока consumer'а
+    private final Map<TopicPartition, Long> failed = new ConcurrentHashMap<>();
+
+    private final AtomicLong commitsRequested = new AtomicLong();
+    private final AtomicLong commitsFailed = new AtomicLong();
+    private final AtomicLong rewinds = new AtomicLong();
+
+    @Value("${app.kafka.consumer.commit.interval-ms:1000}")
+    private long commitIntervalMs;
+
+    @Value("${app.kafka.consumer.commit.every-records:5000}")
+    private long commitEveryRecords;
+
+    @Value("${app.kafka.consumer.commit.revoke-timeout-ms:10000}")
+    private long revokeTimeoutMs;
+
+    public void register(ConsumerRecord<?, ?> record) {
+        tracker.register(new TopicPartition(record.topic(), record.partition()), record.offset());
+    }
+
+    public void complete(TopicPartition partition, long offset) {
+        tracker.complete(partition, offset);
+    }
+
+    public void complete(ConsumerRecord<?, ?> record) {
+        complete(new TopicPartition(record.topic(), record.partition()), record.offset());
+    }
+
+    // Запись не сохранена: offset не завершаем, коммит остановится перед ним
+    public void fail(TopicPartition partition, long offset) {
+        failed.merge(partition, offset, Math::min);
+    }
+
+    public void fail(ConsumerRecord<?, ?> record) {
+        fail(new TopicPartition(record.topic(), record.partition()), record.offset());
+    }
+
+    public long getCommitIntervalMs() {
+        return commitIntervalMs;
+    }
+
+    // Вызывается из listener'а после каждого poll
+    public void maybeCommit(Consumer<?, ?> consumer) {
+        commit(consumer, false);
+    }
+
+    // Нет новых записей - коммитим все, что успело завершиться
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        if (event.getConsumer() != null) {
+            commit(event.getConsumer(), true);
+        }
+    }
+
+    private void commit(Consumer<?, ?> consumer, boolean force) {
+        rewind(consumer);
+        long now = System.currentTimeMillis();
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+
+        for (TopicPartition partition : consumer.assignment()) {
+            OffsetAndMetadata next = tracker.nextCommit(partition);
+            if (next == null) {
+                continue;
+            }
+            CommitState state = commits.computeIfAbsent(partition, key -> new CommitState());
+            long advance = next.offset() - state.requested;
+            if (advance <= 0) {
+                continue;
+            }
+            if (force || advance >= commitEveryRecords || now - state.requestedAt >= commitIntervalMs) {
+                offsets.put(partition, next);
+                state.requested = next.offset();
+                state.requestedAt = now;
+            }
+        }
+
+        if (offsets.isEmpty()) {
+            return;
+        }
+        commitsRequested.incrementAndGet();
+        consumer.commitAsync(offsets, (committed, error) -> {
+            if (error == null) {
+                committed.forEach((partition, offset) -> {
+                    CommitState state = commits.get(partition);
+                    if (state != null) {
+                        state.confirmed = Math.max(state.confirmed, offset.offset());
+                    }
+                });
+                return;
+            }
+            commitsFailed.incrementAndGet();
+            log.warn("Offset commit failed for {}: {}", offsets.keySet(), error.getMessage());
+            // Следующая попытка отправит те же offset'ы заново
+            offsets.keySet().forEach(partition -> {
+                CommitState state = commits.get(partition);
+                if (state != null) {
+                    state.requested = state.confirmed;
+                }
+            });
+        });
+    }
+
+    // Следующий poll начнется с несохраненной записи; уже сохраненные после нее отсечет дедупликатор
+    private void rewind(Consumer<?, ?> consumer) {
+        if (failed.isEmpty()) {
+            return;
+        }
+        for (TopicPartition partition : consumer.assignment()) {
+            Long offset = failed.remove(partition);
+            if (offset != null) {
+                consumer.seek(partition, offset);
+                rewinds.incrementAndGet();
+                log.warn("Records from {}@{} were not stored, seeking back for redelivery", partition, offset);
+            }
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (partitions.isEmpty()) {
+            return;
+        }
+        // Несохраненная запись не завершится никогда: ждем только записи ниже нее,
+        // иначе каждый rebalance с такой записью стоял бы весь revokeTimeoutMs
+        long deadline = System.currentTimeMillis() + revokeTimeoutMs;
+        try {
+            while (tracker.hasPendingBelow(partitions, failed) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (tracker.hasPending(partitions)) {
+            log.warn("Partitions {} revoked with records still in flight; they will be redelivered", partitions);
+        }
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            OffsetAndMetadata next = tracker.nextCommit(partition);
+            CommitState state = commits.get(partition);
+            if (next != null && (state == null || next.offset() > state.confirmed)) {
+                offsets.put(partition, next);
+            }
+        }
+        try {
+            if (!offsets.isEmpty()) {
+                consumer.commitSync(offsets);
+                log.info("Committed offsets on revoke: {}", offsets);
+            }
+        } catch (Exception e) {
+            commitsFailed.incrementAndGet();
+            log.error("Offset commit on revoke failed for {}: {}", partitions, e.getMessage());
+        } finally {
+            forget(partitions);
+        }
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        // Партиции уже у другого consumer'а - коммитить нельзя
+        forget(partitions);
+    }
+
+    private void forget(Collection<TopicPartition> partitions) {
+        tracker.forget(partitions);
+        partitions.forEach(commits::remove);
+        partitions.forEach(failed::remove);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pending", tracker.getPending());
+        stats.put("commitsRequested", commitsRequested.get());
+        stats.put("commitsFailed", commitsFailed.get());
+        stats.put("rewinds", rewinds.get());
+
+        Map<String, Object> partitions = new HashMap<>();
+        for (TopicPartition partition : tracker.getPartitions()) {
+            Map<String, Object> partitionStats = new HashMap<>(tracker.getStats(partition));
+            CommitState state = commits.get(partition);
+            long confirmed = state != null ? state.confirmed : -1;
+            partitionStats.put("committed", confirmed);
+            if (confirmed >= 0 && partitionStats.get("nextCommit") instanceof Long next) {
+                // Непрерывно завершены, но еще не закоммичены
+                partitionStats.put("completedUncommitted", Math.max(0, next - confirmed));
+            }
+            partitions.put(partition.toString(), partitionStats);
+        }
+        stats.put("partitions", partitions);
+        return stats;
+    }
+
+    // Меняется только из потока consumer'а, читается в getStats
+    private static final class CommitState {
+        private volatile long requested = -1;
+        private volatile long confirmed = -1;
+        private volatile long requestedAt;
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.logSleuthEnterprise.service.kafka;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Offset'ы, выданные в обработку, но еще не завершенные; завершаться они могут в любом порядке.
+// На партицию - BitSet незавершенных offset'ов относительно скользящей базы окна, поэтому
+// память пропорциональна разбросу между самым старым незавершенным и самым новым offset'ом.
+// Коммитить можно только до наименьшего незавершенного: все, что ниже, гарантированно обработано.
+public class PartitionOffsetTracker {
+
+    // Окно сдвигается, когда перед первым незавершенным накопилось столько битов
+    private static final int COMPACT_THRESHOLD = 64 * 1024;
+
+    private final Map<TopicPartition, PartitionState> partitions = new ConcurrentHashMap<>();
+
+    public void register(TopicPartition partition, long offset) {
+        partitions.computeIfAbsent(partition, key -> new PartitionState(offset)).register(offset);
+    }
+
+    public void complete(TopicPartition partition, long offset) {
+        PartitionState state = partitions.get(partition);
+        if (state != null) {
+            state.complete(offset);
+        }
+    }
+
+    // Offset, с которого группа продолжит чтение после коммита, или null если партиция не отслеживается
+    public OffsetAndMetadata nextCommit(TopicPartition partition) {
+        PartitionState state = partitions.get(partition);
+        return state != null ? new OffsetAndMetadata(state.nextCommitOffset()) : null;
+    }
+
+    public boolean hasPending(Collection<TopicPartition> selected) {
+        for (TopicPartition partition : selected) {
+            PartitionState state = partitions.get(partition);
+            if (state != null && state.pendingCount() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Как hasPending, но в партициях из limits считаются только offset'ы ниже предела:
+    // выше несохраненной записи коммит все равно не сдвинется, ждать их бессмысленно
+    public boolean hasPendingBelow(Collection<TopicPartition> selected, Map<TopicPartition, Long> limits) {
+        for (TopicPartition partition : selected) {
+            PartitionState state = partitions.get(partition);
+            Long limit = limits.get(partition);
+            if (state != null && (limit != null ? state.hasPendingBelow(limit) : state.pendingCount() > 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void forget(Collection<TopicPartition> revoked) {
+        revoked.forEach(partitions::remove);
+    }
+
+    public Collection<TopicPartition> getPartitions() {
+        return partitions.keySet();
+    }
+
+    public long getPending() {
+        long pending = 0;
+        for (PartitionState state : partitions.values()) {
+            pending += state.pendingCount();
+        }
+        return pending;
+    }
+
+    public Map<String, Object> getStats(TopicPartition partition) {
+        PartitionState state = partitions.get(partition);
+        return state != null ? state.getStats() : Map.of();
+    }
+
+    private static final class PartitionState {
+
+        private long windowBase;
+        private BitSet pending = new BitSet();
+        private int pendingCount;
+        private long highestRegistered = -1;
+        private long completedTotal;
+
+        PartitionState(long firstOffset) {
+            this.windowBase = firstOffset;
+        }
+
+        synchronized void register(long offset) {
+            if (offset < windowBase) {
+                // Повторная выдача после seek: такой offset уже ниже окна, расширяем окно назад
+                BitSet shifted = new BitSet();
+                int shift = (int) (windowBase - offset);
+                for (int bit = pending.nextSetBit(0); bit >= 0; bit = pending.nextSetBit(bit + 1)) {
+                    shifted.set(bit + shift);
+                }
+                pending = shifted;
+                windowBase = offset;
+            }
+            int index = index(offset);
+            if (!pending.get(index)) {
+                pending.set(index);
+                pendingCount++;
+            }
+            highestRegistered = Math.max(highestRegistered, offset);
+        }
+
+        synchronized void complete(long offset) {
+            if (offset < windowBase) {
+                return;
+            }
+            int index = index(offset);
+            if (pending.get(index)) {
+                pending.clear(index);
+                pendingCount--;
+                completedTotal++;
+                compact();
+            }
+        }
+
+        synchronized long nextCommitOffset() {
+            int first = pending.nextSetBit(0);
+            return first >= 0 ? windowBase + first : highestRegistered + 1;
+        }
+
+        synchronized int pendingCount() {
+            return pendingCount;
+        }
+
+        synchronized boolean hasPendingBelow(long limit) {
+            int first = pending.nextSetBit(0);
+            return first >= 0 && windowBase + first < limit;
+        }
+
+        synchronized Map<String, Object> getStats() {
+            long next = nextCommitOffset();
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("nextCommit", next);
+            stats.put("highestRegistered", highestRegistered);
+            stats.put("pending", pendingCount);
+            // Завершены, но не могут быть закоммичены, пока ниже них есть незавершенные
+            stats.put("completedAboveGap", Math.max(0, highestRegistered + 1 - next - pendingCount));
+            stats.put("completed", completedTotal);
+            return stats;
+        }
+
+        private int index(long offset) {
+            long index = offset - windowBase;
+            if (index > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Offset window overflow: base=" + windowBase + ", offset=" + offset);
+            }
+            return (int) index;
+        }
+
+        private void compact() {
+            if (pendingCount == 0) {
+                // Все завершено: BitSet уже пуст, просто переносим базу
+                windowBase = highestRegistered + 1;
+                return;
+            }
+            int first = pending.nextSetBit(0);
+            if (first >= COMPACT_THRESHOLD) {
+                pending = pending.get(first, pending.length());
+                windowBase += first;
+            }
+        }
+    }
+}
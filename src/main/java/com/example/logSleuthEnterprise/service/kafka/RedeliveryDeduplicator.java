@@ -0,0 +1,204 @@
+package com.example.logSleuthEnterprise.service.kafka;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Отсекает повторно доставленные Kafka записи до sink'ов.
+// Вращающийся Bloom-фильтр (несколько поколений, каждое живет window/generations) отвечает
+// "точно не видели" без блокировок - это путь для почти всех новых id. Положительный ответ
+// Bloom'а подтверждается точным LRU; запись пропускается только при точном совпадении,
+// так что ложные срабатывания фильтра не теряют логи (запись по id идемпотентна).
+// Id помечается после записи во все sink'и: неудачная запись не блокирует повторную доставку.
+@Component
+public class RedeliveryDeduplicator {
+
+    @Value("${app.kafka.consumer.dedupe.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.kafka.consumer.dedupe.window-ms:600000}")
+    private long windowMs;
+
+    @Value("${app.kafka.consumer.dedupe.generations:4}")
+    private int generationCount;
+
+    @Value("${app.kafka.consumer.dedupe.expected-ids:1000000}")
+    private int expectedIdsPerGeneration;
+
+    @Value("${app.kafka.consumer.dedupe.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${app.kafka.consumer.dedupe.lru-size:100000}")
+    private int lruSize;
+
+    private volatile BloomGeneration[] generations;
+    private volatile long nextRotationAt;
+    private Map<String, Long> recent;
+
+    private final AtomicLong checked = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong bloomOnlyHits = new AtomicLong();
+    private final AtomicLong rotations = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        generations = new BloomGeneration[generationCount];
+        for (int i = 0; i < generationCount; i++) {
+            generations[i] = new BloomGeneration(expectedIdsPerGeneration, falsePositiveRate);
+        }
+        nextRotationAt = System.currentTimeMillis() + windowMs / generationCount;
+        recent = new LinkedHashMap<>(Math.min(lruSize, 1 << 16), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > lruSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isDuplicate(String id) {
+        if (!enabled || id == null) {
+            return false;
+        }
+        checked.incrementAndGet();
+        rotateIfDue();
+
+        long hash = hash64(id);
+        boolean maybeSeen = false;
+        for (BloomGeneration generation : generations) {
+            if (generation.mightContain(hash)) {
+                maybeSeen = true;
+                break;
+            }
+        }
+        if (!maybeSeen) {
+            return false;
+        }
+
+        Long storedAt;
+        synchronized (this) {
+            storedAt = recent.get(id);
+        }
+        if (storedAt != null && System.currentTimeMillis() - storedAt <= windowMs) {
+            duplicates.incrementAndGet();
+            return true;
+        }
+        // Ложное срабатывание или id старше LRU - пропускаем, запись по id идемпотентна
+        bloomOnlyHits.incrementAndGet();
+        return false;
+    }
+
+    public void markStored(String id) {
+        if (!enabled || id == null) {
+            return;
+        }
+        rotateIfDue();
+        generations[0].put(hash64(id));
+        synchronized (this) {
+            recent.put(id, System.currentTimeMillis());
+        }
+    }
+
+    private void rotateIfDue() {
+        if (System.currentTimeMillis() < nextRotationAt) {
+            return;
+        }
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (now < nextRotationAt) {
+                return;
+            }
+            // Самое старое поколение выбрасывается, новое становится текущим (индекс 0)
+            BloomGeneration[] rotated = new BloomGeneration[generations.length];
+            rotated[0] = new BloomGeneration(expectedIdsPerGeneration, falsePositiveRate);
+            System.arraycopy(generations, 0, rotated, 1, generations.length - 1);
+            generations = rotated;
+            nextRotationAt = now + windowMs / generations.length;
+            rotations.incrementAndGet();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("checked", checked.get());
+        stats.put("duplicates", duplicates.get());
+        stats.put("bloomOnlyHits", bloomOnlyHits.get());
+        stats.put("rotations", rotations.get());
+        if (enabled) {
+            synchronized (this) {
+                stats.put("lruEntries", recent.size());
+            }
+            stats.put("currentGenerationIds", generations[0].inserted.get());
+        }
+        return stats;
+    }
+
+    // FNV-1a по символам + финальное перемешивание (splitmix64)
+    private static long hash64(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static final class BloomGeneration {
+
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+        private final AtomicLong inserted = new AtomicLong();
+
+        BloomGeneration(int expectedIds, double falsePositiveRate) {
+            long optimalBits = (long) Math.ceil(-expectedIds * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            int words = (int) Math.max(1, (optimalBits + 63) / 64);
+            this.bits = new AtomicLongArray(words);
+            this.bitCount = words * 64L;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedIds * Math.log(2)));
+        }
+
+        // Двойное хеширование: i-й индекс = h1 + i * h2
+        boolean mightContain(long hash) {
+            long h1 = hash;
+            long h2 = (hash >>> 32) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void put(long hash) {
+            long h1 = hash;
+            long h2 = (hash >>> 32) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current = bits.get(word);
+                while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                    current = bits.get(word);
+                }
+            }
+            inserted.incrementAndGet();
+        }
+    }
+}
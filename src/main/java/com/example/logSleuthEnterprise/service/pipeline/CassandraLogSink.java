@@ -0,0 +1,33 @@
+package com.example.logSleuthEnterprise.service.pipeline;
+
+import com.example.logSleuthEnterprise.dao.LogDAO;
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@Component
+public class CassandraLogSink implements LogSink {
+
+    private final LogDAO logDao;
+
+    public CassandraLogSink(LogDAO logDao) {
+        this.logDao = logDao;
+    }
+
+    @Override
+    public String getName() {
+        return "cassandra";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return logDao.isWritable();
+    }
+
+    @Override
+    public CompletableFuture<Void> write(List<KafkaLogMessage> batch) {
+        return logDao.saveLogsAsync(batch).toCompletableFuture().thenApply(saved -> null);
+    }
+}
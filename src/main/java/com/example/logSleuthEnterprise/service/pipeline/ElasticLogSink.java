@@ -0,0 +1,59 @@
+package com.example.logSleuthEnterprise.service.pipeline;
+
+import com.example.logSleuthEnterprise.model.ElasticLogDocument;
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+import com.example.logSleuthEnterprise.model.LogIds;
+import com.example.logSleuthEnterprise.service.elastic.ElasticsearchService;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@Component
+public class ElasticLogSink implements LogSink {
+
+    private final ElasticsearchService elasticService;
+
+    public ElasticLogSink(ElasticsearchService elasticService) {
+        this.elasticService = elasticService;
+    }
+
+    @Override
+    public String getName() {
+        return "elasticsearch";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return elasticService.isElasticsearchAvailable();
+    }
+
+    @Override
+    public CompletableFuture<Void> write(List<KafkaLogMessage> batch) {
+        List<ElasticLogDocument> documents = new ArrayList<>(batch.size());
+        for (KafkaLogMessage logMessage : batch) {
+            documents.add(createElasticDocument(logMessage));
+        }
+
+        CompletableFuture<Void> indexed = elasticService.saveAllToElasticsearch(documents);
+        // Пачка стадии = один bulk-запрос, не ждем таймера
+        elasticService.flush();
+        return indexed;
+    }
+
+    private ElasticLogDocument createElasticDocument(KafkaLogMessage logMessage) {
+        ElasticLogDocument doc = new ElasticLogDocument();
+        // _id совпадает с id строки в Cassandra
+        doc.setId(LogIds.canonical(logMessage.getId()));
+        doc.setTimestamp(logMessage.getTimestamp() != null ? logMessage.getTimestamp() : Instant.now());
+        doc.setService(logMessage.getService());
+        doc.setLevel(logMessage.getLevel());
+        doc.setMessage(logMessage.getMessage());
+        doc.setHost(logMessage.getHost());
+        doc.setMetadata(logMessage.getMetadata());
+        doc.setTemplateId(logMessage.getTemplateId() != null ? logMessage.getTemplateId().toString() : null);
+        return doc;
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.logSleuthEnterprise.service.pipeline;
+
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+import com.example.logSleuthEnterprise.service.kafka.KafkaLogMessageCodec;
+import com.example.logSleuthEnterprise.service.spool.SpoolReplayer;
+import com.example.logSleuthEnterprise.service.spool.WriteAheadSpool;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+@Service
+public class LogIngestPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(LogIngestPipeline.class);
+
+    // Контейнеры, которые ставим на паузу при переполнении стадий
+    private static final List<String> RAW_LOGS_LISTENERS = List.of("raw-logs-batch", "raw-logs", "raw-logs-keyed");
+
+    private final List<SinkStage> stages = new ArrayList<>();
+    private final List<WriteAheadSpool> spools = new ArrayList<>();
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+    private final ScheduledExecutorService monitor;
+
+    private final AtomicLong pauses = new AtomicLong();
+    private volatile boolean paused;
+
+    public LogIngestPipeline(List<LogSink> sinks,
+                             KafkaListenerEndpointRegistry listenerRegistry,
+                             KafkaLogMessageCodec codec,
+                             Environment environment,
+                             @Value("${app.pipeline.queue-capacity:20000}") int defaultCapacity,
+                             @Value("${app.pipeline.workers:2}") int defaultWorkers,
+                             @Value("${app.pipeline.batch-size:500}") int defaultBatchSize,
+                             @Value("${app.pipeline.high-watermark:0.8}") double highWatermark,
+                             @Value("${app.pipeline.low-watermark:0.3}") double lowWatermark,
+                             @Value("${app.pipeline.monitor-interval-ms:100}") long monitorIntervalMs,
+                             @Value("${app.spool.enabled:true}") boolean spoolEnabled,
+                             @Value("${app.spool.dir:./data/spool}") String spoolDir,
+                             @Value("${app.spool.segment-bytes:67108864}") long spoolSegmentBytes,
+                             @Value("${app.spool.max-bytes:4294967296}") long spoolMaxBytes,
+                             @Value("${app.spool.fsync-interval-ms:1000}") long spoolFsyncIntervalMs,
+                             @Value("${app.spool.replay.batch-size:500}") int replayBatchSize,
+                             @Value("${app.spool.replay.records-per-second:5000}") int replayRecordsPerSecond,
+                             @Value("${app.spool.replay.check-interval-ms:1000}") long replayCheckIntervalMs) {
+        this.listenerRegistry = listenerRegistry;
+        this.monitor = Executors.newScheduledThreadPool(1 + sinks.size(), runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (LogSink sink : sinks) {
+            String prefix = "app.pipeline." + sink.getName() + ".";
+            int capacity = environment.getProperty(prefix + "queue-capacity", Integer.class, defaultCapacity);
+            int workers = environment.getProperty(prefix + "workers", Integer.class, defaultWorkers);
+            int batchSize = environment.getProperty(prefix + "batch-size", Integer.class, defaultBatchSize);
+
+            WriteAheadSpool spool = null;
+            if (spoolEnabled) {
+                try {
+                    spool = new WriteAheadSpool(sink.getName(), Path.of(spoolDir, sink.getName()),
+                            spoolSegmentBytes, spoolMaxBytes, codec);
+                    spools.add(spool);
+                    SpoolReplayer replayer = new SpoolReplayer(spool, sink, replayBatchSize, replayRecordsPerSecond);
+                    monitor.scheduleWithFixedDelay(replayer, replayCheckIntervalMs, replayCheckIntervalMs, TimeUnit.MILLISECONDS);
+                    monitor.scheduleWithFixedDelay(spool::force, spoolFsyncIntervalMs, spoolFsyncIntervalMs, TimeUnit.MILLISECONDS);
+                } catch (IOException e) {
+                    log.error("Failed to open spool for sink '{}': {}", sink.getName(), e.getMessage());
+                }
+            }
+
+            stages.add(new SinkStage(sink, spool, capacity, workers, batchSize, highWatermark, lowWatermark));
+            log.info("Sink stage '{}' started: capacity={}, workers={}, batchSize={}, spool={}",
+                    sink.getName(), capacity, workers, batchSize, spool != null);
+        }
+
+        this.monitor.scheduleWithFixedDelay(this::resumeIfDrained, monitorIntervalMs, monitorIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Вызывается из listener'а: раздает сообщения во все стадии и не ждет записи.
+    // Future завершается, когда все стадии записали сообщения в хранилище или в спул.
+    public CompletableFuture<Void> submit(List<KafkaLogMessage> messages) throws InterruptedException {
+        SubmitCompletion completion = new SubmitCompletion(messages.size() * stages.size());
+        for (SinkStage stage : stages) {
+            for (KafkaLogMessage message : messages) {
+                stage.enqueue(message, completion);
+            }
+        }
+        pauseIfOverloaded();
+        return completion.future();
+    }
+
+    private void pauseIfOverloaded() {
+        if (paused) {
+            return;
+        }
+        for (SinkStage stage : stages) {
+            if (stage.isAboveHighWatermark()) {
+                paused = true;
+                pauses.incrementAndGet();
+                forEachListener(MessageListenerContainer::pause);
+                log.warn("Sink '{}' is above high watermark, pausing Kafka consumption", stage.getName());
+                return;
+            }
+        }
+    }
+
+    private void resumeIfDrained() {
+        if (!paused) {
+            return;
+        }
+        for (SinkStage stage : stages) {
+            if (!stage.isBelowLowWatermark()) {
+                return;
+            }
+        }
+        paused = false;
+        forEachListener(MessageListenerContainer::resume);
+        log.info("All sink queues drained, resuming Kafka consumption");
+    }
+
+    private void forEachListener(Consumer<MessageListenerContainer> action) {
+        for (String id : RAW_LOGS_LISTENERS) {
+            MessageListenerContainer container = listenerRegistry.getListenerContainer(id);
+            if (container != null && container.isRunning()) {
+                action.accept(container);
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("paused", paused);
+        stats.put("pauses", pauses.get());
+        Map<String, Object> sinks = new HashMap<>();
+        for (SinkStage stage : stages) {
+            sinks.put(stage.getName(), stage.getStats());
+        }
+        stats.put("sinks", sinks);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        monitor.shutdown();
+        for (SinkStage stage : stages) {
+            stage.close(10_000);
+        }
+        spools.forEach(WriteAheadSpool::close);
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.logSleuthEnterprise.service.pipeline;
+
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public interface LogSink {
+
+    String getName();
+
+    // Закрыт ли breaker хранилища: если нет, стадия сразу пишет пачку в спул
+    default boolean isAvailable() {
+        return true;
+    }
+
+    // Future завершается, когда пачка записана в хранилище
+    CompletableFuture<Void> write(List<KafkaLogMessage> batch);
+}
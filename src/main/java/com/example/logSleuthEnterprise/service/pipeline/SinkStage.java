@@ -0,0 +1,167 @@
+package com.example.logSleuthEnterprise.service.pipeline;
+
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+import com.example.logSleuthEnterprise.service.spool.WriteAheadSpool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Стадия одного хранилища: своя ограниченная очередь и свои worker'ы,
+// поэтому медленный sink не задерживает остальные.
+public class SinkStage {
+
+    private static final Logger log = LoggerFactory.getLogger(SinkStage.class);
+
+    private final LogSink sink;
+    private final WriteAheadSpool spool;
+    private final BlockingQueue<StageEntry> queue;
+    private final int capacity;
+    private final int batchSize;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final List<Thread> workers = new ArrayList<>();
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong spooled = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    public SinkStage(LogSink sink, WriteAheadSpool spool, int capacity, int workerCount, int batchSize,
+                     double highWatermarkRatio, double lowWatermarkRatio) {
+        this.sink = sink;
+        this.spool = spool;
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.highWatermark = (int) (capacity * highWatermarkRatio);
+        this.lowWatermark = (int) (capacity * lowWatermarkRatio);
+
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::runWorker, "sink-" + sink.getName() + "-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    public String getName() {
+        return sink.getName();
+    }
+
+    // Блокируется только если очередь заполнена целиком - в норме раньше срабатывает пауза Kafka
+    public void enqueue(KafkaLogMessage message, SubmitCompletion completion) throws InterruptedException {
+        queue.put(new StageEntry(message, completion));
+    }
+
+    public boolean isAboveHighWatermark() {
+        return queue.size() >= highWatermark;
+    }
+
+    public boolean isBelowLowWatermark() {
+        return queue.size() <= lowWatermark;
+    }
+
+    private void runWorker() {
+        List<StageEntry> entries = new ArrayList<>(batchSize);
+        List<KafkaLogMessage> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                StageEntry first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                entries.add(first);
+                queue.drainTo(entries, batchSize - 1);
+                for (StageEntry entry : entries) {
+                    batch.add(entry.message());
+                }
+
+                // Breaker открыт - не ждем таймаутов, сразу в спул
+                if (!sink.isAvailable()) {
+                    complete(entries, spool(batch));
+                    continue;
+                }
+
+                try {
+                    sink.write(batch).join();
+                    written.addAndGet(batch.size());
+                    complete(entries, true);
+                } catch (Exception e) {
+                    failed.addAndGet(batch.size());
+                    log.error("Sink '{}' failed to write {} records: {}", sink.getName(), batch.size(), e.getMessage());
+                    complete(entries, spool(batch));
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                entries.clear();
+                batch.clear();
+            }
+        }
+    }
+
+    // Запись считается обработанной стадией, если она в хранилище или в спуле
+    private boolean spool(List<KafkaLogMessage> batch) {
+        if (spool != null && spool.append(batch)) {
+            spooled.addAndGet(batch.size());
+            return true;
+        }
+        lost.addAndGet(batch.size());
+        log.error("Sink '{}' lost {} records: spool unavailable", sink.getName(), batch.size());
+        return false;
+    }
+
+    private void complete(List<StageEntry> entries, boolean stored) {
+        for (StageEntry entry : entries) {
+            entry.completion().stageDone(stored ? null : sink.getName());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queued", queue.size());
+        stats.put("capacity", capacity);
+        stats.put("highWatermark", highWatermark);
+        stats.put("lowWatermark", lowWatermark);
+        stats.put("workers", workers.size());
+        stats.put("written", written.get());
+        stats.put("failed", failed.get());
+        stats.put("spooled", spooled.get());
+        stats.put("lost", lost.get());
+        if (spool != null) {
+            stats.put("spool", spool.getStats());
+        }
+        return stats;
+    }
+
+    public void close(long timeoutMs) {
+        running = false;
+        for (Thread worker : workers) {
+            try {
+                worker.join(timeoutMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (!queue.isEmpty()) {
+            log.warn("Sink '{}' stopped with {} records still queued", sink.getName(), queue.size());
+        }
+    }
+
+    private record StageEntry(KafkaLogMessage message, SubmitCompletion completion) {
+    }
+}
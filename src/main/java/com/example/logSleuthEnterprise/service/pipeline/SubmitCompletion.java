@@ -0,0 +1,38 @@
+package com.example.logSleuthEnterprise.service.pipeline;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Завершение одного вызова LogIngestPipeline.submit: ждет, пока каждая стадия
+// запишет или отправит в спул каждое сообщение (records * stages отметок).
+class SubmitCompletion {
+
+    private final AtomicInteger remaining;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private volatile String lostIn;
+
+    SubmitCompletion(int expected) {
+        this.remaining = new AtomicInteger(expected);
+        if (expected == 0) {
+            future.complete(null);
+        }
+    }
+
+    // lostSink != null - стадия не смогла ни записать, ни сохранить сообщение
+    void stageDone(String lostSink) {
+        if (lostSink != null) {
+            lostIn = lostSink;
+        }
+        if (remaining.decrementAndGet() == 0) {
+            if (lostIn == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(new IllegalStateException("Records lost in sink '" + lostIn + "'"));
+            }
+        }
+    }
+
+    CompletableFuture<Void> future() {
+        return future;
+    }
+}
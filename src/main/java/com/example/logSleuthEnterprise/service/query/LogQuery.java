@@ -0,0 +1,42 @@
+package com.example.logSleuthEnterprise.service.query;
+
+import com.example.logSleuthEnterprise.model.LogField;
+import com.example.logSleuthEnterprise.model.LogIds;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+
+// Предикаты запроса /api/logs/search. Пустые строки приходят как null, metadata - пустая карта.
+public record LogQuery(String id,
+                       String text,
+                       String service,
+                       String level,
+                       String host,
+                       Instant from,
+                       Instant to,
+                       Map<String, String> metadata,
+                       int limit,
+                       Set<LogField> fields,
+                       boolean countOnly) {
+
+    // Id в каноническом виде, как его записал consumer: ключ строки в Cassandra и _id в Elasticsearch.
+    // Id-не-UUID ищется по тому же name-based UUID, в который он превратился при записи
+    public LogQuery {
+        id = id != null && !id.isEmpty() ? LogIds.canonical(id) : null;
+    }
+
+    // Сколько из полей-равенств service/level/host задано
+    public int equalityFilters() {
+        return (service != null ? 1 : 0) + (level != null ? 1 : 0) + (host != null ? 1 : 0);
+    }
+
+    public boolean hasTimeRange() {
+        return from != null || to != null;
+    }
+
+    public String cacheKey() {
+        return "search|" + id + "|" + text + "|" + service + "|" + level + "|" + host + "|" + from + "|" + to
+                + "|" + metadata + "|" + limit + "|" + fields + "|" + countOnly;
+    }
+}
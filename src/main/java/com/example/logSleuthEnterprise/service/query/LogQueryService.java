@@ -0,0 +1,185 @@
+package com.example.logSleuthEnterprise.service.query;
+
+import com.example.logSleuthEnterprise.dao.LogDAO;
+import com.example.logSleuthEnterprise.dao.LogRow;
+import com.example.logSleuthEnterprise.model.LogField;
+import com.example.logSleuthEnterprise.model.LogIds;
+import com.example.logSleuthEnterprise.service.elastic.ElasticsearchService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// Единая точка поиска: по предикатам запроса выбирает самый дешевый backend.
+// Cassandra - точечное чтение по id и один фильтр-равенство с диапазоном (одна партиция
+// на день); Elasticsearch - текст, metadata и сочетания фильтров; счетчики в памяти -
+// count без диапазона и текста. В ответе - выбранный backend, причина и время.
+@Service
+public class LogQueryService {
+
+    private static final Logger log = LoggerFactory.getLogger(LogQueryService.class);
+
+    public enum Backend { CASSANDRA, ELASTICSEARCH, MEMORY }
+
+    private final LogDAO logDao;
+    private final ElasticsearchService elasticService;
+    private final QueryResultCache queryCache;
+
+    public LogQueryService(LogDAO logDao, ElasticsearchService elasticService, QueryResultCache queryCache) {
+        this.logDao = logDao;
+        this.elasticService = elasticService;
+        this.queryCache = queryCache;
+    }
+
+    public Map<String, Object> search(LogQuery query) {
+        Route route = route(query);
+        long start = System.nanoTime();
+
+        // Backend в ключе: при падении Elasticsearch неполный ответ не выдается за полный
+        String cacheKey = query.cacheKey() + "|" + route.backend();
+        Map<String, Object> result = queryCache.get(cacheKey, logDao.getReadGeneration(query.service(), query.level()),
+                () -> execute(query, route));
+
+        Map<String, Object> response = new HashMap<>(result);
+        response.put("backend", route.backend().name().toLowerCase());
+        response.put("reason", route.reason());
+        response.put("tookMs", (System.nanoTime() - start) / 1_000_000);
+        log.debug("Search routed to {} ({})", route.backend(), route.reason());
+        return response;
+    }
+
+    // Глубокая пагинация - только Elasticsearch: point-in-time держит снимок между страницами
+    public Map<String, Object> searchPage(LogQuery query, String cursor) {
+        long start = System.nanoTime();
+        Map<String, Object> response = new HashMap<>(elasticService.searchPage(query, cursor));
+        response.put("backend", Backend.ELASTICSEARCH.name().toLowerCase());
+        response.put("reason", "point-in-time pagination");
+        response.put("tookMs", (System.nanoTime() - start) / 1_000_000);
+        return response;
+    }
+
+    Route route(LogQuery query) {
+        boolean elasticUp = elasticService.isElasticsearchAvailable();
+        boolean needsIndex = query.text() != null || !query.metadata().isEmpty();
+
+        if (query.id() != null && !needsIndex) {
+            if (logDao.isIdLookupSupported()) {
+                return new Route(Backend.CASSANDRA, "primary key lookup in logs", false);
+            }
+            return new Route(Backend.ELASTICSEARCH, "id lookup, legacy logs table is not written", false);
+        }
+        if (needsIndex) {
+            return new Route(Backend.ELASTICSEARCH, query.text() != null ? "full-text predicate" : "metadata predicate", false);
+        }
+        if (query.countOnly()) {
+            if (query.host() == null && !query.hasTimeRange() && logDao.isCountersComplete()) {
+                return new Route(Backend.MEMORY, "count by service/level from in-memory counters", false);
+            }
+            if (elasticUp) {
+                return new Route(Backend.ELASTICSEARCH, "count with host, time range or counters not backfilled", false);
+            }
+            return new Route(Backend.CASSANDRA, "count with host, time range or counters not backfilled, elasticsearch unavailable", true);
+        }
+        // Без bucket-таблиц level/host/диапазон в Cassandra - скан logs с ALLOW FILTERING в порядке
+        // токенов, поэтому они идут в Elasticsearch; пока он недоступен - все же скан, с пометкой partial
+        if (!logDao.isBucketedReadEnabled() && (query.level() != null || query.host() != null || query.hasTimeRange())) {
+            if (elasticUp) {
+                return new Route(Backend.ELASTICSEARCH, "level/host/time range need bucketed tables, read-mode=legacy", false);
+            }
+            return new Route(Backend.CASSANDRA, "level/host/time range on legacy logs, elasticsearch unavailable", true);
+        }
+        if (query.equalityFilters() > 1) {
+            if (elasticUp) {
+                return new Route(Backend.ELASTICSEARCH, "multi-field filter", false);
+            }
+            return new Route(Backend.CASSANDRA, "multi-field filter, elasticsearch unavailable", true);
+        }
+        if (query.equalityFilters() == 1) {
+            return new Route(Backend.CASSANDRA, "single-field filter on bucketed table", false);
+        }
+        return new Route(Backend.CASSANDRA, "recent logs across services", false);
+    }
+
+    private Map<String, Object> execute(LogQuery query, Route route) {
+        Map<String, Object> result = new HashMap<>();
+        if (route.partial()) {
+            result.put("partial", true);
+        }
+
+        switch (route.backend()) {
+            case MEMORY -> result.put("count", logDao.countLogs(query.service(), query.level()));
+            case ELASTICSEARCH -> {
+                if (query.countOnly()) {
+                    result.put("count", elasticService.count(query));
+                } else {
+                    List<Map<String, Object>> logs = elasticService.search(query);
+                    result.put("logs", logs);
+                    result.put("count", logs.size());
+                }
+            }
+            case CASSANDRA -> {
+                List<LogRow> logs = readCassandra(query);
+                if (query.countOnly()) {
+                    // Без Elasticsearch - подсчет по прочитанному окну, не больше limit
+                    result.put("count", logs.size());
+                } else {
+                    result.put("logs", logs);
+                    result.put("count", logs.size());
+                }
+            }
+        }
+        return result;
+    }
+
+    private List<LogRow> readCassandra(LogQuery query) {
+        if (query.id() != null) {
+            Optional<LogRow> row = logDao.getLogById(LogIds.toUuid(query.id()), query.fields());
+            return row.map(List::of).orElse(List.of());
+        }
+
+        // Для дофильтрации в памяти level и host читаются даже вне проекции
+        Set<LogField> fields = query.fields();
+        if (query.equalityFilters() > 1) {
+            fields = EnumSet.copyOf(fields);
+            fields.add(LogField.LEVEL);
+            fields.add(LogField.HOST);
+        }
+
+        List<LogRow> rows;
+        if (query.service() != null) {
+            rows = logDao.getLogsByTimeRange(query.service(), query.from(), query.to(), query.limit(), fields);
+        } else if (query.level() != null) {
+            rows = logDao.getLogsByLevel(query.level(), query.from(), query.to(), query.limit(), fields);
+        } else if (query.host() != null) {
+            rows = logDao.getLogsByHost(query.host(), query.from(), query.to(), query.limit(), fields);
+        } else {
+            rows = logDao.getLogsByTimeRange(null, query.from(), query.to(), query.limit(), fields);
+        }
+        if (query.equalityFilters() <= 1) {
+            return rows;
+        }
+
+        // Остальные фильтры - по прочитанной странице первичного фильтра, поэтому ответ неполный
+        List<LogRow> filtered = new ArrayList<>(rows.size());
+        for (LogRow row : rows) {
+            if (matches(query.level(), row.getLevel()) && matches(query.host(), row.getHost())) {
+                filtered.add(row);
+            }
+        }
+        return filtered;
+    }
+
+    private static boolean matches(String expected, String actual) {
+        return expected == null || expected.equals(actual);
+    }
+
+    record Route(Backend backend, String reason, boolean partial) {
+    }
+}
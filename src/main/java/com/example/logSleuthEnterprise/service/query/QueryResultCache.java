@@ -0,0 +1,155 @@
+package com.example.logSleuthEnterprise.service.query;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Кэш результатов чтения перед LogDAO: одинаковые запросы дашбордов не доходят до Cassandra.
+// Запись валидна, пока не истек TTL и не сменилось поколение данных (его наращивает путь
+// записи по service/level). Сменившееся поколение терпится staleToleranceMs после загрузки -
+// при непрерывной записи каждый ключ грузится не чаще раза в это окно. Одновременные
+// промахи по одному ключу сливаются в один запрос к backend'у независимо от поколения:
+// под непрерывной записью поколение растет на каждом запросе, и слияние по (ключ, поколение)
+// не срабатывало бы. Поколение решает только, класть ли результат в кэш.
+@Component
+public class QueryResultCache {
+
+    @Value("${app.query-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.query-cache.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${app.query-cache.ttl-ms:5000}")
+    private long ttlMs;
+
+    @Value("${app.query-cache.stale-tolerance-ms:1000}")
+    private long staleToleranceMs;
+
+    private Map<String, Entry> entries;
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        entries = new LinkedHashMap<>(Math.min(maxEntries, 1 << 12), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // generation - текущее поколение данных, от которых зависит результат (0 - только TTL)
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, long generation, Supplier<T> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            long age = now - entry.loadedAt;
+            if (age > ttlMs) {
+                expirations.incrementAndGet();
+            } else if (entry.generation != generation && age > staleToleranceMs) {
+                invalidations.incrementAndGet();
+            } else {
+                hits.incrementAndGet();
+                return (T) entry.value;
+            }
+        }
+
+        CompletableFuture<Object> loading = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, loading);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        try {
+            // Загрузка могла завершиться между проверкой кэша и регистрацией нашей
+            Entry loaded;
+            synchronized (this) {
+                loaded = entries.get(key);
+            }
+            if (loaded != null && loaded != entry && loaded.generation >= generation) {
+                coalesced.incrementAndGet();
+                loading.complete(loaded.value);
+                return (T) loaded.value;
+            }
+
+            misses.incrementAndGet();
+            T value = loader.get();
+            synchronized (this) {
+                // Параллельная загрузка более нового поколения могла уже положить свой результат
+                Entry current = entries.get(key);
+                if (current == null || current.generation <= generation) {
+                    entries.put(key, new Entry(value, generation, System.currentTimeMillis()));
+                }
+            }
+            loading.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            // Ошибки не кэшируем: ждавшие получают то же исключение, следующий запрос пойдет заново
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, loading);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("evictions", evictions.get());
+        stats.put("expirations", expirations.get());
+        stats.put("invalidations", invalidations.get());
+        long lookups = hits.get() + misses.get() + coalesced.get();
+        stats.put("hitRate", lookups > 0 ? (double) (hits.get() + coalesced.get()) / lookups : 0.0);
+        stats.put("inFlight", inFlight.size());
+        synchronized (this) {
+            stats.put("entries", entries.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("ttlMs", ttlMs);
+        return stats;
+    }
+
+    private record Entry(Object value, long generation, long loadedAt) {
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.logSleuthEnterprise.service.spool;
+
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+import com.example.logSleuthEnterprise.service.pipeline.LogSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Когда sink снова доступен, перекачивает в него спул пачками с ограничением скорости.
+// Позиция внутри сегмента сохраняется в checkpoint после каждой подтвержденной пачки:
+// после рестарта повторно проигрывается не больше одной пачки. Сегмент отображается в память
+// один раз за проход; поврежденный сегмент не удаляется, а уходит в карантин.
+public class SpoolReplayer implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(SpoolReplayer.class);
+
+    private final WriteAheadSpool spool;
+    private final LogSink sink;
+    private final int batchSize;
+    private final int recordsPerSecond;
+
+    private Path currentSegment;
+    private WriteAheadSpool.SegmentReader reader;
+    private long position;
+    private long segmentRecords;
+
+    public SpoolReplayer(WriteAheadSpool spool, LogSink sink, int batchSize, int recordsPerSecond) {
+        this.spool = spool;
+        this.sink = sink;
+        this.batchSize = batchSize;
+        this.recordsPerSecond = recordsPerSecond;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (sink.isAvailable() && !Thread.currentThread().isInterrupted()) {
+                Path segment = spool.nextSegmentForReplay();
+                if (segment == null) {
+                    return;
+                }
+                if (!segment.equals(currentSegment)) {
+                    currentSegment = segment;
+                    long[] checkpoint = spool.loadCheckpoint(segment);
+                    position = checkpoint[0];
+                    segmentRecords = checkpoint[1];
+                    log.info("Replaying spool segment {} into '{}' from position {}", segment.getFileName(),
+                            sink.getName(), position);
+                }
+                if (reader == null || !reader.segment().equals(segment)) {
+                    closeReader();
+                    reader = spool.openForReplay(segment);
+                }
+
+                List<KafkaLogMessage> batch = new ArrayList<>(batchSize);
+                long started = System.currentTimeMillis();
+                long nextPosition = reader.read(position, batchSize, batch);
+
+                if (!batch.isEmpty()) {
+                    sink.write(batch).join();
+                    segmentRecords += batch.size();
+                }
+
+                if (reader.isDamaged()) {
+                    closeReader();
+                    spool.segmentQuarantined(segment, segmentRecords);
+                    currentSegment = null;
+                } else if (reader.isEnded()) {
+                    closeReader();
+                    spool.segmentReplayed(segment, segmentRecords);
+                    log.info("Spool segment {} replayed: {} records", segment.getFileName(), segmentRecords);
+                    currentSegment = null;
+                } else {
+                    position = nextPosition;
+                    spool.saveCheckpoint(segment, position, segmentRecords);
+                }
+
+                throttle(batch.size(), System.currentTimeMillis() - started);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Позиция не сдвинута - эта пачка будет проиграна повторно
+            log.warn("Spool replay into '{}' interrupted: {}", sink.getName(), e.getMessage());
+        } finally {
+            closeReader();
+        }
+    }
+
+    private void closeReader() {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                log.warn("Failed to close spool segment {}: {}", reader.segment().getFileName(), e.getMessage());
+            }
+            reader = null;
+        }
+    }
+
+    private void throttle(int records, long elapsedMs) throws InterruptedException {
+        if (recordsPerSecond <= 0 || records == 0) {
+            return;
+        }
+        long budgetMs = records * 1000L / recordsPerSecond;
+        if (budgetMs > elapsedMs) {
+            Thread.sleep(budgetMs - elapsedMs);
+        }
+    }
+}
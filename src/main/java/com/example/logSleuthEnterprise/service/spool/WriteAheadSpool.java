@@ -0,0 +1,362 @@
+package com.example.logSleuthEnterprise.service.spool;
+
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+import com.example.logSleuthEnterprise.service.kafka.KafkaLogMessageCodec;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Append-only спул на memory-mapped сегментах для записей, которые sink не принял.
+// Формат записи: [int длина][int crc32][payload]; длина 0 - конец данных в сегменте.
+// Заголовок с другой невозможной длиной - повреждение: сегмент не удаляется, а откладывается в .corrupt.
+// Рядом с сегментом на replay лежит checkpoint (.pos): позиция после последней подтвержденной
+// sink'ом пачки - после рестарта replay продолжается с нее, а не с начала сегмента.
+public class WriteAheadSpool {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadSpool.class);
+
+    private static final int HEADER_BYTES = 8;
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String CHECKPOINT_SUFFIX = ".pos";
+    private static final String QUARANTINE_SUFFIX = ".corrupt";
+
+    private final String name;
+    private final Path directory;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final KafkaLogMessageCodec codec;
+
+    // Все поля ниже - под монитором this
+    private final Deque<Path> sealedSegments = new ArrayDeque<>();
+    private final CRC32 writeCrc = new CRC32();
+    private long nextSegmentId;
+    private Path activePath;
+    private FileChannel activeChannel;
+    private MappedByteBuffer active;
+    private boolean dirty;
+
+    private long appended;
+    private long dropped;
+    private long replayed;
+    private long corrupted;
+    private long quarantined;
+
+    public WriteAheadSpool(String name, Path directory, long segmentBytes, long maxBytes,
+                           KafkaLogMessageCodec codec) throws IOException {
+        this.name = name;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.codec = codec;
+
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    // Сегменты прошлого запуска не дописываем - сразу отдаем на replay
+    private void recover() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .forEach(sealedSegments::addLast);
+        }
+        for (Path segment : sealedSegments) {
+            nextSegmentId = Math.max(nextSegmentId, segmentId(segment) + 1);
+        }
+        if (!sealedSegments.isEmpty()) {
+            log.warn("Spool '{}' recovered {} segments from previous run", name, sealedSegments.size());
+        }
+        // Checkpoint'ы сегментов, удаленных после replay, но до удаления checkpoint'а
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path checkpoint : (Iterable<Path>) files::iterator) {
+                String fileName = checkpoint.getFileName().toString();
+                if (fileName.endsWith(CHECKPOINT_SUFFIX)
+                        && !Files.exists(directory.resolve(fileName.substring(0, fileName.length() - CHECKPOINT_SUFFIX.length())))) {
+                    Files.deleteIfExists(checkpoint);
+                }
+            }
+        }
+    }
+
+    public synchronized boolean append(List<KafkaLogMessage> batch) {
+        int written = 0;
+        try {
+            for (KafkaLogMessage message : batch) {
+                byte[] payload = codec.encode(message);
+                if (!ensureCapacity(HEADER_BYTES + payload.length)) {
+                    dropped += batch.size() - written;
+                    log.error("Spool '{}' is full ({} bytes), dropping {} records", name, maxBytes, batch.size() - written);
+                    return false;
+                }
+
+                writeCrc.reset();
+                writeCrc.update(payload);
+                active.putInt(payload.length);
+                active.putInt((int) writeCrc.getValue());
+                active.put(payload);
+                written++;
+            }
+            appended += written;
+            dirty = true;
+            return true;
+
+        } catch (IOException e) {
+            dropped += batch.size() - written;
+            log.error("Spool '{}' write failed: {}", name, e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean ensureCapacity(int recordBytes) throws IOException {
+        if (recordBytes + HEADER_BYTES > segmentBytes) {
+            throw new IOException("Record of " + recordBytes + " bytes does not fit into a segment");
+        }
+        // В конце сегмента должно остаться место под нулевой маркер конца
+        if (active != null && active.remaining() >= recordBytes + HEADER_BYTES) {
+            return true;
+        }
+        if (active != null) {
+            sealActive();
+        }
+        if ((sealedSegments.size() + 1) * segmentBytes > maxBytes) {
+            return false;
+        }
+        openSegment();
+        return true;
+    }
+
+    private void openSegment() throws IOException {
+        activePath = directory.resolve(String.format("segment-%020d%s", nextSegmentId++, SEGMENT_SUFFIX));
+        activeChannel = FileChannel.open(activePath,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        active = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+    }
+
+    private void sealActive() throws IOException {
+        active.force();
+        activeChannel.close();
+        sealedSegments.addLast(activePath);
+        active = null;
+        activeChannel = null;
+        activePath = null;
+        dirty = false;
+    }
+
+    // Периодический fsync активного сегмента
+    public synchronized void force() {
+        if (active != null && dirty) {
+            active.force();
+            dirty = false;
+        }
+    }
+
+    // Следующий сегмент для replay; если закрытых нет, закрываем активный
+    public synchronized Path nextSegmentForReplay() {
+        if (sealedSegments.isEmpty() && active != null && active.position() > 0) {
+            try {
+                sealActive();
+            } catch (IOException e) {
+                log.error("Spool '{}' failed to seal segment: {}", name, e.getMessage());
+            }
+        }
+        return sealedSegments.peekFirst();
+    }
+
+    public synchronized void segmentReplayed(Path segment, long records) {
+        sealedSegments.remove(segment);
+        replayed += records;
+        try {
+            Files.deleteIfExists(segment);
+            Files.deleteIfExists(checkpointPath(segment));
+        } catch (IOException e) {
+            log.error("Spool '{}' failed to delete segment {}: {}", name, segment, e.getMessage());
+        }
+    }
+
+    // Сегмент с поврежденным заголовком: записи после него прочитать нельзя, поэтому файл не удаляется,
+    // а переименовывается в .corrupt (recover его не подхватит) - разбирать вручную
+    public synchronized void segmentQuarantined(Path segment, long records) {
+        sealedSegments.remove(segment);
+        replayed += records;
+        quarantined++;
+        Path target = segment.resolveSibling(segment.getFileName() + QUARANTINE_SUFFIX);
+        try {
+            Files.move(segment, target, StandardCopyOption.REPLACE_EXISTING);
+            Files.deleteIfExists(checkpointPath(segment));
+            log.error("Spool '{}' quarantined damaged segment as {} after {} records", name, target.getFileName(), records);
+        } catch (IOException e) {
+            log.error("Spool '{}' failed to quarantine segment {}: {}", name, segment, e.getMessage());
+        }
+    }
+
+    // Позиция и число проигранных записей после последней подтвержденной пачки; {0, 0} - с начала
+    public long[] loadCheckpoint(Path segment) {
+        Path checkpoint = checkpointPath(segment);
+        try {
+            if (Files.exists(checkpoint)) {
+                String[] parts = Files.readString(checkpoint).trim().split(" ");
+                return new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1])};
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Spool '{}' ignores unreadable checkpoint {}: {}", name, checkpoint.getFileName(), e.getMessage());
+        }
+        return new long[]{0, 0};
+    }
+
+    // Запись во временный файл и атомарная замена: оборванная запись не портит checkpoint
+    public void saveCheckpoint(Path segment, long position, long records) throws IOException {
+        Path checkpoint = checkpointPath(segment);
+        Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        Files.writeString(temporary, position + " " + records);
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path checkpointPath(Path segment) {
+        return segment.resolveSibling(segment.getFileName() + CHECKPOINT_SUFFIX);
+    }
+
+    // Сегмент отображается в память один раз на проход replay, а не на каждую пачку
+    public SegmentReader openForReplay(Path segment) throws IOException {
+        return new SegmentReader(segment);
+    }
+
+    // Читает сегмент без копирования в heap: payload декодируется прямо из mapped-буфера.
+    // Конец сегмента - только нулевой маркер длины или конец файла; запись с битым crc пропускается,
+    // заголовок с невозможной длиной останавливает чтение и помечает сегмент поврежденным.
+    public final class SegmentReader implements AutoCloseable {
+
+        private final Path segment;
+        private final FileChannel channel;
+        private MappedByteBuffer buffer;
+        private final CRC32 readCrc = new CRC32();
+        private boolean ended;
+        private boolean damaged;
+
+        private SegmentReader(Path segment) throws IOException {
+            this.segment = segment;
+            this.channel = FileChannel.open(segment, StandardOpenOption.READ);
+            try {
+                this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        public Path segment() {
+            return segment;
+        }
+
+        // Возвращает позицию после последней прочитанной записи
+        public long read(long fromPosition, int maxRecords, List<KafkaLogMessage> into) throws IOException {
+            buffer.position((int) fromPosition);
+
+            while (into.size() < maxRecords && !ended && !damaged) {
+                if (buffer.remaining() < HEADER_BYTES) {
+                    ended = true;
+                    break;
+                }
+                int length = buffer.getInt();
+                if (length == 0) {
+                    buffer.position(buffer.position() - 4);
+                    ended = true;
+                    break;
+                }
+                if (length < 0 || length > buffer.remaining() - 4) {
+                    buffer.position(buffer.position() - 4);
+                    damaged = true;
+                    synchronized (WriteAheadSpool.this) {
+                        corrupted++;
+                    }
+                    log.error("Spool '{}' found invalid record length {} at position {} in {}",
+                            name, length, buffer.position(), segment.getFileName());
+                    break;
+                }
+                int checksum = buffer.getInt();
+
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                buffer.position(buffer.position() + length);
+
+                readCrc.reset();
+                readCrc.update(payload.duplicate());
+                if ((int) readCrc.getValue() != checksum) {
+                    synchronized (WriteAheadSpool.this) {
+                        corrupted++;
+                    }
+                    log.error("Spool '{}' skipped corrupted record in {}", name, segment.getFileName());
+                    continue;
+                }
+
+                into.add(codec.decode(new ByteBufferBackedInputStream(payload)));
+            }
+            return buffer.position();
+        }
+
+        // Дочитали до маркера конца или до конца файла
+        public boolean isEnded() {
+            return ended;
+        }
+
+        public boolean isDamaged() {
+            return damaged;
+        }
+
+        // Ссылка на отображение отпускается вместе с каналом: память освобождается, когда GC соберет буфер
+        @Override
+        public void close() throws IOException {
+            buffer = null;
+            channel.close();
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return sealedSegments.isEmpty() && (active == null || active.position() == 0);
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("directory", directory.toString());
+        stats.put("segments", sealedSegments.size() + (active != null ? 1 : 0));
+        stats.put("appended", appended);
+        stats.put("replayed", replayed);
+        stats.put("dropped", dropped);
+        stats.put("corrupted", corrupted);
+        stats.put("quarantined", quarantined);
+        return stats;
+    }
+
+    public synchronized void close() {
+        if (active != null) {
+            try {
+                sealActive();
+            } catch (IOException e) {
+                log.error("Spool '{}' failed to close: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    private static long segmentId(Path segment) {
+        String fileName = segment.getFileName().toString();
+        try {
+            return Long.parseLong(fileName.substring("segment-".length(), fileName.length() - SEGMENT_SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+}
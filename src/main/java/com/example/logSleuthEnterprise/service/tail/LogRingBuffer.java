@@ -0,0 +1,44 @@
+package com.example.logSleuthEnterprise.service.tail;
+
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Кольцо фиксированного размера без блокировок: писатель берет номер через getAndIncrement
+// и кладет слот с этим номером, читатель сверяет номер слота со своей позицией. Писатели
+// никогда не ждут читателя - отставший читатель видит перезаписанный слот и пропускает его.
+final class LogRingBuffer {
+
+    private final AtomicReferenceArray<Slot> slots;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+
+    LogRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    long publish(KafkaLogMessage message) {
+        long sequence = claimed.getAndIncrement();
+        slots.set((int) (sequence & mask), new Slot(sequence, message));
+        return sequence;
+    }
+
+    // Номер следующей записи; слоты до него заняты, но последние могут быть еще не заполнены
+    long claimed() {
+        return claimed.get();
+    }
+
+    Slot get(long sequence) {
+        return slots.get((int) (sequence & mask));
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    record Slot(long sequence, KafkaLogMessage message) {
+    }
+}
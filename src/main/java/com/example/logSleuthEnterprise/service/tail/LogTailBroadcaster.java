@@ -0,0 +1,261 @@
+package com.example.logSleuthEnterprise.service.tail;
+
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Живой поток логов для GET /api/logs/tail. Consumer Kafka кладет каждую обработанную запись
+// в кольцевой буфер (без блокировок и без ожидания клиентов), один поток-dispatcher читает
+// кольцо и раскладывает события по очередям подписчиков. База не участвует вовсе.
+@Component
+public class LogTailBroadcaster {
+
+    private static final Logger log = LoggerFactory.getLogger(LogTailBroadcaster.class);
+
+    // Кольцо держит ссылки на последние сообщения - размер задает и память, и запас на отставание
+    @Value("${app.tail.ring-capacity:16384}")
+    private int ringCapacity;
+
+    @Value("${app.tail.max-subscribers:500}")
+    private int maxSubscribers;
+
+    @Value("${app.tail.subscriber-queue:1000}")
+    private int subscriberQueue;
+
+    // sample - отставшему клиенту каждое sample-rate-е событие, drop - отключить при переполнении
+    @Value("${app.tail.slow-client-policy:sample}")
+    private String slowClientPolicy;
+
+    @Value("${app.tail.sample-rate:10}")
+    private int sampleRate;
+
+    @Value("${app.tail.sender-threads:4}")
+    private int senderThreads;
+
+    // Пауза dispatcher'а при пустом кольце; задает задержку доставки
+    @Value("${app.tail.poll-interval-ms:20}")
+    private long pollIntervalMs;
+
+    // Дольше этого одна отправка клиенту не висит - иначе клиент закрывается
+    @Value("${app.tail.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    private LogRingBuffer ring;
+    private TailSubscriber.SlowClientPolicy policy;
+    private ExecutorService sender;
+    private Thread dispatcher;
+    private volatile boolean running;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<TailFilter, List<TailSubscriber>> groups = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final AtomicLong nextSubscriberId = new AtomicLong();
+
+    private final AtomicLong matched = new AtomicLong();
+    private final AtomicLong overrun = new AtomicLong();
+    private final AtomicLong stalled = new AtomicLong();
+    private volatile long position;
+
+    @PostConstruct
+    public void start() {
+        ring = new LogRingBuffer(ringCapacity);
+        policy = TailSubscriber.SlowClientPolicy.valueOf(slowClientPolicy.toUpperCase(Locale.ROOT));
+        sender = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "log-tail-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        dispatcher = new Thread(this::dispatchLoop, "log-tail-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        log.info("Log tail ready: ring {} events, max {} subscribers, policy {}", ring.capacity(), maxSubscribers, policy);
+    }
+
+    // Горячий путь consumer'а: один getAndIncrement и запись слота, подписчиков не трогает
+    public void publish(KafkaLogMessage message) {
+        ring.publish(message);
+    }
+
+    public SseEmitter subscribe(TailFilter filter) {
+        // Без таймаута: соединение живет, пока клиент не уйдет
+        SseEmitter emitter = new SseEmitter(0L);
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            try {
+                emitter.send(SseEmitter.event().name("error").data("Too many tail subscribers (" + maxSubscribers + ")"));
+            } catch (IOException e) {
+                log.debug("Failed to reject tail subscriber: {}", e.getMessage());
+            }
+            emitter.complete();
+            return emitter;
+        }
+
+        TailSubscriber subscriber = new TailSubscriber(nextSubscriberId.incrementAndGet(), filter, emitter, sender,
+                subscriberQueue, policy, sampleRate);
+        subscriber.onClose(() -> unsubscribe(subscriber));
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(error -> subscriber.close());
+        // Добавление внутри compute: иначе unsubscribe последнего участника мог удалить группу
+        // между получением списка и add, и подписчик попал бы в уже выброшенный список
+        groups.compute(filter, (key, members) -> {
+            List<TailSubscriber> group = members != null ? members : new CopyOnWriteArrayList<>();
+            group.add(subscriber);
+            return group;
+        });
+        log.debug("Tail subscriber {} connected: {}", subscriber.id(), filter);
+        return emitter;
+    }
+
+    private void unsubscribe(TailSubscriber subscriber) {
+        boolean[] removed = new boolean[1];
+        groups.computeIfPresent(subscriber.filter(), (filter, members) -> {
+            removed[0] = members.remove(subscriber);
+            return members.isEmpty() ? null : members;
+        });
+        if (removed[0]) {
+            subscriberCount.decrementAndGet();
+            log.debug("Tail subscriber {} disconnected", subscriber.id());
+        }
+    }
+
+    private void dispatchLoop() {
+        long next = ring.claimed();
+        while (running) {
+            next = dispatchAvailable(next);
+            position = next;
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(pollIntervalMs));
+        }
+    }
+
+    private long dispatchAvailable(long next) {
+        long claimed = ring.claimed();
+        if (claimed - next > ring.capacity()) {
+            // Dispatcher отстал на целое кольцо - старые события уже перезаписаны
+            long skipped = claimed - ring.capacity() - next;
+            overrun.addAndGet(skipped);
+            next += skipped;
+        }
+
+        while (next < claimed) {
+            LogRingBuffer.Slot slot = ring.get(next);
+            if (slot == null || slot.sequence() < next) {
+                // Номер взят, но слот еще не записан - подождем следующего прохода,
+                // если только писатель не отстал настолько, что слот вот-вот перезапишут
+                if (claimed - next < ring.capacity() / 2) {
+                    break;
+                }
+                overrun.incrementAndGet();
+                next++;
+                continue;
+            }
+            if (slot.sequence() > next) {
+                overrun.incrementAndGet();
+                next++;
+                continue;
+            }
+            if (!groups.isEmpty()) {
+                try {
+                    dispatch(new TailEvent(next, slot.message()));
+                } catch (Exception e) {
+                    // Битое событие пропускаем, поток не останавливается
+                    log.warn("Failed to dispatch tail event {}: {}", next, e.getMessage());
+                }
+            }
+            next++;
+        }
+        return next;
+    }
+
+    private void dispatch(TailEvent event) throws IOException {
+        for (Map.Entry<TailFilter, List<TailSubscriber>> group : groups.entrySet()) {
+            if (!group.getKey().matches(event)) {
+                continue;
+            }
+            String json = event.json(mapper);
+            for (TailSubscriber subscriber : group.getValue()) {
+                subscriber.offer(event.sequence(), json);
+                matched.incrementAndGet();
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.tail.heartbeat-ms:15000}")
+    public void heartbeat() {
+        for (List<TailSubscriber> members : groups.values()) {
+            for (TailSubscriber subscriber : members) {
+                subscriber.heartbeat();
+            }
+        }
+    }
+
+    // Сторож отправок: клиент, который не читает, иначе навсегда занял бы поток из senderThreads
+    @Scheduled(fixedDelayString = "${app.tail.send-check-interval-ms:1000}")
+    public void closeStalledSubscribers() {
+        long now = System.currentTimeMillis();
+        for (List<TailSubscriber> members : groups.values()) {
+            for (TailSubscriber subscriber : members) {
+                if (subscriber.closeIfStalled(sendTimeoutMs, now)) {
+                    stalled.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("subscribers", subscriberCount.get());
+        stats.put("filters", groups.size());
+        stats.put("published", ring.claimed());
+        stats.put("matched", matched.get());
+        stats.put("overrun", overrun.get());
+        stats.put("stalledClosed", stalled.get());
+        stats.put("dispatcherLag", Math.max(0, ring.claimed() - position));
+        stats.put("ringCapacity", ring.capacity());
+        stats.put("policy", policy.name().toLowerCase(Locale.ROOT));
+
+        List<Map<String, Object>> subscribers = new ArrayList<>();
+        for (List<TailSubscriber> members : groups.values()) {
+            for (TailSubscriber subscriber : members) {
+                subscribers.add(subscriber.getStats());
+            }
+        }
+        stats.put("clients", subscribers);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (dispatcher != null) {
+            LockSupport.unpark(dispatcher);
+        }
+        for (List<TailSubscriber> members : List.copyOf(groups.values())) {
+            members.forEach(TailSubscriber::close);
+        }
+        sender.shutdown();
+    }
+}
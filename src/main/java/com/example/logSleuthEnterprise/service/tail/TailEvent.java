@@ -0,0 +1,54 @@
+package com.example.logSleuthEnterprise.service.tail;
+
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Событие на время одного прохода dispatcher'а: текст в нижнем регистре и JSON считаются
+// лениво и один раз, сколько бы фильтров и подписчиков ни совпало. Живет в одном потоке.
+final class TailEvent {
+
+    private final long sequence;
+    private final KafkaLogMessage message;
+    private String lowerCaseMessage;
+    private String json;
+
+    TailEvent(long sequence, KafkaLogMessage message) {
+        this.sequence = sequence;
+        this.message = message;
+    }
+
+    long sequence() {
+        return sequence;
+    }
+
+    KafkaLogMessage message() {
+        return message;
+    }
+
+    String lowerCaseMessage() {
+        if (lowerCaseMessage == null) {
+            lowerCaseMessage = message.getMessage() != null ? message.getMessage().toLowerCase(Locale.ROOT) : "";
+        }
+        return lowerCaseMessage;
+    }
+
+    String json(ObjectMapper mapper) throws JsonProcessingException {
+        if (json == null) {
+            Map<String, Object> log = new LinkedHashMap<>();
+            log.put("id", message.getId());
+            log.put("timestamp", message.getTimestamp() != null ? message.getTimestamp().toString() : null);
+            log.put("service", message.getService());
+            log.put("level", message.getLevel());
+            log.put("message", message.getMessage());
+            log.put("host", message.getHost());
+            log.put("metadata", message.getMetadata() != null ? message.getMetadata() : Map.of());
+            json = mapper.writeValueAsString(log);
+        }
+        return json;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.logSleuthEnterprise.service.tail;
+
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+
+import java.util.Locale;
+
+// Фильтр подписки на живой поток; null - любое значение. Подписки с одинаковым фильтром
+// объединяются, поэтому фильтр проверяется один раз на событие, а не на каждого клиента.
+public record TailFilter(String service, String level, String host, String contains) {
+
+    public TailFilter {
+        level = level != null ? level.toUpperCase(Locale.ROOT) : null;
+        contains = contains != null ? contains.toLowerCase(Locale.ROOT) : null;
+    }
+
+    boolean matches(TailEvent event) {
+        KafkaLogMessage message = event.message();
+        if (service != null && !service.equals(message.getService())) {
+            return false;
+        }
+        if (level != null && (message.getLevel() == null || !level.equalsIgnoreCase(message.getLevel()))) {
+            return false;
+        }
+        if (host != null && !host.equals(message.getHost())) {
+            return false;
+        }
+        return contains == null || event.lowerCaseMessage().contains(contains);
+    }
+}
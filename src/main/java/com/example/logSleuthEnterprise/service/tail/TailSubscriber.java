@@ -0,0 +1,220 @@
+package com.example.logSleuthEnterprise.service.tail;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Один SSE-клиент: ограниченная очередь готовых событий и отправка в пуле отправителей.
+// Dispatcher только кладет в очередь; медленный клиент держит поток отправителя, но не
+// dispatcher и не ingest. Переполнение - выборка (sample) или отключение (drop).
+// Отправляет всегда один поток (drain), и heartbeat тоже идет через него; отправку, которая
+// висит дольше таймаута, сторож прерывает и закрывает клиента, освобождая поток пула.
+final class TailSubscriber {
+
+    private static final Logger log = LoggerFactory.getLogger(TailSubscriber.class);
+
+    // Сколько событий отправляется за один заход, чтобы не занимать поток отправителя надолго
+    private static final int DRAIN_BATCH = 256;
+
+    enum SlowClientPolicy { SAMPLE, DROP }
+
+    private final long id;
+    private final TailFilter filter;
+    private final SseEmitter emitter;
+    private final Executor sender;
+    private final int queueCapacity;
+    private final SlowClientPolicy policy;
+    private final int sampleRate;
+
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicBoolean heartbeatPending = new AtomicBoolean();
+    // Начало текущей отправки (0 - не отправляем) и поток, который в ней висит
+    private volatile long sendStartedAt;
+    private volatile Thread sendingThread;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private long reportedDropped;
+    private long sampleCounter;
+    private final long connectedAt = System.currentTimeMillis();
+
+    private Runnable onClose = () -> { };
+
+    TailSubscriber(long id, TailFilter filter, SseEmitter emitter, Executor sender, int queueCapacity,
+                   SlowClientPolicy policy, int sampleRate) {
+        this.id = id;
+        this.filter = filter;
+        this.emitter = emitter;
+        this.sender = sender;
+        this.queueCapacity = queueCapacity;
+        this.policy = policy;
+        this.sampleRate = Math.max(1, sampleRate);
+    }
+
+    void onClose(Runnable onClose) {
+        this.onClose = onClose;
+    }
+
+    long id() {
+        return id;
+    }
+
+    TailFilter filter() {
+        return filter;
+    }
+
+    // Вызывается только из потока dispatcher'а
+    void offer(long sequence, String json) {
+        if (closed.get()) {
+            return;
+        }
+        int backlog = queued.get();
+        if (backlog >= queueCapacity) {
+            if (policy == SlowClientPolicy.DROP) {
+                log.info("Tail subscriber {} disconnected: {} events behind", id, backlog);
+                close();
+                return;
+            }
+            dropped.incrementAndGet();
+            return;
+        }
+        // Отставший клиент в режиме sample получает каждое sampleRate-е событие, пока не догонит
+        if (policy == SlowClientPolicy.SAMPLE && backlog >= queueCapacity / 2 && sampleCounter++ % sampleRate != 0) {
+            dropped.incrementAndGet();
+            return;
+        }
+        queue.add(new Pending(sequence, json));
+        queued.incrementAndGet();
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                sender.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                close();
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            int count = 0;
+            for (; count < DRAIN_BATCH && !closed.get(); count++) {
+                Pending pending = queue.poll();
+                if (pending == null) {
+                    break;
+                }
+                queued.decrementAndGet();
+                send(SseEmitter.event()
+                        .id(Long.toString(pending.sequence()))
+                        .name("log")
+                        .data(pending.json()));
+                sent.incrementAndGet();
+            }
+            reportDropped();
+            // События сами держат соединение живым - keepalive нужен, только если отправлять было нечего
+            if (heartbeatPending.getAndSet(false) && count == 0 && !closed.get()) {
+                send(SseEmitter.event().comment("keepalive"));
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Клиент ушел, emitter уже завершен или отправку прервал сторож
+            close();
+        } finally {
+            draining.set(false);
+        }
+        if (!closed.get() && (!queue.isEmpty() || heartbeatPending.get())) {
+            scheduleDrain();
+        }
+    }
+
+    private void send(SseEmitter.SseEventBuilder event) throws IOException {
+        sendingThread = Thread.currentThread();
+        sendStartedAt = System.currentTimeMillis();
+        try {
+            emitter.send(event);
+        } finally {
+            sendStartedAt = 0;
+            sendingThread = null;
+        }
+    }
+
+    private void reportDropped() throws IOException {
+        long total = dropped.get();
+        if (total > reportedDropped) {
+            send(SseEmitter.event().name("dropped").data(Map.of("dropped", total - reportedDropped, "total", total)));
+            reportedDropped = total;
+        }
+    }
+
+    // Пустой комментарий раз в интервал: прокси не рвут соединение, мертвый клиент обнаруживается.
+    // Пока предыдущий heartbeat не отправлен, новый не ставится.
+    void heartbeat() {
+        if (closed.get() || !heartbeatPending.compareAndSet(false, true)) {
+            return;
+        }
+        scheduleDrain();
+    }
+
+    // Вызывается сторожем: отправка дольше timeoutMs - клиент не читает, держать поток пула незачем.
+    // true - клиент закрыт
+    boolean closeIfStalled(long timeoutMs, long now) {
+        long started = sendStartedAt;
+        if (started == 0 || now - started < timeoutMs) {
+            return false;
+        }
+        log.info("Tail subscriber {} disconnected: send blocked for {} ms", id, now - started);
+        Thread thread = sendingThread;
+        close();
+        // Прерываем, только если поток все еще в той же отправке, а не ушел к другому клиенту
+        if (thread != null && sendStartedAt == started) {
+            thread.interrupt();
+        }
+        return true;
+    }
+
+    void close() {
+        if (closed.compareAndSet(false, true)) {
+            queue.clear();
+            queued.set(0);
+            try {
+                emitter.complete();
+            } catch (Exception e) {
+                log.debug("Tail subscriber {} close failed: {}", id, e.getMessage());
+            }
+            onClose.run();
+        }
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    Map<String, Object> getStats() {
+        return Map.of(
+                "id", id,
+                "filter", filter.toString(),
+                "queued", queued.get(),
+                "sent", sent.get(),
+                "dropped", dropped.get(),
+                "connectedMs", System.currentTimeMillis() - connectedAt
+        );
+    }
+
+    private record Pending(long sequence, String json) {
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.logSleuthEnterprise.service.template;
+
+import java.util.List;
+import java.util.UUID;
+
+// Шаблон, к которому отнесено сообщение: params - токены сообщения на местах <*> по порядку,
+// LogTemplateMiner.render(template, params) дает исходный текст байт в байт.
+public record LogTemplateMatch(UUID templateId, String template, List<String> params) {
+}
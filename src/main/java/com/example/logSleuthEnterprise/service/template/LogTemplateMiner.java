@@ -0,0 +1,387 @@
+package com.example.logSleuthEnterprise.service.template;
+
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Онлайн-выделение шаблонов сообщений в стиле Drain: дерево фиксированной глубины
+// (число токенов -> первые depth-2 токена -> лист со списком шаблонов), в листе - самый
+// похожий шаблон с похожестью не ниже порога, иначе новый. Несовпавшие токены шаблона
+// становятся <*>. Токены - части по одиночному пробелу, поэтому склейка обратно точна.
+// При достижении лимита шаблонов выбрасывается десятая часть наименее используемых, чтобы
+// новые форматы сообщений продолжали сжиматься.
+@Component
+public class LogTemplateMiner {
+
+    public static final String WILDCARD = "<*>";
+
+    @Value("${app.templates.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.templates.depth:4}")
+    private int depth;
+
+    // Доля совпавших токенов (без <*>), с которой сообщение относится к шаблону
+    @Value("${app.templates.similarity:0.4}")
+    private double similarity;
+
+    // Сколько разных токенов держит узел; остальные уходят в ветку <*>
+    @Value("${app.templates.max-children:100}")
+    private int maxChildren;
+
+    // На лимите выбрасываются наименее используемые шаблоны (по числу сообщений, затем по давности)
+    @Value("${app.templates.max-templates:5000}")
+    private int maxTemplates;
+
+    // Длинные сообщения (стектрейсы) шаблонами не сжимаются
+    @Value("${app.templates.max-tokens:64}")
+    private int maxTokens;
+
+    // Корень на каждую длину; блокировка - на корне, разные длины разбираются параллельно
+    private final Map<Integer, Node> byLength = new ConcurrentHashMap<>();
+
+    // id -> текст для восстановления сообщений; id выводится из текста, поэтому запись
+    // неизменна и ее можно держать сколько угодно и сбрасывать при переполнении
+    private final Map<UUID, String> catalog = new ConcurrentHashMap<>();
+
+    // Старый id -> id, которым его заменило обобщение шаблона: счетчики по старым id
+    // складываются в текущий шаблон. Сбрасывается при переполнении, как каталог
+    private final Map<UUID, UUID> superseded = new ConcurrentHashMap<>();
+
+    // Обобщения, которые еще не записаны в log_templates.superseded_by: их забирает LogDAO,
+    // чтобы после рестарта счетчики старых id по-прежнему складывались в текущий шаблон
+    private final Map<UUID, UUID> unpersistedSuperseded = new ConcurrentHashMap<>();
+
+    // Одно вытеснение за раз; корни блокируются по одному, поэтому с mine() не взаимоблокируется
+    private final Object evictionLock = new Object();
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicInteger templates = new AtomicInteger();
+    private final LongAdder mined = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder generalized = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Вызывается из consumer'а: шаблон и параметры едут с сообщением во все sink'и
+    public void apply(KafkaLogMessage message) {
+        LogTemplateMatch match = mine(message.getMessage());
+        if (match != null) {
+            message.setTemplateId(match.templateId());
+            message.setTemplateParams(match.params());
+        }
+    }
+
+    // null - выделение выключено, сообщение слишком длинное или лимит шаблонов исчерпан
+    // (последнее - только пока параллельное вытеснение не освободило место)
+    public LogTemplateMatch mine(String message) {
+        if (!enabled || message == null) {
+            return null;
+        }
+        String[] tokens = message.split(" ", -1);
+        if (tokens.length > maxTokens) {
+            skipped.increment();
+            return null;
+        }
+        if (templates.get() >= maxTemplates) {
+            evictLeastUsed();
+        }
+
+        Node root = byLength.computeIfAbsent(tokens.length, length -> new Node());
+        UUID id;
+        String text;
+        String[] template;
+        synchronized (root) {
+            Cluster cluster = match(root, tokens);
+            if (cluster != null) {
+                generalize(cluster, tokens);
+            } else {
+                if (templates.get() >= maxTemplates) {
+                    skipped.increment();
+                    return null;
+                }
+                cluster = new Cluster(initialTemplate(tokens));
+                add(root, cluster);
+                templates.incrementAndGet();
+                created.increment();
+            }
+            cluster.used++;
+            cluster.lastUsed = clock.incrementAndGet();
+            id = cluster.id;
+            text = cluster.text;
+            template = cluster.template.clone();
+        }
+        mined.increment();
+        remember(id, text);
+
+        List<String> params = new ArrayList<>();
+        for (int i = 0; i < template.length; i++) {
+            if (WILDCARD.equals(template[i])) {
+                params.add(tokens[i]);
+            }
+        }
+        return new LogTemplateMatch(id, text, params);
+    }
+
+    // Спуск по префиксу: точный токен, иначе ветка <*>; в листе - самый похожий шаблон,
+    // при равенстве - с большим числом <*>
+    private Cluster match(Node root, String[] tokens) {
+        Node node = root;
+        int prefix = Math.min(depth - 2, tokens.length);
+        for (int i = 0; i < prefix; i++) {
+            Node next = node.children.get(key(tokens[i]));
+            if (next == null) {
+                next = node.children.get(WILDCARD);
+            }
+            if (next == null) {
+                return null;
+            }
+            node = next;
+        }
+
+        Cluster best = null;
+        double bestSimilarity = -1;
+        int bestParams = -1;
+        for (Cluster cluster : node.clusters) {
+            int same = 0;
+            int params = 0;
+            for (int i = 0; i < tokens.length; i++) {
+                String token = cluster.template[i];
+                if (WILDCARD.equals(token)) {
+                    params++;
+                } else if (token.equals(tokens[i])) {
+                    same++;
+                }
+            }
+            double sim = (double) same / tokens.length;
+            if (sim > bestSimilarity || (sim == bestSimilarity && params > bestParams)) {
+                best = cluster;
+                bestSimilarity = sim;
+                bestParams = params;
+            }
+        }
+        return best != null && bestSimilarity >= similarity ? best : null;
+    }
+
+    // Выбрасывает десятую часть шаблонов с наименьшим числом сообщений (при равенстве - давно
+    // не встречавшиеся). Вызывается без блокировки корня: корни блокируются по очереди.
+    // Тексты вытесненных шаблонов остаются в каталоге - по ним собираются уже записанные строки.
+    private void evictLeastUsed() {
+        synchronized (evictionLock) {
+            if (templates.get() < maxTemplates) {
+                return;
+            }
+            List<Candidate> candidates = new ArrayList<>(templates.get());
+            for (Node root : byLength.values()) {
+                synchronized (root) {
+                    collect(root, root, candidates);
+                }
+            }
+            candidates.sort(Comparator.comparingLong(Candidate::used).thenComparingLong(Candidate::lastUsed));
+            int target = Math.max(1, maxTemplates / 10);
+            for (Candidate candidate : candidates.subList(0, Math.min(target, candidates.size()))) {
+                synchronized (candidate.root()) {
+                    if (candidate.node().clusters.remove(candidate.cluster())) {
+                        templates.decrementAndGet();
+                        evicted.increment();
+                    }
+                }
+            }
+        }
+    }
+
+    private static void collect(Node root, Node node, List<Candidate> candidates) {
+        for (Cluster cluster : node.clusters) {
+            candidates.add(new Candidate(root, node, cluster, cluster.used, cluster.lastUsed));
+        }
+        for (Node child : node.children.values()) {
+            collect(root, child, candidates);
+        }
+    }
+
+    private void add(Node root, Cluster cluster) {
+        Node node = root;
+        int prefix = Math.min(depth - 2, cluster.template.length);
+        for (int i = 0; i < prefix; i++) {
+            String token = cluster.template[i];
+            Node next = node.children.get(token);
+            if (next == null) {
+                if (!WILDCARD.equals(token) && node.children.size() + 1 < maxChildren) {
+                    next = new Node();
+                    node.children.put(token, next);
+                } else {
+                    next = node.children.computeIfAbsent(WILDCARD, key -> new Node());
+                }
+            }
+            node = next;
+        }
+        node.clusters.add(cluster);
+    }
+
+    // Изменившийся текст - новый id: строки, записанные со старым id, восстанавливаются по старому тексту
+    private void generalize(Cluster cluster, String[] tokens) {
+        boolean changed = false;
+        for (int i = 0; i < tokens.length; i++) {
+            if (!WILDCARD.equals(cluster.template[i]) && !cluster.template[i].equals(tokens[i])) {
+                cluster.template[i] = WILDCARD;
+                changed = true;
+            }
+        }
+        if (changed) {
+            UUID previous = cluster.id;
+            cluster.retext();
+            rememberSuperseded(previous, cluster.id);
+            if (unpersistedSuperseded.size() > maxTemplates * 4) {
+                unpersistedSuperseded.clear();
+            }
+            unpersistedSuperseded.put(previous, cluster.id);
+            generalized.increment();
+        }
+    }
+
+    // Токены с цифрами (числа, id, адреса) сразу считаются параметрами
+    private static String[] initialTemplate(String[] tokens) {
+        String[] template = new String[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            template[i] = key(tokens[i]);
+        }
+        return template;
+    }
+
+    private static String key(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            if (Character.isDigit(token.charAt(i))) {
+                return WILDCARD;
+            }
+        }
+        return token;
+    }
+
+    public static UUID templateId(String template) {
+        return UUID.nameUUIDFromBytes(template.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Обратно к исходному тексту; null - число параметров не сходится с шаблоном
+    public static String render(String template, List<String> params) {
+        List<String> values = params != null ? params : List.of();
+        StringBuilder message = new StringBuilder(template.length() + 16 * values.size());
+        int next = 0;
+        String[] tokens = template.split(" ", -1);
+        for (int i = 0; i < tokens.length; i++) {
+            String token = tokens[i];
+            if (i > 0) {
+                message.append(' ');
+            }
+            if (WILDCARD.equals(token)) {
+                if (next >= values.size()) {
+                    return null;
+                }
+                message.append(values.get(next++));
+            } else {
+                message.append(token);
+            }
+        }
+        return next == values.size() ? message.toString() : null;
+    }
+
+    // Текущий id шаблона, в который обобщился templateId (сам templateId, если не обобщался).
+    // Обобщение только добавляет <*>, цепочка конечна; ограничение - на случай сброса карты
+    public UUID currentId(UUID templateId) {
+        UUID current = templateId;
+        for (int i = 0; i < maxTokens + 1; i++) {
+            UUID next = superseded.get(current);
+            if (next == null || next.equals(current)) {
+                break;
+            }
+            current = next;
+        }
+        return current;
+    }
+
+    // Обобщение, прочитанное из каталога (свое до рестарта или другого инстанса)
+    public void rememberSuperseded(UUID previous, UUID current) {
+        if (superseded.size() > maxTemplates * 4 && !superseded.containsKey(previous)) {
+            superseded.clear();
+        }
+        superseded.put(previous, current);
+    }
+
+    // Новые обобщения с прошлого вызова: старый id -> id, которым его заменили
+    public Map<UUID, UUID> drainSuperseded() {
+        Map<UUID, UUID> drained = new HashMap<>();
+        for (Map.Entry<UUID, UUID> entry : unpersistedSuperseded.entrySet()) {
+            if (unpersistedSuperseded.remove(entry.getKey(), entry.getValue())) {
+                drained.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return drained;
+    }
+
+    public String templateText(UUID templateId) {
+        return catalog.get(templateId);
+    }
+
+    // Текст, прочитанный из каталога другого инстанса
+    public void remember(UUID templateId, String template) {
+        if (catalog.size() > maxTemplates * 4 && !catalog.containsKey(templateId)) {
+            catalog.clear();
+        }
+        catalog.putIfAbsent(templateId, template);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("templates", templates.get());
+        stats.put("catalog", catalog.size());
+        stats.put("mined", mined.sum());
+        stats.put("created", created.sum());
+        stats.put("generalized", generalized.sum());
+        stats.put("skipped", skipped.sum());
+        stats.put("evicted", evicted.sum());
+        return stats;
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private final List<Cluster> clusters = new ArrayList<>();
+    }
+
+    // Число сообщений и "время" последнего - для выбора вытесняемых; меняются под блокировкой корня
+    private static final class Cluster {
+        private final String[] template;
+        private UUID id;
+        private String text;
+        private long used;
+        private long lastUsed;
+
+        private Cluster(String[] template) {
+            this.template = template;
+            retext();
+        }
+
+        private void retext() {
+            text = String.join(" ", template);
+            id = templateId(text);
+        }
+    }
+
+    private record Candidate(Node root, Node node, Cluster cluster, long used, long lastUsed) {
+    }
+}
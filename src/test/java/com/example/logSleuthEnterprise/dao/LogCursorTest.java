@@ -0,0 +1,103 @@
+package com.example.logSleuthEnterprise.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LogCursorTest {
+
+    @Test
+    void roundTrip() {
+        LogCursor cursor = new LogCursor("LEVEL", "ERROR", 1_700_000_000_000L, 1_700_000_360_000L,
+                472_222L, 472_223L, "billing", ByteBuffer.wrap(new byte[]{1, 2, 3, 4}));
+
+        assertEquals(cursor, LogCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void roundTripWithoutBoundsAndPosition() {
+        LogCursor cursor = new LogCursor("LEGACY_SERVICE", null, LogCursor.NO_BOUND, LogCursor.NO_BOUND,
+                0, 0, null, null);
+
+        LogCursor decoded = LogCursor.decode(cursor.encode());
+
+        assertEquals(cursor, decoded);
+        assertNull(decoded.pagingState());
+    }
+
+    @Test
+    void withPositionKeepsFilter() {
+        LogCursor cursor = new LogCursor("HOST", "host-1", 10, 20, 1, 5, null, null);
+
+        LogCursor moved = LogCursor.decode(cursor.withPosition(3, "auth", ByteBuffer.wrap(new byte[]{9})).encode());
+
+        assertEquals("host-1", moved.value());
+        assertEquals(1, moved.oldestBucket());
+        assertEquals(3, moved.bucket());
+        assertEquals("auth", moved.service());
+        assertEquals(ByteBuffer.wrap(new byte[]{9}), moved.pagingState());
+    }
+
+    @Test
+    void rejectsGarbage() {
+        assertThrows(IllegalArgumentException.class, () -> LogCursor.decode("not a cursor!"));
+        assertThrows(IllegalArgumentException.class, () -> LogCursor.decode(""));
+        assertThrows(IllegalArgumentException.class, () -> LogCursor.decode("AAAA"));
+    }
+
+    @Test
+    void rejectsUnsupportedVersion() {
+        byte[] raw = raw(valid());
+        raw[0] = 1;
+
+        assertThrows(IllegalArgumentException.class, () -> LogCursor.decode(token(raw)));
+    }
+
+    @Test
+    void rejectsTruncatedAndTrailingBytes() {
+        byte[] raw = raw(valid());
+
+        for (int length = 0; length < raw.length; length++) {
+            String truncated = token(Arrays.copyOf(raw, length));
+            assertThrows(IllegalArgumentException.class, () -> LogCursor.decode(truncated), "length " + length);
+        }
+        assertThrows(IllegalArgumentException.class, () -> LogCursor.decode(token(Arrays.copyOf(raw, raw.length + 1))));
+    }
+
+    @Test
+    void rejectsInconsistentPosition() {
+        assertRejected(new LogCursor("SERVICE", "auth", 0, 10, 6, 5, null, null));
+        assertRejected(new LogCursor("SERVICE", "auth", 20, 10, 5, 5, null, null));
+        assertRejected(new LogCursor("", "auth", 0, 10, 5, 5, null, null));
+    }
+
+    @Test
+    void rejectsOversizedPagingState() {
+        LogCursor cursor = new LogCursor("SERVICE", "auth", 0, 10, 5, 5, null, ByteBuffer.allocate(65537));
+
+        assertRejected(cursor);
+    }
+
+    private static LogCursor valid() {
+        return new LogCursor("SERVICE", "auth", 0, 10, 5, 6, "auth", ByteBuffer.wrap(new byte[]{7, 7}));
+    }
+
+    private static void assertRejected(LogCursor cursor) {
+        String token = cursor.encode();
+        assertThrows(IllegalArgumentException.class, () -> LogCursor.decode(token));
+    }
+
+    private static byte[] raw(LogCursor cursor) {
+        return Base64.getUrlDecoder().decode(cursor.encode());
+    }
+
+    private static String token(byte[] raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+}
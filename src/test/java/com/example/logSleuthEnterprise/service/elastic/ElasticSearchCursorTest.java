@@ -0,0 +1,103 @@
+package com.example.logSleuthEnterprise.service.elastic;
+
+import com.example.logSleuthEnterprise.model.LogField;
+import com.example.logSleuthEnterprise.service.query.LogQuery;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ElasticSearchCursorTest {
+
+    @Test
+    void roundTrip() {
+        LogQuery query = new LogQuery(null, "timeout", "billing", "ERROR", "host-1",
+                Instant.parse("2024-03-01T00:00:00Z"), Instant.parse("2024-03-02T00:00:00Z"),
+                Map.of("region", "eu", "requestId", "r-1"), 100,
+                EnumSet.of(LogField.TIMESTAMP, LogField.MESSAGE), false);
+        ElasticSearchCursor cursor = new ElasticSearchCursor(query, "pit-123",
+                List.of(1_709_251_200_000L, 0.5d, "tie-breaker"));
+
+        ElasticSearchCursor decoded = ElasticSearchCursor.decode(cursor.encode());
+
+        assertEquals(query, decoded.query());
+        assertEquals("pit-123", decoded.pitId());
+        assertEquals(cursor.searchAfter(), decoded.searchAfter());
+    }
+
+    @Test
+    void roundTripWithoutBounds() {
+        ElasticSearchCursor cursor = valid();
+
+        LogQuery decoded = ElasticSearchCursor.decode(cursor.encode()).query();
+
+        assertNull(decoded.from());
+        assertNull(decoded.to());
+        assertNull(decoded.service());
+        assertEquals(LogField.ALL, decoded.fields());
+    }
+
+    @Test
+    void rejectsGarbage() {
+        assertThrows(IllegalArgumentException.class, () -> ElasticSearchCursor.decode("not a cursor!"));
+        assertThrows(IllegalArgumentException.class, () -> ElasticSearchCursor.decode(""));
+    }
+
+    @Test
+    void rejectsUnsupportedVersion() {
+        byte[] raw = raw(valid());
+        raw[0] = 2;
+
+        assertThrows(IllegalArgumentException.class, () -> ElasticSearchCursor.decode(token(raw)));
+    }
+
+    @Test
+    void rejectsTruncatedAndTrailingBytes() {
+        byte[] raw = raw(valid());
+
+        for (int length = 0; length < raw.length; length++) {
+            String truncated = token(Arrays.copyOf(raw, length));
+            assertThrows(IllegalArgumentException.class, () -> ElasticSearchCursor.decode(truncated), "length " + length);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> ElasticSearchCursor.decode(token(Arrays.copyOf(raw, raw.length + 1))));
+    }
+
+    @Test
+    void rejectsInvalidQuery() {
+        assertRejected(new ElasticSearchCursor(query(0, null, null), "pit", List.of(1L)));
+        assertRejected(new ElasticSearchCursor(
+                query(10, Instant.parse("2024-03-02T00:00:00Z"), Instant.parse("2024-03-01T00:00:00Z")), "pit", List.of(1L)));
+        assertRejected(new ElasticSearchCursor(query(10, null, null), "", List.of(1L)));
+        assertRejected(new ElasticSearchCursor(query(10, null, null), "pit", List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L)));
+    }
+
+    private static ElasticSearchCursor valid() {
+        return new ElasticSearchCursor(query(10, null, null), "pit", List.of(5L, 6L));
+    }
+
+    private static LogQuery query(int limit, Instant from, Instant to) {
+        return new LogQuery(null, null, null, null, null, from, to, Map.of(), limit, LogField.ALL, false);
+    }
+
+    private static void assertRejected(ElasticSearchCursor cursor) {
+        String token = cursor.encode();
+        assertThrows(IllegalArgumentException.class, () -> ElasticSearchCursor.decode(token));
+    }
+
+    private static byte[] raw(ElasticSearchCursor cursor) {
+        return Base64.getUrlDecoder().decode(cursor.encode());
+    }
+
+    private static String token(byte[] raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.logSleuthEnterprise.service.kafka;
+
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KafkaLogBinaryCodecTest {
+
+    private final KafkaLogBinaryCodec codec = new KafkaLogBinaryCodec();
+
+    @Test
+    void roundTripKnownLevel() throws Exception {
+        KafkaLogMessage message = sample("ERROR");
+        message.getMetadata().put("requestId", "req-1");
+        message.getMetadata().put("emoji", "ok 🚀 привет");
+
+        assertSameFields(message, codec.decode(codec.encode(message)));
+    }
+
+    @Test
+    void roundTripCustomLevelAndNulls() throws Exception {
+        KafkaLogMessage message = sample("notice");
+        message.setService(null);
+        message.setHost(null);
+        message.setMessage("");
+        message.setMetadata(null);
+
+        KafkaLogMessage decoded = codec.decode(codec.encode(message));
+
+        assertEquals("notice", decoded.getLevel());
+        assertNull(decoded.getService());
+        assertNull(decoded.getHost());
+        assertEquals("", decoded.getMessage());
+        // null metadata на проводе неотличима от пустой
+        assertTrue(decoded.getMetadata().isEmpty());
+    }
+
+    @Test
+    void roundTripTimestampBeforeEpoch() throws Exception {
+        KafkaLogMessage message = sample("INFO");
+        message.setTimestamp(Instant.parse("1969-12-31T23:59:59.999999999Z"));
+
+        assertEquals(message.getTimestamp(), codec.decode(codec.encode(message)).getTimestamp());
+    }
+
+    @Test
+    void rejectsEveryTruncation() {
+        KafkaLogMessage message = sample("WARN");
+        message.getMetadata().put("k", "v");
+        byte[] encoded = codec.encode(message);
+
+        for (int length = 0; length < encoded.length; length++) {
+            byte[] truncated = Arrays.copyOf(encoded, length);
+            assertThrows(IOException.class, () -> codec.decode(truncated), "length " + length);
+        }
+    }
+
+    @Test
+    void rejectsTrailingBytes() {
+        byte[] encoded = codec.encode(sample("INFO"));
+
+        assertThrows(IOException.class, () -> codec.decode(Arrays.copyOf(encoded, encoded.length + 1)));
+    }
+
+    @Test
+    void rejectsOversizedMetadataCount() {
+        // Пустая metadata кодируется последним байтом 0; подменяем его на огромное число пар
+        KafkaLogMessage message = sample("INFO");
+        byte[] encoded = codec.encode(message);
+        byte[] corrupted = Arrays.copyOf(encoded, encoded.length + 3);
+        System.arraycopy(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, 0x04}, 0, corrupted, encoded.length - 1, 4);
+
+        IOException error = assertThrows(IOException.class, () -> codec.decode(corrupted));
+        assertTrue(error.getMessage().contains("Metadata size"), error.getMessage());
+    }
+
+    @Test
+    void rejectsOversizedStringLength() {
+        // версия, затем длина id ~ 2^28 при записи в несколько байт
+        byte[] record = {KafkaLogBinaryCodec.VERSION, (byte) 0x81, (byte) 0x80, (byte) 0x80, 0x01, 'a'};
+
+        IOException error = assertThrows(IOException.class, () -> codec.decode(record));
+        assertTrue(error.getMessage().contains("String length"), error.getMessage());
+    }
+
+    @Test
+    void rejectsBadLevelCode() {
+        // версия, id = null, timestamp = 0, service = null, код level
+        byte[] tooLarge = {KafkaLogBinaryCodec.VERSION, 0, 0, 0, 7, 0, 0, 0};
+        byte[] negative = {KafkaLogBinaryCodec.VERSION, 0, 0, 0, (byte) 0xFF, 0, 0, 0};
+
+        assertThrows(IOException.class, () -> codec.decode(tooLarge));
+        assertThrows(IOException.class, () -> codec.decode(negative));
+    }
+
+    @Test
+    void acceptsMinimalRecord() throws Exception {
+        byte[] record = {KafkaLogBinaryCodec.VERSION, 0, 0, 0, 3, 0, 0, 0};
+
+        KafkaLogMessage decoded = codec.decode(record);
+
+        assertEquals("INFO", decoded.getLevel());
+        assertEquals(Instant.EPOCH, decoded.getTimestamp());
+    }
+
+    @Test
+    void rejectsUnknownVersionAndMalformedVarint() {
+        byte[] malformed = new byte[12];
+        Arrays.fill(malformed, (byte) 0x80);
+        malformed[0] = KafkaLogBinaryCodec.VERSION;
+        malformed[1] = 0;
+
+        assertThrows(IOException.class, () -> codec.decode(new byte[]{KafkaLogBinaryCodec.VERSION + 1}));
+        assertThrows(IOException.class, () -> codec.decode(malformed));
+    }
+
+    private static KafkaLogMessage sample(String level) {
+        KafkaLogMessage message = new KafkaLogMessage("orders", level, "Order 42 created", "host-1");
+        message.setTimestamp(Instant.parse("2024-03-01T12:34:56.789123456Z"));
+        return message;
+    }
+
+    private static void assertSameFields(KafkaLogMessage expected, KafkaLogMessage actual) {
+        assertEquals(expected.getId(), actual.getId(), "id");
+        assertEquals(expected.getTimestamp(), actual.getTimestamp(), "timestamp");
+        assertEquals(expected.getService(), actual.getService(), "service");
+        assertEquals(expected.getLevel(), actual.getLevel(), "level");
+        assertEquals(expected.getMessage(), actual.getMessage(), "message");
+        assertEquals(expected.getHost(), actual.getHost(), "host");
+        assertEquals(expected.getMetadata(), actual.getMetadata(), "metadata");
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.logSleuthEnterprise.service.kafka;
+
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+// Замер аллокаций на сообщение: прежний путь (HashMap -> String -> ObjectMapper),
+// KafkaLogMessageCodec и бинарный KafkaLogBinaryCodec. Байты считаются по текущему потоку через ThreadMXBean.
+// Запуск вручную из test classpath: main(iterations), результат - в stdout.
+public class KafkaLogCodecBenchmark {
+
+    private final KafkaLogMessageCodec codec;
+    private final KafkaLogBinaryCodec binaryCodec;
+    private final ObjectMapper objectMapper;
+
+    public KafkaLogCodecBenchmark(KafkaLogMessageCodec codec, KafkaLogBinaryCodec binaryCodec) {
+        this.codec = codec;
+        this.binaryCodec = binaryCodec;
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.registerModule(new JavaTimeModule());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        KafkaLogCodecBenchmark benchmark = new KafkaLogCodecBenchmark(new KafkaLogMessageCodec(), new KafkaLogBinaryCodec());
+        benchmark.run(Math.max(1, iterations)).forEach((name, value) -> System.out.println(name + ": " + value));
+    }
+
+    public Map<String, Object> run(int iterations) throws Exception {
+        com.sun.management.ThreadMXBean threads = threadMXBean();
+        if (threads == null || !threads.isThreadAllocatedMemoryEnabled()) {
+            return Map.of("error", "Thread allocation accounting is not supported by this JVM");
+        }
+
+        KafkaLogMessage sample = sampleMessage();
+        byte[] encoded = codec.encode(sample);
+        String legacyJson = legacyEncode(sample);
+        byte[] binary = binaryCodec.encode(sample);
+
+        // Прогрев, чтобы JIT и буферы Jackson не попали в замер
+        for (int i = 0; i < Math.min(iterations, 10_000); i++) {
+            codec.decode(codec.encode(sample));
+            legacyDecode(legacyEncode(sample));
+            binaryCodec.decode(binaryCodec.encode(sample));
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("iterations", iterations);
+        result.put("sameOutput", sameFields(sample, codec.decode(encoded))
+                && sameFields(legacyDecode(legacyJson), codec.decode(encoded))
+                && sameFields(codec.decode(legacyJson.getBytes(StandardCharsets.UTF_8)), sample)
+                && sameFields(binaryCodec.decode(binary), sample));
+        result.put("payloadBytes", encoded.length);
+        result.put("binaryPayloadBytes", binary.length);
+        result.put("legacyEncode", measure(threads, iterations, () -> legacyEncode(sample)));
+        result.put("codecEncode", measure(threads, iterations, () -> codec.encode(sample)));
+        result.put("legacyDecode", measure(threads, iterations, () -> legacyDecode(legacyJson)));
+        result.put("codecDecode", measure(threads, iterations, () -> codec.decode(encoded)));
+        result.put("binaryEncode", measure(threads, iterations, () -> binaryCodec.encode(sample)));
+        result.put("binaryDecode", measure(threads, iterations, () -> binaryCodec.decode(binary)));
+        return result;
+    }
+
+    private Map<String, Object> measure(com.sun.management.ThreadMXBean threads, int iterations,
+                                        BenchmarkStep step) throws Exception {
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+        long started = System.nanoTime();
+
+        Object sink = null;
+        for (int i = 0; i < iterations; i++) {
+            sink = step.run();
+        }
+
+        long elapsedNanos = System.nanoTime() - started;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+        Objects.requireNonNull(sink);
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("bytesPerMessage", allocated / Math.max(1, iterations));
+        stats.put("nanosPerMessage", elapsedNanos / Math.max(1, iterations));
+        return stats;
+    }
+
+    // Копия прежнего KafkaLogProducer.sendLog
+    private String legacyEncode(KafkaLogMessage logMessage) throws Exception {
+        Map<String, Object> messageData = new HashMap<>();
+        messageData.put("id", logMessage.getId());
+        messageData.put("service", logMessage.getService());
+        messageData.put("level", logMessage.getLevel());
+        messageData.put("message", logMessage.getMessage());
+        messageData.put("host", logMessage.getHost());
+        messageData.put("timestamp", logMessage.getTimestamp() != null
+                ? logMessage.getTimestamp().toString() : Instant.now().toString());
+        messageData.put("metadata", logMessage.getMetadata() != null ? logMessage.getMetadata() : new HashMap<>());
+        return objectMapper.writeValueAsString(messageData);
+    }
+
+    // Основная ветка прежнего KafkaLogConsumer.parseKafkaMessage
+    private KafkaLogMessage legacyDecode(String json) throws Exception {
+        return objectMapper.readValue(json, KafkaLogMessage.class);
+    }
+
+    private static boolean sameFields(KafkaLogMessage a, KafkaLogMessage b) {
+        return Objects.equals(a.getId(), b.getId())
+                && Objects.equals(a.getService(), b.getService())
+                && Objects.equals(a.getLevel(), b.getLevel())
+                && Objects.equals(a.getMessage(), b.getMessage())
+                && Objects.equals(a.getHost(), b.getHost())
+                && Objects.equals(a.getTimestamp(), b.getTimestamp())
+                && Objects.equals(a.getMetadata(), b.getMetadata());
+    }
+
+    private static KafkaLogMessage sampleMessage() {
+        KafkaLogMessage message = new KafkaLogMessage("benchmark-service", "INFO",
+                "User 42 logged in from 10.0.0.7 after 3 attempts", "benchmark-host");
+        message.getMetadata().put("requestId", "req-7f3a9c");
+        message.getMetadata().put("region", "eu-west-1");
+        return message;
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads) {
+            return threads;
+        }
+        return null;
+    }
+
+    @FunctionalInterface
+    private interface BenchmarkStep {
+        Object run() throws Exception;
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.logSleuthEnterprise.service.kafka;
+
+import com.example.logSleuthEnterprise.model.KafkaLogMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// KafkaLogMessageCodec против прежнего пути: ObjectMapper.readValue, при ошибке - разбор дерева
+class KafkaLogMessageCodecTest {
+
+    private final KafkaLogMessageCodec codec = new KafkaLogMessageCodec();
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    void roundTripMatchesObjectMapper() throws Exception {
+        KafkaLogMessage message = new KafkaLogMessage("billing", "WARN", "Payment \"42\" retried\nin 3s", "host-1");
+        message.setTimestamp(Instant.parse("2024-03-01T12:34:56.789123456Z"));
+        message.getMetadata().put("requestId", "req-1");
+        message.getMetadata().put("unicode", "привет ✓");
+
+        byte[] encoded = codec.encode(message);
+
+        assertSameFields(message, codec.decode(encoded));
+        assertSameFields(message, legacyParse(new String(encoded, StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void decodesLegacyProducerOutput() throws Exception {
+        KafkaLogMessage message = new KafkaLogMessage("auth", "INFO", "User logged in", "host-2");
+        message.getMetadata().put("region", "eu-west-1");
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", message.getId());
+        data.put("service", message.getService());
+        data.put("level", message.getLevel());
+        data.put("message", message.getMessage());
+        data.put("host", message.getHost());
+        data.put("timestamp", message.getTimestamp().toString());
+        data.put("metadata", message.getMetadata());
+        String json = objectMapper.writeValueAsString(data);
+
+        assertSameFields(legacyParse(json), codec.decode(json.getBytes(StandardCharsets.UTF_8)));
+        assertSameFields(message, codec.decode(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void integerEpochSeconds() throws Exception {
+        String json = "{\"id\":\"a\",\"timestamp\":1700000000,\"service\":\"s\"}";
+
+        KafkaLogMessage decoded = decode(json);
+
+        assertEquals(Instant.ofEpochSecond(1_700_000_000L), decoded.getTimestamp());
+        assertSameFields(legacyParse(json), decoded);
+    }
+
+    @Test
+    void fractionalEpochSeconds() throws Exception {
+        String json = "{\"id\":\"a\",\"timestamp\":1700000000.123456,\"service\":\"s\"}";
+
+        KafkaLogMessage decoded = decode(json);
+
+        assertEquals(Instant.ofEpochSecond(1_700_000_000L, 123_456_000), decoded.getTimestamp());
+        assertSameFields(legacyParse(json), decoded);
+    }
+
+    @Test
+    void nonStringMetadataValuesBecomeText() throws Exception {
+        String json = "{\"id\":\"a\",\"timestamp\":\"2024-01-01T00:00:00Z\","
+                + "\"metadata\":{\"attempt\":3,\"ratio\":0.5,\"retry\":true,\"nested\":{\"x\":1},\"list\":[1,2]}}";
+
+        KafkaLogMessage decoded = decode(json);
+
+        assertEquals("3", decoded.getMetadata().get("attempt"));
+        assertEquals("0.5", decoded.getMetadata().get("ratio"));
+        assertEquals("true", decoded.getMetadata().get("retry"));
+        assertSameFields(legacyParse(json), decoded);
+    }
+
+    @Test
+    void nullFieldsStayNull() throws Exception {
+        String json = "{\"id\":\"a\",\"service\":null,\"level\":null,\"message\":null,\"host\":null,"
+                + "\"timestamp\":null,\"metadata\":null}";
+
+        KafkaLogMessage decoded = decode(json);
+
+        assertNull(decoded.getService());
+        assertNull(decoded.getMessage());
+        assertNull(decoded.getTimestamp());
+        assertNull(decoded.getMetadata());
+        assertSameFields(legacyParse(json), decoded);
+    }
+
+    @Test
+    void unknownFieldsAreSkipped() throws Exception {
+        String json = "{\"id\":\"a\",\"service\":\"s\",\"extra\":{\"deep\":[1,{\"x\":null}]},\"tags\":[\"a\",\"b\"],"
+                + "\"version\":2,\"timestamp\":\"2024-01-01T00:00:00Z\",\"level\":\"ERROR\"}";
+
+        KafkaLogMessage decoded = decode(json);
+
+        assertEquals("ERROR", decoded.getLevel());
+        assertSameFields(legacyParse(json), decoded);
+    }
+
+    @Test
+    void benchmarkSeesSameOutput() throws Exception {
+        Map<String, Object> result = new KafkaLogCodecBenchmark(codec, new KafkaLogBinaryCodec()).run(10);
+
+        // Без учета аллокаций по потокам бенчмарк ничего не сравнивает
+        if (!result.containsKey("error")) {
+            assertEquals(Boolean.TRUE, result.get("sameOutput"));
+        }
+    }
+
+    private KafkaLogMessage decode(String json) throws Exception {
+        return codec.decode(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Копия прежнего KafkaLogConsumer.parseKafkaMessage
+    private KafkaLogMessage legacyParse(String json) throws Exception {
+        try {
+            return objectMapper.readValue(json, KafkaLogMessage.class);
+        } catch (Exception e) {
+            var rootNode = objectMapper.readTree(json);
+            KafkaLogMessage message = new KafkaLogMessage();
+
+            if (rootNode.has("id")) message.setId(rootNode.get("id").asText());
+            if (rootNode.has("service")) message.setService(rootNode.get("service").asText());
+            if (rootNode.has("level")) message.setLevel(rootNode.get("level").asText());
+            if (rootNode.has("message")) message.setMessage(rootNode.get("message").asText());
+            if (rootNode.has("host")) message.setHost(rootNode.get("host").asText());
+
+            if (rootNode.has("timestamp")) {
+                var timestampNode = rootNode.get("timestamp");
+                if (timestampNode.isTextual()) {
+                    message.setTimestamp(Instant.parse(timestampNode.asText()));
+                } else if (timestampNode.isNumber()) {
+                    double seconds = timestampNode.asDouble();
+                    long sec = (long) seconds;
+                    long nanos = (long) ((seconds - sec) * 1_000_000_000);
+                    message.setTimestamp(Instant.ofEpochSecond(sec, nanos));
+                }
+            }
+
+            if (rootNode.has("metadata") && rootNode.get("metadata").isObject()) {
+                Map<String, String> metadata = new HashMap<>();
+                var fields = rootNode.get("metadata").fields();
+                while (fields.hasNext()) {
+                    var field = fields.next();
+                    metadata.put(field.getKey(), field.getValue().asText());
+                }
+                message.setMetadata(metadata);
+            }
+
+            return message;
+        }
+    }
+
+    private static void assertSameFields(KafkaLogMessage expected, KafkaLogMessage actual) {
+        assertEquals(expected.getId(), actual.getId(), "id");
+        assertEquals(expected.getService(), actual.getService(), "service");
+        assertEquals(expected.getLevel(), actual.getLevel(), "level");
+        assertEquals(expected.getMessage(), actual.getMessage(), "message");
+        assertEquals(expected.getHost(), actual.getHost(), "host");
+        assertEquals(expected.getTimestamp(), actual.getTimestamp(), "timestamp");
+        assertEquals(expected.getMetadata(), actual.getMetadata(), "metadata");
+        assertTrue(expected.getTemplateId() == null && actual.getTemplateId() == null, "templateId is not on the wire");
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.logSleuthEnterprise.service.kafka;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionOffsetTrackerTest {
+
+    private static final TopicPartition P0 = new TopicPartition("raw-logs", 0);
+    private static final TopicPartition P1 = new TopicPartition("raw-logs", 1);
+
+    private final PartitionOffsetTracker tracker = new PartitionOffsetTracker();
+
+    @Test
+    void commitStopsAtLowestPendingWhenCompletedOutOfOrder() {
+        registerRange(P0, 100, 105);
+
+        tracker.complete(P0, 102);
+        tracker.complete(P0, 103);
+        assertEquals(100, nextCommit(P0));
+        assertEquals(2L, tracker.getStats(P0).get("completedAboveGap"));
+
+        tracker.complete(P0, 100);
+        assertEquals(101, nextCommit(P0));
+
+        tracker.complete(P0, 101);
+        assertEquals(104, nextCommit(P0));
+
+        tracker.complete(P0, 104);
+        assertEquals(105, nextCommit(P0));
+        assertFalse(tracker.hasPending(List.of(P0)));
+        assertEquals(5L, tracker.getStats(P0).get("completed"));
+    }
+
+    @Test
+    void duplicateRegisterAndCompleteAreCountedOnce() {
+        tracker.register(P0, 7);
+        tracker.register(P0, 7);
+        assertEquals(1, tracker.getPending());
+
+        tracker.complete(P0, 7);
+        tracker.complete(P0, 7);
+        tracker.complete(P0, 3);
+        assertEquals(0, tracker.getPending());
+        assertEquals(8, nextCommit(P0));
+    }
+
+    @Test
+    void registerBelowWindowAfterSeek() {
+        registerRange(P0, 10, 13);
+        tracker.complete(P0, 10);
+        tracker.complete(P0, 11);
+
+        // seek назад: 5..9 выдаются повторно, пока 12 еще в обработке
+        registerRange(P0, 5, 10);
+        assertEquals(5, nextCommit(P0));
+        assertEquals(6, tracker.getPending());
+
+        for (long offset = 5; offset < 10; offset++) {
+            tracker.complete(P0, offset);
+        }
+        assertEquals(12, nextCommit(P0));
+
+        tracker.complete(P0, 12);
+        assertEquals(13, nextCommit(P0));
+    }
+
+    @Test
+    void registerBelowWindowAfterEverythingCompleted() {
+        registerRange(P0, 10, 12);
+        tracker.complete(P0, 10);
+        tracker.complete(P0, 11);
+        assertEquals(12, nextCommit(P0));
+
+        tracker.register(P0, 4);
+        assertEquals(4, nextCommit(P0));
+
+        tracker.complete(P0, 4);
+        assertEquals(12, nextCommit(P0));
+    }
+
+    @Test
+    void windowCompactsPastThreshold() {
+        int total = 70_000;
+        int gap = 66_000;
+        registerRange(P0, 0, total);
+        for (long offset = 0; offset < gap; offset++) {
+            tracker.complete(P0, offset);
+        }
+        assertEquals(gap, nextCommit(P0));
+        assertEquals(total - gap, tracker.getPending());
+
+        // После сдвига окна и старые, и новые offset'ы по-прежнему обрабатываются корректно
+        tracker.complete(P0, gap - 1);
+        tracker.register(P0, gap);
+        assertEquals(total - gap, tracker.getPending());
+        tracker.register(P0, 100);
+        assertEquals(100, nextCommit(P0));
+        tracker.complete(P0, 100);
+        assertEquals(gap, nextCommit(P0));
+
+        for (long offset = gap; offset < total; offset++) {
+            tracker.complete(P0, offset);
+        }
+        assertEquals(total, nextCommit(P0));
+        assertEquals(0, tracker.getPending());
+    }
+
+    @Test
+    void pendingBelowFailedOffsetOnly() {
+        registerRange(P0, 10, 13);
+        tracker.complete(P0, 10);
+        // 11 не сохранилась: коммит выше нее не уйдет, ждать 12 незачем
+        Map<TopicPartition, Long> failed = Map.of(P0, 11L);
+
+        assertTrue(tracker.hasPending(List.of(P0)));
+        assertFalse(tracker.hasPendingBelow(List.of(P0), failed));
+
+        tracker.register(P1, 0);
+        assertTrue(tracker.hasPendingBelow(List.of(P0, P1), failed));
+        assertTrue(tracker.hasPendingBelow(List.of(P0), Map.of(P0, 12L)));
+    }
+
+    @Test
+    void forgetDropsPartition() {
+        tracker.register(P0, 1);
+        tracker.register(P1, 1);
+
+        tracker.forget(List.of(P0));
+
+        assertNull(tracker.nextCommit(P0));
+        assertTrue(tracker.getStats(P0).isEmpty());
+        assertEquals(1, tracker.getPending());
+    }
+
+    private void registerRange(TopicPartition partition, long from, long to) {
+        for (long offset = from; offset < to; offset++) {
+            tracker.register(partition, offset);
+        }
+    }
+
+    private long nextCommit(TopicPartition partition) {
+        return tracker.nextCommit(partition).offset();
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.logSleuthEnterprise.service.template;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogTemplateMinerTest {
+
+    private LogTemplateMiner miner;
+
+    @BeforeEach
+    void setUp() {
+        miner = new LogTemplateMiner();
+        ReflectionTestUtils.setField(miner, "enabled", true);
+        ReflectionTestUtils.setField(miner, "depth", 4);
+        ReflectionTestUtils.setField(miner, "similarity", 0.4);
+        ReflectionTestUtils.setField(miner, "maxChildren", 100);
+        ReflectionTestUtils.setField(miner, "maxTemplates", 5000);
+        ReflectionTestUtils.setField(miner, "maxTokens", 64);
+    }
+
+    @Test
+    void renderRestoresMessagesAfterGeneralization() {
+        List<String> messages = List.of(
+                "Connection closed by alice after idle timeout",
+                "Connection closed by bob after idle timeout",
+                "Connection closed by carol after read  timeout",
+                "Connection closed by <*> after idle timeout",
+                "Connection closed by dave after idle ",
+                "Request 42 took 17ms on host-3");
+        List<LogTemplateMatch> matches = new ArrayList<>();
+        for (String message : messages) {
+            matches.add(miner.mine(message));
+        }
+
+        for (int i = 0; i < messages.size(); i++) {
+            LogTemplateMatch match = matches.get(i);
+            // И текст на момент записи, и текст из каталога по id дают исходное сообщение
+            assertEquals(messages.get(i), LogTemplateMiner.render(match.template(), match.params()));
+            assertEquals(messages.get(i), LogTemplateMiner.render(miner.templateText(match.templateId()), match.params()));
+        }
+    }
+
+    @Test
+    void generalizationSupersedesPreviousId() {
+        LogTemplateMatch first = miner.mine("Connection closed by alice after idle");
+        LogTemplateMatch second = miner.mine("Connection closed by bob after idle");
+
+        assertNotEquals(first.templateId(), second.templateId());
+        assertEquals("Connection closed by <*> after idle", second.template());
+        assertEquals(List.of("bob"), second.params());
+        assertEquals(second.templateId(), miner.currentId(first.templateId()));
+        assertEquals(second.templateId(), miner.currentId(second.templateId()));
+
+        assertEquals(Map.of(first.templateId(), second.templateId()), miner.drainSuperseded());
+        assertTrue(miner.drainSuperseded().isEmpty());
+    }
+
+    @Test
+    void supersededChainFollowsToCurrentTemplate() {
+        LogTemplateMatch first = miner.mine("Job alpha finished in stage one");
+        miner.mine("Job alpha finished in stage two");
+        LogTemplateMatch last = miner.mine("Job alpha finished on node two");
+
+        assertEquals("Job alpha finished <*> <*> <*>", last.template());
+        assertEquals(last.templateId(), miner.currentId(first.templateId()));
+        assertEquals(2, miner.drainSuperseded().size());
+    }
+
+    @Test
+    void rememberedSupersededIdResolvesAfterRestart() {
+        LogTemplateMatch first = miner.mine("Cache miss for users");
+        LogTemplateMatch second = miner.mine("Cache miss for orders");
+
+        LogTemplateMiner restarted = new LogTemplateMiner();
+        ReflectionTestUtils.setField(restarted, "maxTokens", 64);
+        ReflectionTestUtils.setField(restarted, "maxTemplates", 5000);
+        restarted.rememberSuperseded(first.templateId(), second.templateId());
+
+        assertEquals(second.templateId(), restarted.currentId(first.templateId()));
+        assertTrue(restarted.drainSuperseded().isEmpty());
+    }
+
+    @Test
+    void renderRejectsParameterCountMismatch() {
+        assertNull(LogTemplateMiner.render("User <*> logged in", List.of()));
+        assertNull(LogTemplateMiner.render("User <*> logged in", List.of("a", "b")));
+        assertEquals("User logged in", LogTemplateMiner.render("User logged in", null));
+    }
+
+    @Test
+    void skipsLongMessagesAndDisabledMiner() {
+        ReflectionTestUtils.setField(miner, "maxTokens", 3);
+        assertNull(miner.mine("one two three four"));
+
+        ReflectionTestUtils.setField(miner, "enabled", false);
+        assertNull(miner.mine("one two"));
+    }
+}